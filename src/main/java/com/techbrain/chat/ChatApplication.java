@@ -2,8 +2,10 @@ package com.techbrain.chat;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling  // Discovery heartbeat (also keeps presence alive)
 public class ChatApplication {
     static void main(String[] args) {
         SpringApplication.run(ChatApplication.class, args);
@@ -4,7 +4,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.techbrain.chat.to.Message;
 import jakarta.validation.constraints.NotNull;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.config.TopicConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -13,6 +15,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.*;
 
 import java.util.HashMap;
@@ -54,6 +57,20 @@ public class KafkaConfig {
         return new KafkaTemplate<>(producerFactory);
     }
 
+    // ============ TOPICS ============
+
+    /**
+     * Ephemeral signals (typing, read cursors): only useful for seconds, so the topic
+     * keeps them briefly instead of with the chat topics' retention
+     */
+    @Bean
+    public NewTopic signalTopic(@Value("${app.signal.retention-ms:60000}") long retentionMs) {
+        return TopicBuilder.name("chat.signal")
+                .config(TopicConfig.RETENTION_MS_CONFIG, String.valueOf(retentionMs))
+                .config(TopicConfig.SEGMENT_MS_CONFIG, String.valueOf(retentionMs))
+                .build();
+    }
+
     // ============ CONSUMER CONFIGURATION ============
 
     @Bean
@@ -84,5 +101,46 @@ public class KafkaConfig {
         factory.setConcurrency(3); // 3 consumer threads per server
         return factory;
     }
+
+    // ============ DELIVERY LANES ============
+    // One listener container factory per lane, so each topic has its own consumer threads
+    // (sized per lane) and a burst on one topic never delays polling of another
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Message> directListenerContainerFactory(
+            ConsumerFactory<String, Message> consumerFactory,
+            @Value("${app.lanes.direct.listener-threads:3}") int threads) {
+        return laneFactory(consumerFactory, threads);
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Message> roomListenerContainerFactory(
+            ConsumerFactory<String, Message> consumerFactory,
+            @Value("${app.lanes.room.listener-threads:3}") int threads) {
+        return laneFactory(consumerFactory, threads);
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Message> broadcastListenerContainerFactory(
+            ConsumerFactory<String, Message> consumerFactory,
+            @Value("${app.lanes.broadcast.listener-threads:1}") int threads) {
+        return laneFactory(consumerFactory, threads);
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Message> controlListenerContainerFactory(
+            ConsumerFactory<String, Message> consumerFactory,
+            @Value("${app.lanes.control.listener-threads:1}") int threads) {
+        return laneFactory(consumerFactory, threads);
+    }
+
+    private static ConcurrentKafkaListenerContainerFactory<String, Message> laneFactory(
+            ConsumerFactory<String, Message> consumerFactory, int threads) {
+        ConcurrentKafkaListenerContainerFactory<String, Message> factory =
+            new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setConcurrency(Math.max(1, threads));
+        return factory;
+    }
 }
 
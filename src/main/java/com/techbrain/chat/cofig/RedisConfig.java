@@ -1,6 +1,8 @@
 package com.techbrain.chat.cofig;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -14,14 +16,18 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 public class RedisConfig {
     @Bean
     public RedisConnectionFactory redisConnectionFactory() {
-        // Use environment variables for Docker compatibility
-        String redisHost = System.getenv().getOrDefault("REDIS_HOST", "localhost");
-        int redisPort = Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379"));
-        
-        LettuceConnectionFactory factory = new LettuceConnectionFactory(redisHost, redisPort);
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(redisHost(), redisPort());
         return factory;
     }
 
+    /**
+     * Native Lettuce client for the async delivery path (see AsyncRedisService)
+     */
+    @Bean(destroyMethod = "shutdown")
+    public RedisClient asyncRedisClient() {
+        return RedisClient.create(RedisURI.create(redisHost(), redisPort()));
+    }
+
     @Bean
     public RedisTemplate<String, Object> redisTemplate(
             RedisConnectionFactory connectionFactory) {
@@ -52,4 +58,13 @@ public class RedisConfig {
 
         return container;
     }
+
+    // Use environment variables for Docker compatibility
+    private static String redisHost() {
+        return System.getenv().getOrDefault("REDIS_HOST", "localhost");
+    }
+
+    private static int redisPort() {
+        return Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379"));
+    }
 }
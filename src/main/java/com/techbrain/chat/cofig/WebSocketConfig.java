@@ -1,10 +1,15 @@
 package com.techbrain.chat.cofig;
 
+import com.techbrain.chat.handler.AdmissionHandshakeInterceptor;
 import com.techbrain.chat.handler.ChatWebSocketHandler;
+import com.techbrain.chat.handler.DrainHandshakeInterceptor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
 
 @Configuration
@@ -12,14 +17,34 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 public class WebSocketConfig implements WebSocketConfigurer {
 
     private final ChatWebSocketHandler chatWebSocketHandler;
+    private final DrainHandshakeInterceptor drainHandshakeInterceptor;
+    private final AdmissionHandshakeInterceptor admissionHandshakeInterceptor;
 
-    public WebSocketConfig(ChatWebSocketHandler chatWebSocketHandler) {
+    public WebSocketConfig(ChatWebSocketHandler chatWebSocketHandler,
+                           DrainHandshakeInterceptor drainHandshakeInterceptor,
+                           AdmissionHandshakeInterceptor admissionHandshakeInterceptor) {
         this.chatWebSocketHandler = chatWebSocketHandler;
+        this.drainHandshakeInterceptor = drainHandshakeInterceptor;
+        this.admissionHandshakeInterceptor = admissionHandshakeInterceptor;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(chatWebSocketHandler, "/ws/chat")
+                .addInterceptors(drainHandshakeInterceptor,       // No new connections while draining
+                                 admissionHandshakeInterceptor)   // Rate-limited connects (reconnect storms)
                 .setAllowedOriginPatterns("*");  // Changed from setAllowedOrigins
     }
+
+    /**
+     * Largest inbound frame (the container default of 8 KB is too small for batch ingest frames)
+     */
+    @Bean
+    public ServletServerContainerFactoryBean webSocketContainer(
+            @Value("${app.websocket.max-message-bytes:1048576}") int maxMessageBytes) {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(maxMessageBytes);
+        container.setMaxBinaryMessageBufferSize(maxMessageBytes);
+        return container;
+    }
 }
@@ -2,6 +2,7 @@ package com.techbrain.chat.controller;
 
 import com.techbrain.chat.service.OtpService;
 import com.techbrain.chat.service.UserService;
+import com.techbrain.chat.to.OnlineUsersPage;
 import com.techbrain.chat.to.User;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -121,5 +122,16 @@ public class AuthController {
             "maxAttempts", 3
         ));
     }
+    
+    /**
+     * Online users across all servers, one page at a time
+     * GET /api/auth/users/online?cursor=0&count=50
+     * Keep passing nextCursor until it is "0"
+     */
+    @GetMapping("/users/online")
+    public ResponseEntity<OnlineUsersPage> getOnlineUsers(@RequestParam(defaultValue = "0") String cursor,
+                                                          @RequestParam(defaultValue = "50") int count) {
+        int pageSize = Math.max(1, Math.min(count, 500));
+        return ResponseEntity.ok(userService.getOnlineUsers(cursor, pageSize));
+    }
 }
-
@@ -1,11 +1,16 @@
 package com.techbrain.chat.controller;
 
 import com.techbrain.chat.service.ChatService;
+import com.techbrain.chat.service.DedupeService;
+import com.techbrain.chat.service.RateLimitService;
 import com.techbrain.chat.service.RoomService;
+import com.techbrain.chat.to.DedupeDecision;
 import com.techbrain.chat.to.Message;
+import com.techbrain.chat.to.RateLimitDecision;
 import com.techbrain.chat.to.Room;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -24,10 +29,15 @@ public class ChatController {
     
     private final ChatService chatService;
     private final RoomService roomService;
+    private final RateLimitService rateLimitService;
+    private final DedupeService dedupeService;
     
-    public ChatController(ChatService chatService, RoomService roomService) {
+    public ChatController(ChatService chatService, RoomService roomService, RateLimitService rateLimitService,
+                          DedupeService dedupeService) {
         this.chatService = chatService;
         this.roomService = roomService;
+        this.rateLimitService = rateLimitService;
+        this.dedupeService = dedupeService;
     }
     
     /**
@@ -37,7 +47,40 @@ public class ChatController {
     @PostMapping("/messages")
     @Operation(summary = "Send a message", description = "Send a message to a room (REST endpoint)")
     public ResponseEntity<Message> sendMessage(@Valid @RequestBody Message message) {
-        Message sent = chatService.sendMessage(message);
+        // Same send limits as the WebSocket path, before the message is persisted
+        RateLimitDecision decision = rateLimitService.check(message.getSenderId(), message);
+        if (!decision.isAllowed()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header("Retry-After", String.valueOf((decision.getRetryAfterMs() + 999) / 1000))
+                .build();
+        }
+        
+        // A retry with the same clientMessageId returns the first send's ID without storing again
+        String clientMessageId = message.getClientMessageId();
+        DedupeDecision dedupe;
+        try {
+            dedupe = dedupeService.claim(message.getSenderId(), clientMessageId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (dedupe.isInProgress()) {
+            // First send still in flight
+            return ResponseEntity.status(HttpStatus.CONFLICT).header("Retry-After", "1").build();
+        }
+        if (dedupe.isDuplicate()) {
+            message.setId(dedupe.getOriginalId());
+            return ResponseEntity.ok(message);
+        }
+        
+        Message sent;
+        try {
+            sent = chatService.sendMessage(message);
+        } catch (RuntimeException e) {
+            dedupeService.release(message.getSenderId(), clientMessageId);
+            throw e;
+        }
+        dedupeService.complete(message.getSenderId(), clientMessageId, sent.getId());
+        sent.setClientMessageId(clientMessageId);
         return ResponseEntity.ok(sent);
     }
     
@@ -116,6 +159,17 @@ public class ChatController {
         return ResponseEntity.ok(room);
     }
     
+    /**
+     * Move a room into or out of the large-room tier
+     */
+    @PutMapping("/rooms/{roomId}/large")
+    @Operation(summary = "Set large-room mode", description = "Deliver a room through the local room index instead of its member list")
+    public ResponseEntity<Room> setLarge(@PathVariable String roomId,
+                                         @RequestParam(defaultValue = "true") boolean enabled) {
+        Room room = roomService.setLarge(roomId, enabled);
+        return ResponseEntity.ok(room);
+    }
+    
     /**
      * Delete a room
      */
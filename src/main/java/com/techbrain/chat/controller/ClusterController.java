@@ -0,0 +1,69 @@
+package com.techbrain.chat.controller;
+
+import com.techbrain.chat.service.ClusterRoutingService;
+import com.techbrain.chat.to.NodeLoad;
+import com.techbrain.chat.to.ServiceInfo;
+import com.techbrain.chat.utils.NodeLoadSampler;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cluster Controller
+ * 
+ * User affinity lookups:
+ * 1. GET /api/cluster/owner?userId=... → node owning the user
+ * 2. Connect with ws://host/ws/chat?userId=...&node=<serviceId>; HAProxy routes on "node"
+ * 3. GET /api/cluster/load → live load and weight of this node
+ */
+@RestController
+@RequestMapping("/api/cluster")
+@Tag(name = "Cluster", description = "User-to-node affinity")
+public class ClusterController {
+    
+    private final ClusterRoutingService clusterRoutingService;
+    private final NodeLoadSampler loadSampler;
+    
+    public ClusterController(ClusterRoutingService clusterRoutingService, NodeLoadSampler loadSampler) {
+        this.clusterRoutingService = clusterRoutingService;
+        this.loadSampler = loadSampler;
+    }
+    
+    /**
+     * Owner node of a user
+     */
+    @GetMapping("/owner")
+    @Operation(summary = "Get owner node", description = "Node a user's WebSocket connections should go to")
+    public ResponseEntity<Map<String, Object>> getOwner(@RequestParam String userId) {
+        String owner = clusterRoutingService.ownerOf(userId);
+        
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("userId", userId);
+        response.put("node", owner);
+        response.put("local", owner.equals(clusterRoutingService.getLocalNodeId()));
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Nodes on the hash ring
+     */
+    @GetMapping("/nodes")
+    @Operation(summary = "Get ring nodes", description = "Chat nodes currently on the hash ring")
+    public ResponseEntity<List<ServiceInfo>> getNodes() {
+        return ResponseEntity.ok(clusterRoutingService.getNodes());
+    }
+    
+    /**
+     * Live load of this node (the same numbers HAProxy's agent check turns into a weight)
+     */
+    @GetMapping("/load")
+    @Operation(summary = "Get node load", description = "Sessions, outbound buffers, Kafka lag, CPU and weight of this node")
+    public ResponseEntity<NodeLoad> getLoad() {
+        return ResponseEntity.ok(loadSampler.sample());
+    }
+}
@@ -2,6 +2,7 @@ package com.techbrain.chat.entity;
 
 import com.techbrain.chat.utils.MessageType;
 import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
 
 import java.time.LocalDateTime;
 
@@ -9,11 +10,15 @@ import java.time.LocalDateTime;
  * Message Entity
  * 
  * Represents a chat message in the database
+ * 
+ * IDs are assigned before saving, so the entity reports whether it is new itself
+ * (Persistable): save() then inserts directly instead of merging, which would cost a
+ * SELECT per message and prevent JDBC insert batching
  */
 @Entity
 @Table(name = "messages")
 @org.hibernate.annotations.DynamicUpdate
-public class MessageEntity {
+public class MessageEntity implements Persistable<String> {
     
     @Id
     @Column(length = 36)
@@ -41,8 +46,23 @@ public class MessageEntity {
     @Column(name = "server_id", nullable = false, length = 36)
     private String serverId;
     
+    @Transient
+    private boolean persisted;  // Loaded or saved: updates go through merge
+    
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+    
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        this.persisted = true;
+    }
+    
     // Getters and Setters
     
+    @Override
     public String getId() {
         return id;
     }
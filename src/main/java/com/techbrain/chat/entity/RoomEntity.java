@@ -33,7 +33,8 @@ public class RoomEntity {
     private LocalDateTime createdAt;
     
     @ElementCollection(fetch = FetchType.EAGER)
-    @CollectionTable(name = "room_members", joinColumns = @JoinColumn(name = "room_id"))
+    @CollectionTable(name = "room_members", joinColumns = @JoinColumn(name = "room_id"),
+        indexes = @Index(name = "idx_room_members_user", columnList = "user_id"))  // Rooms of a user
     @Column(name = "user_id", length = 36)
     private Set<String> memberIds = new HashSet<>();
     
@@ -43,6 +44,9 @@ public class RoomEntity {
     @Column(name = "max_members", nullable = false)
     private int maxMembers = 100;
     
+    @Column(name = "is_large", nullable = false)
+    private boolean large = false;  // Delivered through the local room index, members never iterated
+    
     // Getters and Setters
     
     public String getId() {
@@ -108,4 +112,12 @@ public class RoomEntity {
     public void setMaxMembers(int maxMembers) {
         this.maxMembers = maxMembers;
     }
+    
+    public boolean isLarge() {
+        return large;
+    }
+    
+    public void setLarge(boolean large) {
+        this.large = large;
+    }
 }
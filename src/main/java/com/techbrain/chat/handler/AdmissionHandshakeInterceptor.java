@@ -0,0 +1,129 @@
+package com.techbrain.chat.handler;
+
+import com.techbrain.chat.utils.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for new WebSocket connections (reconnect storms)
+ *
+ * - A token bucket admits app.websocket.admission.connects-per-second handshakes,
+ *   with bursts up to app.websocket.admission.burst
+ * - Without a free token, a handshake waits for a reserved one (at most max-wait-ms),
+ *   with at most max-queue handshakes waiting at a time
+ * - Anything else gets 503 with a jittered Retry-After covering the current backlog
+ *
+ * Metrics: chat.websocket.handshakes{result=admitted|queued|rejected},
+ * chat.websocket.handshakes.waiting and chat.websocket.handshake.wait
+ */
+@Component
+public class AdmissionHandshakeInterceptor implements HandshakeInterceptor {
+
+    private final boolean enabled;
+    private final long maxWaitNanos;
+    private final int maxQueue;
+    private final TokenBucket bucket;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final Counter admitted;
+    private final Counter queued;
+    private final Counter rejected;
+    private final Timer waitTimer;
+
+    public AdmissionHandshakeInterceptor(@Value("${app.websocket.admission.enabled:true}") boolean enabled,
+                                         @Value("${app.websocket.admission.connects-per-second:200}") double connectsPerSecond,
+                                         @Value("${app.websocket.admission.burst:100}") int burst,
+                                         @Value("${app.websocket.admission.max-wait-ms:2000}") long maxWaitMs,
+                                         @Value("${app.websocket.admission.max-queue:100}") int maxQueue,
+                                         MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.maxQueue = maxQueue;
+        this.bucket = new TokenBucket(connectsPerSecond, burst);
+
+        this.admitted = Counter.builder("chat.websocket.handshakes")
+                .tag("result", "admitted")
+                .description("Handshakes admitted without waiting")
+                .register(meterRegistry);
+        this.queued = Counter.builder("chat.websocket.handshakes")
+                .tag("result", "queued")
+                .description("Handshakes admitted after waiting for a token")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("chat.websocket.handshakes")
+                .tag("result", "rejected")
+                .description("Handshakes refused with 503 and Retry-After")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("chat.websocket.handshake.wait")
+                .description("Time queued handshakes waited for admission")
+                .register(meterRegistry);
+
+        Gauge.builder("chat.websocket.handshakes.waiting", waiting, AtomicInteger::get)
+                .description("Handshakes currently waiting for admission")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        if (!enabled) {
+            return true;
+        }
+
+        if (bucket.tryAcquire()) {
+            admitted.increment();
+            return true;
+        }
+
+        // Join the bounded queue and wait for a reserved token
+        if (waiting.incrementAndGet() <= maxQueue) {
+            try {
+                long waitNanos = bucket.reserve(maxWaitNanos);
+                if (waitNanos >= 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    waitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+                    queued.increment();
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waiting.decrementAndGet();
+            }
+        } else {
+            waiting.decrementAndGet();
+        }
+
+        rejected.increment();
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set("Retry-After", String.valueOf(retryAfterSeconds()));
+        return false;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    /**
+     * Current backlog plus up to the same again at random, so rejected clients spread out
+     */
+    private long retryAfterSeconds() {
+        long backlogSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(bucket.nanosUntilAvailable()) + 1);
+        return backlogSeconds + ThreadLocalRandom.current().nextLong(backlogSeconds + 1);
+    }
+}
@@ -0,0 +1,101 @@
+package com.techbrain.chat.handler;
+
+import com.techbrain.chat.service.DrainService;
+import com.techbrain.chat.utils.NodeLoadSampler;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HAProxy agent-check endpoint (plain TCP on app.load.agent-port)
+ *
+ * Every connection gets one line and is closed:
+ * - "up 73%"  weight relative to the server's configured weight (from NodeLoadSampler)
+ * - "drain"   while the node drains (no new connections, existing ones stay)
+ *
+ * Started once the application is ready, so HAProxy never weights a node that is still booting.
+ */
+@Component
+public class AgentCheckServer {
+
+    private static final Logger log = LoggerFactory.getLogger(AgentCheckServer.class);
+
+    private final NodeLoadSampler loadSampler;
+    private final DrainService drainService;
+
+    private volatile ServerSocket serverSocket;
+
+    @Value("${app.load.agent-port:0}")
+    private int agentPort;
+
+    public AgentCheckServer(NodeLoadSampler loadSampler, DrainService drainService) {
+        this.loadSampler = loadSampler;
+        this.drainService = drainService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (agentPort <= 0) {
+            return;
+        }
+        try {
+            serverSocket = new ServerSocket(agentPort);
+        } catch (IOException e) {
+            log.error("Agent check port {} unavailable: {}", agentPort, e.getMessage());
+            return;
+        }
+
+        Thread acceptor = new Thread(this::acceptLoop, "agent-check");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("HAProxy agent check listening on port {}", agentPort);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ServerSocket socket = serverSocket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Shutting down anyway
+            }
+        }
+    }
+
+    // Helper methods
+
+    private void acceptLoop() {
+        ServerSocket socket = serverSocket;
+        while (!socket.isClosed()) {
+            try (Socket client = socket.accept()) {
+                // Answers are tiny and computed from memory, so one thread is enough
+                client.setSoTimeout(1000);
+                OutputStream out = client.getOutputStream();
+                out.write((reply() + "\n").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    log.debug("Agent check connection failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private String reply() {
+        if (drainService.isDraining()) {
+            return "drain";
+        }
+        return "up " + loadSampler.sample().getWeight() + "%";
+    }
+}
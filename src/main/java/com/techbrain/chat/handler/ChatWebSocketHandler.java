@@ -1,20 +1,53 @@
 package com.techbrain.chat.handler;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.techbrain.chat.service.ChatService;
+import com.techbrain.chat.service.ClusterRoutingService;
+import com.techbrain.chat.service.DedupeService;
+import com.techbrain.chat.service.InboxService;
 import com.techbrain.chat.service.KafkaConsumerService;
+import com.techbrain.chat.service.PresenceNotificationService;
+import com.techbrain.chat.service.PresenceService;
+import com.techbrain.chat.service.RateLimitService;
+import com.techbrain.chat.service.ResumeService;
 import com.techbrain.chat.service.RoomService;
+import com.techbrain.chat.service.SignalService;
+import com.techbrain.chat.to.DedupeDecision;
 import com.techbrain.chat.to.Message;
+import com.techbrain.chat.to.RateLimitDecision;
+import com.techbrain.chat.to.SendReceipt;
+import com.techbrain.chat.utils.BinaryMessageCodec;
+import com.techbrain.chat.utils.BroadcastFanout;
+import com.techbrain.chat.utils.DeliveryLocalityMetrics;
+import com.techbrain.chat.utils.LargeRoomIndex;
+import com.techbrain.chat.utils.OrderedDeliveryExecutor;
+import com.techbrain.chat.utils.ReplayBuffer;
+import com.techbrain.chat.utils.SessionFrameWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.techbrain.chat.utils.MessageType.*;
 
@@ -40,37 +73,120 @@ import static com.techbrain.chat.utils.MessageType.*;
  * 3. Replay Support - Can re-read messages from any offset
  * 4. Better Scalability - Kafka handles millions of messages/sec
  * 5. Consumer Groups - Multiple servers can process messages in parallel
+ *
+ * WIRE FORMAT:
+ * - Default: JSON text frames
+ * - Clients that offer Sec-WebSocket-Protocol "chat-binary.v1" get BinaryMessageCodec
+ *   frames both ways (see SessionFrameWriter)
  */
 @Component
-public class ChatWebSocketHandler extends TextWebSocketHandler {
+public class ChatWebSocketHandler extends AbstractWebSocketHandler implements SubProtocolCapable {
     
     private static final Logger log = LoggerFactory.getLogger(ChatWebSocketHandler.class);
 
+    private static final String IN_FLIGHT_ATTRIBUTE = "inFlight";  // Messages accepted but not acked yet
+    private static final long IN_PROGRESS_RETRY_MS = 1000;         // Retry hint while the first send is in flight
+
+    private static final TypeReference<List<Message>> MESSAGE_LIST = new TypeReference<>() {};
+
     private final ChatService chatService;
     private final RoomService roomService;
     private final KafkaConsumerService kafkaConsumerService;
     private final ObjectMapper objectMapper;
     private final com.techbrain.chat.service.UserService userService;
+    private final InboxService inboxService;
+    private final OrderedDeliveryExecutor deliveryExecutor;
+    private final PresenceService presenceService;
+    private final PresenceNotificationService presenceNotificationService;
+    private final ClusterRoutingService clusterRoutingService;
+    private final DeliveryLocalityMetrics localityMetrics;
+    private final SessionHeartbeatMonitor heartbeatMonitor;
+    private final RateLimitService rateLimitService;
+    private final SessionFrameWriter frameWriter;
+    private final ResumeService resumeService;
+    private final DedupeService dedupeService;
+    private final SignalService signalService;
+    private final BroadcastFanout broadcastFanout;
+    private final LargeRoomIndex largeRoomIndex;
+    private final Counter inFlightRejected;
     
     @Value("${app.server-id}")
     private String serverId;
+    
+    @Value("${app.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+    
+    @Value("${app.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+    
+    @Value("${app.websocket.coalesce.enabled:true}")
+    private boolean coalesceEnabled;
+    
+    @Value("${app.websocket.batch.max-messages:500}")
+    private int maxBatchMessages;
+    
+    @Value("${app.resume.enabled:true}")
+    private boolean resumeEnabled;
+    
+    @Value("${app.websocket.ack.max-in-flight:64}")
+    private int maxInFlight;
 
     public ChatWebSocketHandler(ChatService chatService, 
                                 RoomService roomService, 
                                 KafkaConsumerService kafkaConsumerService,
                                 com.techbrain.chat.service.UserService userService,
+                                InboxService inboxService,
+                                OrderedDeliveryExecutor deliveryExecutor,
+                                PresenceService presenceService,
+                                PresenceNotificationService presenceNotificationService,
+                                ClusterRoutingService clusterRoutingService,
+                                DeliveryLocalityMetrics localityMetrics,
+                                SessionHeartbeatMonitor heartbeatMonitor,
+                                RateLimitService rateLimitService,
+                                SessionFrameWriter frameWriter,
+                                ResumeService resumeService,
+                                DedupeService dedupeService,
+                                SignalService signalService,
+                                BroadcastFanout broadcastFanout,
+                                LargeRoomIndex largeRoomIndex,
+                                MeterRegistry meterRegistry,
                                 ObjectMapper objectMapper) {
         this.chatService = chatService;
         this.roomService = roomService;
         this.kafkaConsumerService = kafkaConsumerService;
         this.userService = userService;
+        this.inboxService = inboxService;
+        this.deliveryExecutor = deliveryExecutor;
+        this.presenceService = presenceService;
+        this.presenceNotificationService = presenceNotificationService;
+        this.clusterRoutingService = clusterRoutingService;
+        this.localityMetrics = localityMetrics;
+        this.heartbeatMonitor = heartbeatMonitor;
+        this.rateLimitService = rateLimitService;
+        this.frameWriter = frameWriter;
+        this.resumeService = resumeService;
+        this.dedupeService = dedupeService;
+        this.signalService = signalService;
+        this.broadcastFanout = broadcastFanout;
+        this.largeRoomIndex = largeRoomIndex;
         this.objectMapper = objectMapper;
+        this.inFlightRejected = Counter.builder("chat.websocket.inflight.rejected")
+                .description("Messages refused because the session had too many unacknowledged messages")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        // Offered only when the client asks for it; plain clients keep JSON
+        return List.of(BinaryMessageCodec.SUBPROTOCOL);
     }
 
     @Override
-    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        // Register session with Kafka consumer service
-        kafkaConsumerService.registerSession(session.getId(), session);
+    public void afterConnectionEstablished(WebSocketSession rawSession) throws Exception {
+        // Sessions are written from several threads (Kafka listeners, inbox drain),
+        // so register a decorator that serializes sends
+        WebSocketSession session = new ConcurrentWebSocketSessionDecorator(
+            rawSession, sendTimeLimitMs, sendBufferSizeLimit);
         
         // Extract userId from query params: ws://localhost:8080/ws/chat?userId=+919876543210
         String query = session.getUri().getQuery();
@@ -80,26 +196,75 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             userId = query.split("userId=")[1].split("&")[0];
         }
         
-        if (userId != null) {
-            // Register user session mapping
-            kafkaConsumerService.registerUserSession(userId, session.getId());
+        // Opt-in batching of outbound messages: ws://.../ws/chat?userId=...&coalesce=true
+        boolean coalesce = coalesceEnabled && query != null && query.contains("coalesce=true");
+        if (coalesce) {
+            session.getAttributes().put(SessionFrameWriter.COALESCE_ATTRIBUTE, true);
+        }
+        
+        // Number messages for resume; a reconnecting client asks for what it missed with
+        // &resumeStream=<stream>&resumeFrom=<last seq received>. Until the session is registered
+        // and subscribed, messages for the user miss it and are recorded on the buffer
+        ReplayBuffer replay = null;
+        String resumeStream = queryParam(query, "resumeStream");
+        if (userId != null && resumeEnabled) {
+            replay = resumeService.attach(userId, session.getId());
+            session.getAttributes().put(SessionFrameWriter.REPLAY_ATTRIBUTE, replay);
+        }
+        
+        // Live frames are held (queued, not numbered) until the welcome and the replay are queued ahead of them
+        frameWriter.hold(session);
+        try {
+            // Register session with Kafka consumer service
+            kafkaConsumerService.registerSession(session.getId(), session);
+            heartbeatMonitor.track(session);
+            frameWriter.onSessionOpened(session);
             
-            // Mark user as online
+            if (userId != null) {
+                // Register user session mapping (the attribute identifies the sender for rate limits)
+                kafkaConsumerService.registerUserSession(userId, session.getId());
+                session.getAttributes().put(SessionFrameWriter.USER_ID_ATTRIBUTE, userId);
+                kafkaConsumerService.subscribeLargeRooms(userId, session);
+            }
+            
+            // Live messages reach the session from here on: a miss recorded before makes the resume fail
+            List<Message> missed = null;
+            if (replay != null) {
+                resumeService.activate(replay, session.getId());
+                String resumeFrom = queryParam(query, "resumeFrom");
+                if (resumeStream != null && resumeFrom != null) {
+                    try {
+                        missed = resumeService.resume(replay, resumeStream, Long.parseLong(resumeFrom));
+                    } catch (NumberFormatException e) {
+                        log.debug("Invalid resumeFrom {} on session {}", resumeFrom, session.getId());
+                    }
+                }
+            }
+            
+            sendWelcome(session, userId, coalesce, replay, resumeStream, missed);
+        } finally {
+            frameWriter.release(session);
+        }
+        
+        if (userId != null) {
+            // Mark user as online (this server's presence set + DB flag)
+            String connectedUser = userId;
+            presenceService.markOnline(userId).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    log.warn("Failed to record presence of {}: {}", connectedUser, error.getMessage());
+                }
+            });
             userService.setUserOnline(userId, true);
+            presenceNotificationService.record(userId, true);
             userService.updateLastSeen(userId);
             
             log.info("👤 User {} connected to server {} with session {}", 
                 userId, serverId, session.getId());
         }
         
-        // Send welcome message
-        try {
-            String welcomeMsg = String.format(
-                "{\"type\":\"connected\",\"message\":\"Welcome to server %s (Kafka-powered)!\",\"serverId\":\"%s\",\"userId\":\"%s\"}", 
-                serverId, serverId, userId != null ? userId : "guest");
-            session.sendMessage(new TextMessage(welcomeMsg));
-        } catch (IOException e) {
-            log.error("Failed to send welcome message", e);
+        // Deliver DMs that arrived while the user was offline
+        if (userId != null) {
+            inboxService.drain(userId, session);
         }
     }
 
@@ -114,14 +279,26 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             }
         }
         
+        // Large rooms of the session, before removing it drops its subscriptions
+        Set<String> largeRooms = largeRoomIndex.roomsOf(session);
+
         // Remove session from Kafka consumer service
         kafkaConsumerService.removeSession(session.getId());
+        heartbeatMonitor.untrack(session.getId());
         
         if (userId != null) {
             kafkaConsumerService.removeUserSession(userId);
+            resumeService.detach(userId, session.getId(), largeRooms);  // Buffer kept for the retention window
             
-            // Mark user as offline
+            // Mark user as offline (this server's presence set + DB flag)
+            String disconnectedUser = userId;
+            presenceService.markOffline(userId).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    log.warn("Failed to clear presence of {}: {}", disconnectedUser, error.getMessage());
+                }
+            });
             userService.setUserOnline(userId, false);
+            presenceNotificationService.record(userId, false);
             userService.updateLastSeen(userId);
             
             log.info("User {} disconnected from server {}", userId, serverId);
@@ -130,94 +307,381 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        heartbeatMonitor.onActivity(session.getId());
+        Message chatMessage;
+        try {
+            log.debug("Received WebSocket message: {}", message.getPayload());
+            String payload = message.getPayload();
+            if (isJsonArray(payload)) {
+                // Batch ingest frame: [message, message, ...]
+                handleBatch(session, objectMapper.readValue(payload, MESSAGE_LIST));
+                return;
+            }
+            chatMessage = objectMapper.readValue(payload, Message.class);
+        } catch (Exception e) {
+            sendError(session, e);
+            return;
+        }
+        handleChatMessage(session, chatMessage);
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        heartbeatMonitor.onActivity(session.getId());
+        Message chatMessage;
+        try {
+            ByteBuffer frame = inflate(message.getPayload());
+            if (BinaryMessageCodec.kind(frame) == BinaryMessageCodec.KIND_ACK) {
+                acknowledge(session, BinaryMessageCodec.decodeAck(frame));
+                return;
+            }
+            if (BinaryMessageCodec.kind(frame) == BinaryMessageCodec.KIND_BATCH) {
+                // Batch ingest frame: BATCH of MESSAGE (or DEFLATE) frames
+                List<Message> batch = new ArrayList<>();
+                for (ByteBuffer item : BinaryMessageCodec.decodeBatch(frame, maxBatchMessages)) {
+                    batch.add(BinaryMessageCodec.decodeMessage(inflate(item)));
+                }
+                handleBatch(session, batch);
+                return;
+            }
+            chatMessage = BinaryMessageCodec.decodeMessage(frame);
+        } catch (Exception e) {
+            sendError(session, e);
+            return;
+        }
+        handleChatMessage(session, chatMessage);
+    }
+
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) throws Exception {
+        // Answer to a heartbeat ping: the connection is alive
+        heartbeatMonitor.onActivity(session.getId());
+    }
+
+    /**
+     * Inbound path shared by JSON and binary frames
+     */
+    private void handleChatMessage(WebSocketSession session, Message chatMessage) {
        try {
-           log.debug("Received WebSocket message: {}", message.getPayload());
-           Message chatMessage = objectMapper.readValue(message.getPayload(), Message.class);
-           
+           if (chatMessage.getType() == ACK) {
+               // {"type":"ACK","seq":N}: not a chat message, never rate-limited or stored
+               if (chatMessage.getSeq() != null) {
+                   acknowledge(session, chatMessage.getSeq());
+               }
+               return;
+           }
+           if (chatMessage.getSignal() != null) {
+               // Typing/read signals: coalesced and published on chat.signal, never stored or acked
+               signalService.submit(senderKey(session, chatMessage), chatMessage);
+               return;
+           }
+           chatMessage.setSeq(null);  // Numbered per recipient on the way out
            log.info("Processing {} message from {}", chatMessage.getType(), chatMessage.getSenderUsername());
 
-           // Process message based on type
-           switch (chatMessage.getType()) {
-               case UNICAST:
-                   handleUnicastMessage(session, chatMessage);
-                   break;
-               case MULTICAST:
-                   handleMulticastMessage(session, chatMessage);
-                   break;
-               case BROADCAST:
-                   handleBroadcastMessage(session, chatMessage);
-                   break;
-               default:
-                   log.warn("Unknown message type: {}", chatMessage.getType());
+           // A retry of a message already accepted gets the first send's ack again,
+           // without spending a permit or an in-flight slot; a retry of one still in
+           // flight is told to retry (the first send may still fail)
+           String sender = senderKey(session, chatMessage);
+           String clientMessageId = chatMessage.getClientMessageId();
+           DedupeDecision dedupe = dedupeService.claim(sender, clientMessageId);
+           if (dedupe.isInProgress()) {
+               sendInProgress(session, clientMessageId);
+               return;
            }
-       } catch (Exception e) {
-           log.error("Failed to process message: {}", e.getMessage(), e);
+           if (dedupe.isDuplicate()) {
+               sendAck(session, clientMessageId, dedupe.getOriginalId(), true);
+               return;
+           }
+
+           // Push back on senders that run ahead of their acks
+           AtomicInteger inFlight = inFlight(session);
+           if (maxInFlight > 0 && inFlight.get() >= maxInFlight) {
+               dedupeService.release(sender, clientMessageId);
+               sendTooManyInFlight(session);
+               return;
+           }
+
+           // Enforce send limits before anything is persisted or delivered
+           RateLimitDecision decision = rateLimitService.check(sender, chatMessage);
+           if (!decision.isAllowed()) {
+               dedupeService.release(sender, clientMessageId);
+               sendRateLimited(session, decision);
+               return;
+           }
+
+           // Process message based on type
+           SendReceipt receipt = null;
+           inFlight.incrementAndGet();
            try {
-               String errorMsg = String.format("{\"type\":\"error\",\"message\":\"Failed to process: %s\"}", e.getMessage());
-               session.sendMessage(new TextMessage(errorMsg));
-           } catch (IOException ex) {
-               log.error("Failed to send error message", ex);
+               switch (chatMessage.getType()) {
+                   case UNICAST:
+                       receipt = handleUnicastMessage(session, chatMessage);
+                       break;
+                   case MULTICAST:
+                       receipt = handleMulticastMessage(session, chatMessage);
+                       break;
+                   case BROADCAST:
+                       receipt = handleBroadcastMessage(session, chatMessage);
+                       break;
+                   default:
+                       log.warn("Unknown message type: {}", chatMessage.getType());
+               }
+           } finally {
+               if (receipt == null) {
+                   inFlight.decrementAndGet();
+                   dedupeService.release(sender, clientMessageId);
+               }
            }
+           if (receipt == null) {
+               return;
+           }
+
+           // Ack once the row is committed and Kafka acknowledged the publish; sent from the
+           // delivery pool (not the Kafka producer thread), in send order per session
+           String messageId = receipt.getMessage().getId();
+           dedupeService.complete(sender, clientMessageId, messageId);
+           deliveryExecutor.submit(session.getId(), receipt.getDurable().handle((ignored, error) -> error), error -> {
+               inFlight.decrementAndGet();
+               if (error == null) {
+                   sendAck(session, clientMessageId, messageId, false);
+               } else {
+                   sendPublishFailed(session, clientMessageId, messageId, error);
+               }
+           });
+       } catch (Exception e) {
+           sendError(session, e);
        }
     }
 
-    private void handleUnicastMessage(WebSocketSession session, Message message) {
+    /**
+     * Batch ingest: one rate-limit check per item, one transaction for all accepted items,
+     * then one batch_ack frame with a result per item (in frame order):
+     * {"type":"batch_ack","accepted":2,"rejected":1,"results":[{"index":0,"ok":true,"id":"..."},
+     *  {"index":1,"ok":false,"code":"rate_limited","retryAfterMs":120}, ...]}
+     * Retried items (same clientMessageId) are not stored again: {"index":2,"ok":true,"id":"...","duplicate":true}
+     * Accepted items count against the in-flight window until the batch_ack, which is sent
+     * from the delivery pool once every item is committed and acknowledged by Kafka
+     * (items Kafka did not take: {"index":3,"ok":false,"code":"publish_failed","id":"..."})
+     */
+    private void handleBatch(WebSocketSession session, List<Message> batch) {
+        if (batch.size() > maxBatchMessages) {
+            throw new IllegalArgumentException("Batch of " + batch.size() + " messages exceeds " + maxBatchMessages);
+        }
+        log.info("Processing batch of {} messages on session {}", batch.size(), session.getId());
+
+        AtomicInteger inFlight = inFlight(session);
+        List<Map<String, Object>> results = new ArrayList<>(batch.size());
+        List<Message> accepted = new ArrayList<>(batch.size());
+        List<Map<String, Object>> acceptedResults = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Message item = batch.get(i);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("index", i);
+            results.add(result);
+
+            if (!isStorable(item)) {
+                result.put("ok", false);
+                result.put("code", "invalid");
+                continue;
+            }
+            String sender = senderKey(session, item);
+            DedupeDecision dedupe;
+            try {
+                dedupe = dedupeService.claim(sender, item.getClientMessageId());
+            } catch (IllegalArgumentException e) {
+                result.put("ok", false);
+                result.put("code", "invalid");
+                continue;
+            }
+            if (dedupe.isInProgress()) {
+                result.put("ok", false);
+                result.put("code", "in_progress");
+                result.put("retryAfterMs", IN_PROGRESS_RETRY_MS);
+                continue;
+            }
+            if (dedupe.isDuplicate()) {
+                result.put("ok", true);
+                result.put("id", dedupe.getOriginalId());
+                result.put("duplicate", true);
+                continue;
+            }
+            if (maxInFlight > 0 && inFlight.get() + accepted.size() >= maxInFlight) {
+                dedupeService.release(sender, item.getClientMessageId());
+                inFlightRejected.increment();
+                result.put("ok", false);
+                result.put("code", "too_many_in_flight");
+                continue;
+            }
+            RateLimitDecision decision = rateLimitService.check(sender, item);
+            if (!decision.isAllowed()) {
+                dedupeService.release(sender, item.getClientMessageId());
+                result.put("ok", false);
+                result.put("code", "rate_limited");
+                result.put("scope", decision.getScope());
+                result.put("retryAfterMs", decision.getRetryAfterMs());
+                continue;
+            }
+            item.setSeq(null);
+            accepted.add(item);
+            acceptedResults.add(result);
+        }
+
+        List<SendReceipt> receipts = List.of();
+        if (!accepted.isEmpty()) {
+            inFlight.addAndGet(accepted.size());
+            try {
+                receipts = chatService.sendMessages(accepted);
+                for (int i = 0; i < receipts.size(); i++) {
+                    Message saved = receipts.get(i).getMessage();
+                    acceptedResults.get(i).put("ok", true);
+                    acceptedResults.get(i).put("id", saved.getId());
+                    dedupeService.complete(senderKey(session, accepted.get(i)),
+                        accepted.get(i).getClientMessageId(), saved.getId());
+                    deliverLocally(saved);
+                }
+            } catch (Exception e) {
+                log.error("Failed to persist batch of {} messages: {}", accepted.size(), e.getMessage(), e);
+                inFlight.addAndGet(-accepted.size());
+                for (Message item : accepted) {
+                    dedupeService.release(senderKey(session, item), item.getClientMessageId());
+                }
+                for (Map<String, Object> result : acceptedResults) {
+                    result.put("ok", false);
+                    result.put("code", "failed");
+                }
+                receipts = List.of();
+            }
+        }
+
+        // batch_ack once every item is durable, in send order with the session's other acks
+        List<SendReceipt> sent = receipts;
+        CompletableFuture<?>[] durable = sent.stream()
+            .map(receipt -> receipt.getDurable().handle((ignored, error) -> error))
+            .toArray(CompletableFuture[]::new);
+        deliveryExecutor.submit(session.getId(), CompletableFuture.allOf(durable), ignored -> {
+            inFlight.addAndGet(-sent.size());
+            for (int i = 0; i < sent.size(); i++) {
+                if (durable[i].join() != null) {
+                    // Stored, but Kafka did not take it (other servers will not deliver it)
+                    acceptedResults.get(i).put("ok", false);
+                    acceptedResults.get(i).put("code", "publish_failed");
+                }
+            }
+            sendBatchAck(session, results);
+        });
+    }
+
+    /**
+     * Local delivery of an already saved message (Kafka reaches the other servers)
+     */
+    private void deliverLocally(Message saved) {
+        switch (saved.getType()) {
+            case UNICAST:
+                deliverUnicastLocally(saved);
+                break;
+            case MULTICAST:
+                deliverMulticastLocally(saved);
+                break;
+            case BROADCAST:
+                deliverBroadcastLocally(saved);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private SendReceipt handleUnicastMessage(WebSocketSession session, Message message) {
         // Set server ID and timestamp
         message.setServerId(serverId);
         if (message.getTimestamp() == null) {
             message.setTimestamp(java.time.LocalDateTime.now());
         }
         
+        // Save and route message first (Kafka will distribute to other servers);
+        // the saved copy carries the message ID used to de-duplicate the inbox
+        SendReceipt receipt = chatService.sendMessageWithReceipt(message);
+        
+        deliverUnicastLocally(receipt.getMessage());
+        return receipt;
+    }
+
+    private void deliverUnicastLocally(Message saved) {
         // Find target user's session ON THIS SERVER
-        String targetUserId = message.getRoomId();  // roomId = target userId for unicast
+        String targetUserId = saved.getRoomId();  // roomId = target userId for unicast
         String targetSessionId = kafkaConsumerService.getUserSessions().get(targetUserId);
 
         if (targetSessionId != null) {
             WebSocketSession targetSession = kafkaConsumerService.getSessions().get(targetSessionId);
             if (targetSession != null && targetSession.isOpen()) {
-                sendMessage(targetSession, message);
-                log.info("UNICAST delivered locally to user: {}", targetUserId);
+                sendMessage(targetSession, saved).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        // Not written: it stays in the inbox for the next drain
+                        log.warn("UNICAST to user {} not written: {}", targetUserId, error.getMessage());
+                        return;
+                    }
+                    inboxService.markDelivered(targetUserId, saved.getId());
+                    localityMetrics.recordLocal(1);
+                    log.info("UNICAST delivered locally to user: {}", targetUserId);
+                });
+                return;
             }
         } else {
             log.info("User {} not on this server, will be delivered via Kafka", targetUserId);
         }
-
-        // Save and route message (Kafka will distribute to other servers)
-        chatService.sendMessage(message);
+        resumeService.missed(targetUserId);
     }
 
-    private void handleMulticastMessage(WebSocketSession session, Message message) {
+    private SendReceipt handleMulticastMessage(WebSocketSession session, Message message) {
         // Set server ID and timestamp
         message.setServerId(serverId);
         if (message.getTimestamp() == null) {
             message.setTimestamp(java.time.LocalDateTime.now());
         }
         
-        // Get room members
-        var members = roomService.getRoomMembers(message.getRoomId());
-        log.info("MULTICAST to room {} with {} members", message.getRoomId(), members.size());
-
-        // Send to all members ON THIS SERVER
-        int localDeliveries = 0;
-        for (String userId : members) {
-            String sessionId = kafkaConsumerService.getUserSessions().get(userId);
-            if (sessionId != null) {
-                WebSocketSession memberSession = kafkaConsumerService.getSessions().get(sessionId);
-                if (memberSession != null && memberSession.isOpen()) {
-                    sendMessage(memberSession, message);
-                    localDeliveries++;
+        deliverMulticastLocally(message);
+
+        // Save message (Kafka will distribute to other servers)
+        return chatService.sendMessageWithReceipt(message);
+    }
+
+    private void deliverMulticastLocally(Message message) {
+        // Large rooms: straight to the subscribers ON THIS SERVER, no member lookup
+        if (largeRoomIndex.isLarge(message.getRoomId())) {
+            resumeService.missedRoom(message.getRoomId());
+            SessionFrameWriter.Frame frame = frameWriter.prepare(message);
+            largeRoomIndex.fanOut(message.getRoomId(), s -> sendMessage(s, frame), localityMetrics::recordLocal);
+            return;
+        }
+
+        // Look up room members without blocking; local delivery runs once they arrive,
+        // in order with other messages of the same room
+        var members = roomService.getRoomMembersAsync(message.getRoomId());
+        deliveryExecutor.submit(message.getRoomId(), members, roomMembers -> {
+            log.info("MULTICAST to room {} with {} members", message.getRoomId(), roomMembers.size());
+
+            // Send to all members ON THIS SERVER (serialized once for all of them)
+            SessionFrameWriter.Frame frame = frameWriter.prepare(message);
+            int localDeliveries = 0;
+            for (String userId : roomMembers) {
+                String sessionId = kafkaConsumerService.getUserSessions().get(userId);
+                if (sessionId != null) {
+                    WebSocketSession memberSession = kafkaConsumerService.getSessions().get(sessionId);
+                    if (memberSession != null && memberSession.isOpen()) {
+                        sendMessage(memberSession, frame);
+                        localDeliveries++;
+                        continue;
+                    }
                 }
+                resumeService.missed(userId);
             }
-        }
-        
-        log.info("MULTICAST delivered to {} local users, routing to other servers via Kafka",
-            localDeliveries);
 
-        // Save message (Kafka will distribute to other servers)
-        chatService.sendMessage(message);
+            localityMetrics.recordLocal(localDeliveries);
+            log.info("MULTICAST delivered to {} local users, routing to other servers via Kafka",
+                localDeliveries);
+        });
     }
 
-    private void handleBroadcastMessage(WebSocketSession session, Message message) {
+    private SendReceipt handleBroadcastMessage(WebSocketSession session, Message message) {
         // Set server ID and timestamp
         message.setServerId(serverId);
         if (message.getTimestamp() == null) {
@@ -225,30 +689,254 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         }
         
         log.info("📡 BROADCAST from {} to all servers", message.getSenderUsername());
-        
-        // Send to all connected sessions ON THIS SERVER
-        int localDeliveries = 0;
-        for (WebSocketSession s : kafkaConsumerService.getSessions().values()) {
-            if (s.isOpen()) {
-                sendMessage(s, message);
-                localDeliveries++;
+        deliverBroadcastLocally(message);
+
+        // Save and publish (Kafka will distribute to all servers)
+        return chatService.sendMessageWithReceipt(message);
+    }
+
+    private void deliverBroadcastLocally(Message message) {
+        // Send to all connected sessions ON THIS SERVER (serialized once for all of them),
+        // on the broadcast lane's threads instead of this request thread
+        resumeService.missedAll();
+        SessionFrameWriter.Frame frame = frameWriter.prepare(message);
+        broadcastFanout.fanOut(kafkaConsumerService.getSessions(), s -> sendMessage(s, frame), localDeliveries -> {
+            localityMetrics.recordLocal(localDeliveries);
+            log.debug("BROADCAST shard delivered to {} local users", localDeliveries);
+        });
+    }
+
+
+    /**
+     * Rate-limit key: the connected user, else the claimed sender, else the session
+     */
+    private String senderKey(WebSocketSession session, Message message) {
+        Object connectedUser = session.getAttributes().get(SessionFrameWriter.USER_ID_ATTRIBUTE);
+        return connectedUser != null ? connectedUser.toString()
+            : message.getSenderId() != null ? message.getSenderId() : session.getId();
+    }
+
+    private static AtomicInteger inFlight(WebSocketSession session) {
+        return (AtomicInteger) session.getAttributes().computeIfAbsent(IN_FLIGHT_ATTRIBUTE, key -> new AtomicInteger());
+    }
+
+    /**
+     * The registered (send-serializing) decorator of a session, for writes from other threads
+     */
+    private WebSocketSession registered(WebSocketSession session) {
+        WebSocketSession decorated = kafkaConsumerService.getSessions().get(session.getId());
+        return decorated != null ? decorated : session;
+    }
+
+    private static void acknowledge(WebSocketSession session, long seq) {
+        Object replay = session.getAttributes().get(SessionFrameWriter.REPLAY_ATTRIBUTE);
+        if (replay != null) {
+            ((ReplayBuffer) replay).ack(seq);
+        }
+    }
+
+    private static String queryParam(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            if (pair.startsWith(name + "=")) {
+                return pair.substring(name.length() + 1);
             }
         }
-        
-        log.info("BROADCAST delivered to {} local users, routing to other servers via Kafka",
-            localDeliveries);
+        return null;
+    }
 
-        // Save and publish (Kafka will distribute to all servers)
-        chatService.sendMessage(message);
+    /**
+     * A batch item the messages table accepts: checked per item, since one NOT NULL or
+     * length violation in saveAll would roll back the whole batch
+     */
+    private static boolean isStorable(Message item) {
+        return item != null && item.getSignal() == null
+            && (item.getType() == UNICAST || item.getType() == MULTICAST || item.getType() == BROADCAST)
+            && item.getRoomId() != null && item.getRoomId().length() <= 36
+            && item.getSenderId() != null && item.getSenderId().length() <= 36
+            && item.getSenderUsername() != null && item.getSenderUsername().length() <= 100
+            && item.getContent() != null;
+    }
+
+    private static boolean isJsonArray(String payload) {
+        for (int i = 0; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == '[';
+            }
+        }
+        return false;
+    }
+
+    private static ByteBuffer inflate(ByteBuffer frame) {
+        return BinaryMessageCodec.kind(frame) == BinaryMessageCodec.KIND_DEFLATE
+            ? BinaryMessageCodec.decompress(frame) : frame;
+    }
+
+    /**
+     * Sender ack, once the message is committed and acknowledged by Kafka (or for a retry):
+     * {"type":"ack","id":"...","clientMessageId":"...","duplicate":false}
+     * (clientMessageId only if the client set one; no "id" while a duplicate's first send is in flight)
+     */
+    /**
+     * Welcome frame (ownerNode: reconnect with &node=<ownerNode> to reach it; stream/seq: where
+     * this session's numbering stands, resumed: replay follows), then the replayed messages
+     */
+    private void sendWelcome(WebSocketSession session, String userId, boolean coalesce, ReplayBuffer replay,
+                             String resumeStream, List<Message> missed) {
+        try {
+            String ownerNode = userId != null ? clusterRoutingService.ownerOf(userId) : clusterRoutingService.getLocalNodeId();
+            Map<String, Object> welcome = new LinkedHashMap<>();
+            welcome.put("type", "connected");
+            welcome.put("message", "Welcome to server " + serverId + " (Kafka-powered)!");
+            welcome.put("serverId", serverId);
+            welcome.put("userId", userId != null ? userId : "guest");
+            welcome.put("ownerNode", ownerNode);
+            welcome.put("coalesce", coalesce);
+            if (replay != null) {
+                welcome.put("stream", replay.getStreamId());
+                welcome.put("seq", replay.lastSeq());
+                if (resumeStream != null) {
+                    // false: the missed messages are gone (or another stream) - re-fetch history
+                    welcome.put("resumed", missed != null);
+                    welcome.put("replayed", missed != null ? missed.size() : 0);
+                }
+            }
+            frameWriter.sendControl(session, welcome);
+            
+            if (missed != null) {
+                long seq = replay.lastSeq() - missed.size();
+                for (Message m : missed) {
+                    frameWriter.sendReplayed(session, m, ++seq);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to send welcome message", e);
+        }
+    }
+
+    private void sendAck(WebSocketSession session, String clientMessageId, String messageId, boolean duplicate) {
+        try {
+            Map<String, Object> ack = new LinkedHashMap<>();
+            ack.put("type", "ack");
+            if (messageId != null) {
+                ack.put("id", messageId);
+            }
+            if (clientMessageId != null) {
+                ack.put("clientMessageId", clientMessageId);
+            }
+            ack.put("duplicate", duplicate);
+            frameWriter.sendControl(registered(session), ack);
+        } catch (Exception e) {
+            log.debug("Failed to send ack to session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    private void sendBatchAck(WebSocketSession session, List<Map<String, Object>> results) {
+        try {
+            long accepted = results.stream().filter(result -> Boolean.TRUE.equals(result.get("ok"))).count();
+            Map<String, Object> ack = new LinkedHashMap<>();
+            ack.put("type", "batch_ack");
+            ack.put("accepted", accepted);
+            ack.put("rejected", results.size() - accepted);
+            ack.put("results", results);
+            frameWriter.sendControl(registered(session), ack);
+        } catch (Exception e) {
+            log.debug("Failed to send batch ack to session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * The message is stored but Kafka did not take it (other servers will not deliver it)
+     */
+    private void sendPublishFailed(WebSocketSession session, String clientMessageId, String messageId, Throwable error) {
+        try {
+            Map<String, Object> frame = new LinkedHashMap<>();
+            frame.put("type", "error");
+            frame.put("code", "publish_failed");
+            frame.put("id", messageId);
+            if (clientMessageId != null) {
+                frame.put("clientMessageId", clientMessageId);
+            }
+            frame.put("message", "Message stored but not published: " + error.getMessage());
+            frameWriter.sendControl(registered(session), frame);
+        } catch (Exception e) {
+            log.debug("Failed to send publish error to session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    private void sendTooManyInFlight(WebSocketSession session) {
+        inFlightRejected.increment();
+        try {
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("type", "error");
+            error.put("code", "too_many_in_flight");
+            error.put("maxInFlight", maxInFlight);
+            error.put("message", "Too many unacknowledged messages, wait for acks before sending more");
+            frameWriter.sendControl(registered(session), error);
+        } catch (IOException e) {
+            log.error("Failed to send in-flight limit error", e);
+        }
+    }
+
+    /**
+     * A retry of a send that is still in flight: neither accepted nor dropped
+     */
+    private void sendInProgress(WebSocketSession session, String clientMessageId) {
+        try {
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("type", "error");
+            error.put("code", "in_progress");
+            error.put("clientMessageId", clientMessageId);
+            error.put("retryAfterMs", IN_PROGRESS_RETRY_MS);
+            error.put("message", "The first send of this message is still in flight, retry later");
+            frameWriter.sendControl(registered(session), error);
+        } catch (IOException e) {
+            log.error("Failed to send in-progress error", e);
+        }
+    }
+
+    private void sendRateLimited(WebSocketSession session, RateLimitDecision decision) {
+        try {
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("type", "error");
+            error.put("code", "rate_limited");
+            error.put("scope", decision.getScope());
+            error.put("retryAfterMs", decision.getRetryAfterMs());
+            error.put("message", "Too many messages (" + decision.getScope() + " limit), retry later");
+            frameWriter.sendControl(registered(session), error);
+        } catch (IOException e) {
+            log.error("Failed to send rate limit error", e);
+        }
     }
 
+    private void sendError(WebSocketSession session, Exception e) {
+        log.error("Failed to process message: {}", e.getMessage(), e);
+        try {
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("type", "error");
+            error.put("message", "Failed to process: " + e.getMessage());
+            frameWriter.sendControl(registered(session), error);
+        } catch (IOException ex) {
+            log.error("Failed to send error message", ex);
+        }
+    }
+
+    private CompletableFuture<Void> sendMessage(WebSocketSession session, Message message) {
+        return sendMessage(session, frameWriter.prepare(message));
+    }
 
-    private void sendMessage(WebSocketSession session, Message message) {
+    /**
+     * @return completes once the frame is written to the session, fails if it never is
+     */
+    private CompletableFuture<Void> sendMessage(WebSocketSession session, SessionFrameWriter.Frame frame) {
         try {
-            String json = objectMapper.writeValueAsString(message);
-            session.sendMessage(new TextMessage(json));
+            return frameWriter.send(session, frame);
         } catch (IOException e) {
             log.error("Failed to send message to session {}: {}", session.getId(), e.getMessage());
+            return CompletableFuture.failedFuture(e);
         }
     }
 
@@ -0,0 +1,41 @@
+package com.techbrain.chat.handler;
+
+import com.techbrain.chat.service.DrainService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * Refuses new WebSocket connections while the node drains
+ * (503 + Retry-After; HAProxy retries the handshake on another node)
+ */
+@Component
+public class DrainHandshakeInterceptor implements HandshakeInterceptor {
+
+    private final DrainService drainService;
+
+    public DrainHandshakeInterceptor(DrainService drainService) {
+        this.drainService = drainService;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        if (drainService.isDraining()) {
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set("Retry-After", "1");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
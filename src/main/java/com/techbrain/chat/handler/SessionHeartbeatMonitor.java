@@ -0,0 +1,188 @@
+package com.techbrain.chat.handler;
+
+import com.techbrain.chat.service.KafkaConsumerService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-driven heartbeats and idle eviction for WebSocket sessions
+ *
+ * - One hashed timing wheel (tick app.websocket.heartbeat.tick-ms) holds one timeout per
+ *   session instead of one scheduled task each; a timeout is O(1) to add and to fire
+ * - Any inbound frame (text or pong) counts as activity
+ * - A session idle for ping-interval-ms gets a ping; one idle for idle-timeout-ms
+ *   (no pong either) is closed and removed from the session registry
+ * - Pings and closes run on a small I/O pool so a slow socket never stalls the wheel
+ *
+ * Metrics: chat.websocket.heartbeat.pings, chat.websocket.sessions.evicted,
+ * chat.websocket.heartbeat.check (cost of one check) and
+ * chat.websocket.heartbeat.round.ms.per.100k (CPU ms to check 100k sessions once)
+ */
+@Component
+public class SessionHeartbeatMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionHeartbeatMonitor.class);
+
+    private static final ByteBuffer PING_PAYLOAD = ByteBuffer.allocate(0);
+
+    private final KafkaConsumerService kafkaConsumerService;
+    private final HashedWheelTimer wheel;
+    private final ExecutorService ioExecutor;
+
+    // Last inbound activity per session ID (System.nanoTime)
+    private final Map<String, Long> lastActivity = new ConcurrentHashMap<>();
+
+    private final boolean enabled;
+    private final long pingIntervalNanos;
+    private final long idleTimeoutNanos;
+
+    private final Counter pings;
+    private final Counter evicted;
+    private final Timer checks;
+
+    public SessionHeartbeatMonitor(KafkaConsumerService kafkaConsumerService,
+                                   @Value("${app.websocket.heartbeat.enabled:true}") boolean enabled,
+                                   @Value("${app.websocket.heartbeat.ping-interval-ms:25000}") long pingIntervalMs,
+                                   @Value("${app.websocket.heartbeat.idle-timeout-ms:60000}") long idleTimeoutMs,
+                                   @Value("${app.websocket.heartbeat.tick-ms:500}") long tickMs,
+                                   @Value("${app.websocket.heartbeat.io-threads:2}") int ioThreads,
+                                   MeterRegistry meterRegistry) {
+        this.kafkaConsumerService = kafkaConsumerService;
+        this.enabled = enabled;
+        this.pingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pingIntervalMs);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.wheel = new HashedWheelTimer(runnable -> {
+            Thread thread = new Thread(runnable, "heartbeat-wheel");
+            thread.setDaemon(true);
+            return thread;
+        }, tickMs, TimeUnit.MILLISECONDS, 512);
+        this.ioExecutor = Executors.newFixedThreadPool(ioThreads, runnable -> {
+            Thread thread = new Thread(runnable, "heartbeat-io-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.pings = Counter.builder("chat.websocket.heartbeat.pings")
+                .description("Pings sent to idle sessions")
+                .register(meterRegistry);
+        this.evicted = Counter.builder("chat.websocket.sessions.evicted")
+                .description("Dead sessions closed after the idle timeout")
+                .register(meterRegistry);
+        this.checks = Timer.builder("chat.websocket.heartbeat.check")
+                .description("Time to check one session on the timing wheel")
+                .register(meterRegistry);
+
+        Gauge.builder("chat.websocket.heartbeat.round.ms.per.100k", checks,
+                        timer -> timer.mean(TimeUnit.MILLISECONDS) * 100_000)
+                .description("Wheel CPU time to check 100k sessions once")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start watching a new session
+     */
+    public void track(WebSocketSession session) {
+        if (!enabled) {
+            return;
+        }
+        lastActivity.put(session.getId(), System.nanoTime());
+        wheel.newTimeout(timeout -> check(timeout, session.getId()), pingIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record inbound traffic (text frame or pong)
+     */
+    public void onActivity(String sessionId) {
+        lastActivity.computeIfPresent(sessionId, (id, previous) -> System.nanoTime());
+    }
+
+    /**
+     * Stop watching a closed session (its pending timeout becomes a no-op)
+     */
+    public void untrack(String sessionId) {
+        lastActivity.remove(sessionId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        wheel.stop();
+        ioExecutor.shutdownNow();
+    }
+
+    // Helper methods
+
+    private void check(Timeout timeout, String sessionId) {
+        long start = System.nanoTime();
+        try {
+            Long last = lastActivity.get(sessionId);
+            WebSocketSession session = kafkaConsumerService.getSessions().get(sessionId);
+            if (last == null || session == null) {
+                lastActivity.remove(sessionId);
+                return;
+            }
+
+            long idle = start - last;
+            if (idle >= idleTimeoutNanos || !session.isOpen()) {
+                lastActivity.remove(sessionId);
+                ioExecutor.execute(() -> evict(session));
+                return;
+            }
+
+            if (idle >= pingIntervalNanos) {
+                ioExecutor.execute(() -> ping(session));
+            }
+
+            // Next check one ping interval after the last activity, and never later than the idle timeout
+            long next = idle >= pingIntervalNanos
+                    ? Math.min(pingIntervalNanos, idleTimeoutNanos - idle)
+                    : pingIntervalNanos - idle;
+            timeout.timer().newTimeout(t -> check(t, sessionId), next, TimeUnit.NANOSECONDS);
+        } finally {
+            checks.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void ping(WebSocketSession session) {
+        try {
+            session.sendMessage(new PingMessage(PING_PAYLOAD.duplicate()));
+            pings.increment();
+        } catch (Exception e) {
+            log.debug("Ping to session {} failed: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    private void evict(WebSocketSession session) {
+        evicted.increment();
+        log.info("Evicting idle session {}", session.getId());
+        try {
+            // Closing runs the handler's afterConnectionClosed (presence, registry cleanup)
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (Exception e) {
+            log.debug("Close of session {} failed: {}", session.getId(), e.getMessage());
+        }
+        // Half-open sockets may never report the close: drop the session from delivery anyway
+        kafkaConsumerService.removeSession(session.getId());
+    }
+}
@@ -2,8 +2,11 @@ package com.techbrain.chat.repository;
 
 import com.techbrain.chat.entity.RoomEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,6 +33,30 @@ public interface RoomRepository extends JpaRepository<RoomEntity, String> {
      */
     List<RoomEntity> findByIsPrivateFalse();
     
+    /**
+     * Find the rooms any of the given users is a member of, except large rooms
+     * (their member lists are never loaded per user)
+     */
+    List<RoomEntity> findDistinctByMemberIdsInAndLargeFalse(Collection<String> memberIds);
+    
+    /**
+     * IDs of the rooms in the large-room tier
+     */
+    @Query("select r.id from RoomEntity r where r.large = true")
+    List<String> findLargeRoomIds();
+    
+    /**
+     * IDs of the large rooms a user is a member of (no member lists loaded)
+     */
+    @Query("select r.id from RoomEntity r join r.memberIds m where m = :userId and r.large = true")
+    List<String> findLargeRoomIdsOfMember(@Param("userId") String userId);
+    
+    /**
+     * Large-room memberships of the given users, as [roomId, userId] pairs (no member lists loaded)
+     */
+    @Query("select r.id, m from RoomEntity r join r.memberIds m where m in :userIds and r.large = true")
+    List<Object[]> findLargeRoomIdsOfMembers(@Param("userIds") Collection<String> userIds);
+    
     /**
      * Check if room exists by name
      */
@@ -4,6 +4,7 @@ import com.techbrain.chat.entity.UserEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,6 +19,8 @@ public interface UserRepository extends JpaRepository<UserEntity, String> {
     
     List<UserEntity> findByOnline(boolean online);
     
+    List<UserEntity> findByPhoneNumberIn(Collection<String> phoneNumbers);
+    
     boolean existsByPhoneNumber(String phoneNumber);
     
     boolean existsByUsername(String username);
@@ -0,0 +1,28 @@
+package com.techbrain.chat.service;
+
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Async Redis Service Interface
+ *
+ * Non-blocking Redis access for the delivery path (Lettuce async API):
+ * - Commands are multiplexed over one shared connection; no thread waits on the network
+ * - Futures complete on the Lettuce I/O thread, so continuations that block
+ *   (MySQL, WebSocket sends) must move to another executor
+ */
+public interface AsyncRedisService {
+
+    /**
+     * Run a Lua script (EVALSHA, falling back to EVAL when the script is not loaded yet)
+     */
+    <T> CompletableFuture<T> eval(RedisScript<T> script, List<String> keys, String... args);
+
+    /**
+     * Run blocking work (e.g. a MySQL fallback) on the bounded blocking pool
+     */
+    <T> CompletableFuture<T> supplyBlocking(Supplier<T> task);
+}
@@ -1,6 +1,7 @@
 package com.techbrain.chat.service;
 
 import com.techbrain.chat.to.Message;
+import com.techbrain.chat.to.SendReceipt;
 
 import java.util.List;
 
@@ -24,6 +25,29 @@ public interface ChatService {
      */
     Message sendMessage(Message message);
     
+    /**
+     * Send a message and learn when it is durable (sender acks)
+     * - Same as sendMessage
+     * - The receipt's future completes once the row is committed and Kafka
+     *   acknowledged the publish, and fails if either did not happen
+     * 
+     * @param message Message to send
+     * @return Saved message with ID, and its durability future
+     */
+    SendReceipt sendMessageWithReceipt(Message message);
+    
+    /**
+     * Send several messages at once (client batch frames)
+     * - Saves them in one transaction (JDBC-batched inserts)
+     * - Publishes each to Kafka without waiting in between
+     * - Each receipt's future completes once the transaction committed and Kafka
+     *   acknowledged that message's publish
+     * 
+     * @param messages Messages to send
+     * @return Receipts (saved message with ID, durability future), in the same order
+     */
+    List<SendReceipt> sendMessages(List<Message> messages);
+    
     /**
      * Get message history for a room
      * 
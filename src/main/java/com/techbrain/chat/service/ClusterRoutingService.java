@@ -0,0 +1,42 @@
+package com.techbrain.chat.service;
+
+import com.techbrain.chat.to.ServiceInfo;
+
+import java.util.List;
+
+/**
+ * Cluster Routing Service Interface
+ *
+ * User affinity across chat nodes:
+ * - A consistent-hash ring over the discovered services assigns each user an owner node
+ * - Clients (and HAProxy, via the "node" query parameter) use the owner to put all of a
+ *   user's connections on one node, so more deliveries stay local
+ */
+public interface ClusterRoutingService {
+
+    /**
+     * Service ID of the node owning the user (this node if the ring is empty)
+     * Draining nodes own no users.
+     */
+    String ownerOf(String userId);
+
+    /**
+     * Does this node own the user?
+     */
+    boolean isLocalOwner(String userId);
+
+    /**
+     * Service ID of this node
+     */
+    String getLocalNodeId();
+
+    /**
+     * Nodes currently on the ring
+     */
+    List<ServiceInfo> getNodes();
+
+    /**
+     * Rebuild the ring from service discovery
+     */
+    void refresh();
+}
@@ -0,0 +1,38 @@
+package com.techbrain.chat.service;
+
+import com.techbrain.chat.to.DedupeDecision;
+
+/**
+ * Dedupe Service Interface
+ *
+ * Idempotent sends for messages that carry a client message ID:
+ * - The first send claims (sender, clientMessageId) for a time window, before anything
+ *   is persisted or delivered
+ * - Retries within the window are answered with the first send's server message ID
+ *   and are neither stored nor delivered again
+ * - A retry that arrives while the first send is still in flight is told to retry later:
+ *   the first send may still fail
+ * - A send that fails releases its claim, so the client can retry it
+ */
+public interface DedupeService {
+
+    /**
+     * Claim a client message ID for a sender
+     * @param senderId Sender (the connection's user when known)
+     * @return first() for a new ID (now claimed), duplicate(originalId) for a retry of a
+     *         completed send, inProgress() while the first send has not completed
+     * @throws IllegalArgumentException if the ID is longer than the configured maximum
+     */
+    DedupeDecision claim(String senderId, String clientMessageId);
+
+    /**
+     * Record the server message ID of a claimed send (returned to later retries);
+     * the ID is remembered for the full window from now on
+     */
+    void complete(String senderId, String clientMessageId, String messageId);
+
+    /**
+     * Drop the claim of a send that failed before it was persisted
+     */
+    void release(String senderId, String clientMessageId);
+}
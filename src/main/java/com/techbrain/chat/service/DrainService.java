@@ -0,0 +1,23 @@
+package com.techbrain.chat.service;
+
+/**
+ * Drain Service Interface
+ *
+ * Graceful node shutdown (runs first when the application context stops):
+ * - New WebSocket handshakes are refused and the node is marked draining in discovery
+ * - Sessions are closed in paced waves, each with a "reconnect" frame naming the
+ *   user's new owner node and a jittered retry delay
+ * - Presence and delivery buffers are flushed before the node exits
+ */
+public interface DrainService {
+
+    /**
+     * Is the node draining (refusing new connections)?
+     */
+    boolean isDraining();
+
+    /**
+     * Drain the node (idempotent; blocks until the sessions are closed or the drain times out)
+     */
+    void drain();
+}
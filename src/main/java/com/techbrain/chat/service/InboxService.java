@@ -0,0 +1,34 @@
+package com.techbrain.chat.service;
+
+import com.techbrain.chat.to.Message;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Inbox Service Interface
+ *
+ * Offline inbox for direct (UNICAST) messages:
+ * - Every DM is appended to the target user's inbox (capped, with expiry)
+ * - Live deliveries are recorded so they are not delivered twice
+ * - On connect, the inbox is drained to the new session in rate-limited chunks
+ */
+public interface InboxService {
+
+    /**
+     * Append a DM to the target user's inbox without blocking the caller
+     * (for UNICAST, message.roomId = target userId)
+     */
+    CompletableFuture<Void> push(Message message);
+
+    /**
+     * Record that a message already reached the user live (call only once its frame was
+     * written; never blocks the caller)
+     */
+    void markDelivered(String userId, String messageId);
+
+    /**
+     * Start draining the user's inbox to a freshly connected session (asynchronous)
+     */
+    void drain(String userId, WebSocketSession session);
+}
@@ -1,7 +1,18 @@
 package com.techbrain.chat.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.techbrain.chat.to.Message;
+import com.techbrain.chat.to.PresenceChange;
+import com.techbrain.chat.utils.BroadcastFanout;
+import com.techbrain.chat.utils.DeliveryLocalityMetrics;
+import com.techbrain.chat.utils.LargeRoomIndex;
+import com.techbrain.chat.utils.MessageType;
+import com.techbrain.chat.utils.OrderedDeliveryExecutor;
+import com.techbrain.chat.utils.RedisRoundTripMetrics;
+import com.techbrain.chat.utils.SessionFrameWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -11,13 +22,19 @@ import org.springframework.kafka.annotation.TopicPartition;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Kafka Consumer Service
@@ -33,14 +50,44 @@ public class KafkaConsumerService {
 
     private final ObjectMapper objectMapper;
     private final RoomService roomService;
+    private final InboxService inboxService;
+    private final RedisRoundTripMetrics roundTripMetrics;
+    private final OrderedDeliveryExecutor deliveryExecutor;
+    private final DeliveryLocalityMetrics localityMetrics;
+    private final SessionFrameWriter frameWriter;
+    private final BroadcastFanout broadcastFanout;
+    private final LargeRoomIndex largeRoomIndex;
+    private final ResumeService resumeService;
+    private final Timer memberListFanOut;
 
     // WebSocket session management
     private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
     private final Map<String, String> userSessions = new ConcurrentHashMap<>();
 
-    public KafkaConsumerService(ObjectMapper objectMapper, RoomService roomService) {
+    public KafkaConsumerService(ObjectMapper objectMapper, RoomService roomService, InboxService inboxService,
+                                RedisRoundTripMetrics roundTripMetrics,
+                                OrderedDeliveryExecutor deliveryExecutor,
+                                DeliveryLocalityMetrics localityMetrics,
+                                SessionFrameWriter frameWriter,
+                                BroadcastFanout broadcastFanout,
+                                LargeRoomIndex largeRoomIndex,
+                                ResumeService resumeService,
+                                MeterRegistry meterRegistry) {
         this.objectMapper = objectMapper;
         this.roomService = roomService;
+        this.inboxService = inboxService;
+        this.roundTripMetrics = roundTripMetrics;
+        this.deliveryExecutor = deliveryExecutor;
+        this.localityMetrics = localityMetrics;
+        this.frameWriter = frameWriter;
+        this.broadcastFanout = broadcastFanout;
+        this.largeRoomIndex = largeRoomIndex;
+        this.resumeService = resumeService;
+        this.memberListFanOut = Timer.builder("chat.rooms.fanout")
+                .description("Time from receiving a room message to handing it to every local recipient")
+                .tag("tier", "members")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
     // ============ SESSION MANAGEMENT ============
@@ -54,7 +101,10 @@ public class KafkaConsumerService {
     }
 
     public void removeSession(String sessionId) {
-        sessions.remove(sessionId);
+        WebSocketSession removed = sessions.remove(sessionId);
+        if (removed != null) {
+            largeRoomIndex.unsubscribeAll(removed);
+        }
         userSessions.entrySet().removeIf(entry -> entry.getValue().equals(sessionId));
     }
 
@@ -70,12 +120,64 @@ public class KafkaConsumerService {
         return userSessions;
     }
 
+    /**
+     * Subscribe a connected user's session to the large rooms they are a member of
+     */
+    public void subscribeLargeRooms(String userId, WebSocketSession session) {
+        if (!largeRoomIndex.hasLargeRooms()) {
+            return;
+        }
+        try {
+            for (String roomId : roomService.getLargeRoomIdsOf(userId)) {
+                largeRoomIndex.subscribe(roomId, session);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to subscribe {} to large rooms: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Reload the large-room tier and re-sync local subscriptions with room membership
+     * (rooms moved into the tier, and changes whose chat.membership record was lost).
+     * Only the memberships of the users connected here are queried, never member lists
+     */
+    @Scheduled(fixedDelayString = "${app.rooms.large.refresh-ms:30000}")
+    public void refreshLargeRooms() {
+        Map<String, Set<String>> roomsByUser;
+        try {
+            largeRoomIndex.setLargeRooms(roomService.getLargeRoomIds());
+            if (userSessions.isEmpty() || !largeRoomIndex.hasLargeRooms()) {
+                return;
+            }
+            roomsByUser = roomService.getLargeRoomIdsOf(Set.copyOf(userSessions.keySet()));
+        } catch (Exception e) {
+            log.warn("Failed to refresh large rooms: {}", e.getMessage());
+            return;
+        }
+
+        for (var entry : userSessions.entrySet()) {
+            WebSocketSession session = sessions.get(entry.getValue());
+            if (session == null || !session.isOpen()) {
+                continue;
+            }
+            Set<String> rooms = roomsByUser.getOrDefault(entry.getKey(), Set.of());
+            for (String roomId : largeRoomIndex.roomsOf(session)) {
+                if (!rooms.contains(roomId)) {
+                    largeRoomIndex.unsubscribe(roomId, session);
+                }
+            }
+            for (String roomId : rooms) {
+                largeRoomIndex.subscribe(roomId, session);
+            }
+        }
+    }
+
     // ============ KAFKA LISTENERS ============
 
     /**
      * Listen to BROADCAST messages (single global topic)
      */
-    @KafkaListener(topics = "chat.broadcast", groupId = "${app.server-id}")
+    @KafkaListener(topics = "chat.broadcast", groupId = "${app.server-id}", containerFactory = "broadcastListenerContainerFactory")
     public void consumeBroadcast(@Payload Message message,
                                  @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
                                  @Header(KafkaHeaders.OFFSET) long offset) {
@@ -86,26 +188,26 @@ public class KafkaConsumerService {
             return;
         }
 
+        roundTripMetrics.recordMessage();
+
         log.info("📥 Received BROADCAST from Kafka (Offset: {}): {} from {}",
             offset, message.getContent(), message.getSenderUsername());
 
-        // Send to all connected sessions on this server
-        int delivered = 0;
-        for (WebSocketSession session : sessions.values()) {
-            if (session.isOpen()) {
-                sendMessage(session, message);
-                delivered++;
-            }
-        }
-
-        log.info("✅ BROADCAST delivered to {} local users", delivered);
+        // Send to all connected sessions on this server (serialized once for all of them),
+        // on the broadcast lane's threads; recently disconnected users missed it
+        resumeService.missedAll();
+        SessionFrameWriter.Frame frame = frameWriter.prepare(message);
+        broadcastFanout.fanOut(sessions, session -> sendMessage(session, frame), delivered -> {
+            localityMetrics.recordRemote(delivered);
+            log.debug("✅ BROADCAST shard delivered to {} local users", delivered);
+        });
     }
 
     /**
      * Listen to MULTICAST messages (single shared topic)
      * Filter: Only deliver to room members connected to THIS server
      */
-    @KafkaListener(topics = "chat.multicast", groupId = "${app.server-id}")
+    @KafkaListener(topics = "chat.multicast", groupId = "${app.server-id}", containerFactory = "roomListenerContainerFactory")
     public void consumeMulticast(@Payload Message message,
                                  @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
                                  @Header(KafkaHeaders.OFFSET) long offset) {
@@ -116,33 +218,54 @@ public class KafkaConsumerService {
             return;
         }
 
+        roundTripMetrics.recordMessage();
+
         String roomId = message.getRoomId();
         log.info("📥 Received MULTICAST from Kafka for room {} (Offset: {}): {} from {}",
             roomId, offset, message.getContent(), message.getSenderUsername());
 
-        // Get room members and send to connected ones on this server
-        var members = roomService.getRoomMembers(roomId);
-        int delivered = 0;
+        // Large rooms: straight to the local subscribers, no member lookup
+        if (largeRoomIndex.isLarge(roomId)) {
+            resumeService.missedRoom(roomId);
+            SessionFrameWriter.Frame frame = frameWriter.prepare(message);
+            if (!largeRoomIndex.fanOut(roomId, session -> sendMessage(session, frame), localityMetrics::recordRemote)) {
+                log.debug("ℹ️ No local subscribers of large room {} (Offset: {})", roomId, offset);
+            }
+            return;
+        }
 
-        for (String userId : members) {
-            String sessionId = userSessions.get(userId);
-            if (sessionId != null) {
-                WebSocketSession session = sessions.get(sessionId);
-                if (session != null && session.isOpen()) {
-                    sendMessage(session, message);
-                    delivered++;
+        // Get room members and send to connected ones on this server; the listener thread
+        // does not wait for the lookup, and per-room order is kept
+        long start = System.nanoTime();
+        var members = roomService.getRoomMembersAsync(roomId);
+        deliveryExecutor.submit(roomId, members, roomMembers -> {
+            SessionFrameWriter.Frame frame = frameWriter.prepare(message);
+            int delivered = 0;
+
+            for (String userId : roomMembers) {
+                String sessionId = userSessions.get(userId);
+                if (sessionId != null) {
+                    WebSocketSession session = sessions.get(sessionId);
+                    if (session != null && session.isOpen()) {
+                        sendMessage(session, frame);
+                        delivered++;
+                        continue;
+                    }
                 }
+                resumeService.missed(userId);
             }
-        }
 
-        log.info("✅ MULTICAST delivered to {} local room members", delivered);
+            localityMetrics.recordRemote(delivered);
+            log.info("✅ MULTICAST delivered to {} local room members", delivered);
+        }).whenComplete((ignored, error) ->
+            memberListFanOut.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
     }
 
     /**
      * Listen to UNICAST messages (single shared topic)
      * Filter: Only deliver if target user is connected to THIS server
      */
-    @KafkaListener(topics = "chat.unicast", groupId = "${app.server-id}")
+    @KafkaListener(topics = "chat.unicast", groupId = "${app.server-id}", containerFactory = "directListenerContainerFactory")
     public void consumeUnicast(@Payload Message message,
                                @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
                                @Header(KafkaHeaders.OFFSET) long offset) {
@@ -153,6 +276,8 @@ public class KafkaConsumerService {
             return;
         }
 
+        roundTripMetrics.recordMessage();
+
         // Target userId is in message.roomId (for UNICAST, roomId = target userId)
         String targetUserId = message.getRoomId();
         
@@ -163,25 +288,164 @@ public class KafkaConsumerService {
             if (session != null && session.isOpen()) {
                 log.info("📥 Received UNICAST from Kafka for user {} (Offset: {}): {} from {}",
                     targetUserId, offset, message.getContent(), message.getSenderUsername());
-                sendMessage(session, message);
-                log.info("✅ UNICAST delivered to user {}", targetUserId);
-            } else {
-                log.warn("⚠️ User {} session not open on this server", targetUserId);
+                sendMessage(session, message).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        // Not written: it stays in the inbox for the next drain
+                        log.warn("⚠️ UNICAST to user {} not written: {}", targetUserId, error.getMessage());
+                        return;
+                    }
+                    // Delivered live - the inbox drain must skip it
+                    inboxService.markDelivered(targetUserId, message.getId());
+                    localityMetrics.recordRemote(1);
+                    log.info("✅ UNICAST delivered to user {}", targetUserId);
+                });
+                return;
             }
+            log.warn("⚠️ User {} session not open on this server", targetUserId);
         } else {
             // User not on this server - that's OK, they're on another server
             log.debug("ℹ️ User {} not connected to this server (Offset: {})", targetUserId, offset);
         }
+        // A buffer kept here for a disconnected user can no longer resume
+        resumeService.missed(targetUserId);
+    }
+
+    /**
+     * Listen to PRESENCE batches (single shared topic)
+     * Filter: Only notify watchers connected to THIS server, one frame per session per batch
+     * (batches from this server are not skipped - they are only delivered here)
+     */
+    @KafkaListener(topics = "chat.presence", groupId = "${app.server-id}", containerFactory = "controlListenerContainerFactory")
+    public void consumePresence(@Payload Message message,
+                                @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                                @Header(KafkaHeaders.OFFSET) long offset) {
+        List<PresenceChange> changes;
+        try {
+            changes = objectMapper.readValue(message.getContent(), new TypeReference<List<PresenceChange>>() {});
+        } catch (IOException e) {
+            log.error("Invalid PRESENCE batch (Offset: {}): {}", offset, e.getMessage());
+            return;
+        }
+
+        // Group the changes by local watcher
+        Map<String, List<Map<String, Object>>> framesByUser = new HashMap<>();
+        for (PresenceChange change : changes) {
+            if (change.getWatchers() == null) {
+                continue;
+            }
+            Map<String, Object> entry = Map.of(
+                "userId", change.getUserId(),
+                "online", change.isOnline(),
+                "lastSeen", change.getLastSeen());
+            for (String watcher : change.getWatchers()) {
+                if (userSessions.containsKey(watcher)) {
+                    framesByUser.computeIfAbsent(watcher, k -> new ArrayList<>()).add(entry);
+                }
+            }
+        }
+
+        int delivered = 0;
+        for (var frame : framesByUser.entrySet()) {
+            String sessionId = userSessions.get(frame.getKey());
+            WebSocketSession session = sessionId != null ? sessions.get(sessionId) : null;
+            if (session == null || !session.isOpen()) {
+                continue;
+            }
+            try {
+                frameWriter.sendControl(session, Map.of("type", "presence", "changes", frame.getValue()));
+                delivered++;
+            } catch (IOException e) {
+                log.error("Failed to send presence to session {}: {}", session.getId(), e.getMessage());
+            }
+        }
+
+        log.debug("PRESENCE batch of {} changes delivered to {} local users", changes.size(), delivered);
+    }
+
+    /**
+     * Listen to ephemeral SIGNALS (typing, read cursors; single low-retention topic)
+     * Filter: UNICAST signals go to the target user, MULTICAST signals to the room members
+     * connected to THIS server, never back to the sender. Signals from this server are not
+     * skipped - they are only delivered here
+     */
+    @KafkaListener(topics = "chat.signal", groupId = "${app.server-id}", containerFactory = "controlListenerContainerFactory")
+    public void consumeSignal(@Payload Message signal,
+                              @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                              @Header(KafkaHeaders.OFFSET) long offset) {
+        String sender = signal.getSenderId();
+
+        if (signal.getType() == MessageType.UNICAST) {
+            String sessionId = userSessions.get(signal.getRoomId());  // roomId = target userId
+            WebSocketSession session = sessionId != null ? sessions.get(sessionId) : null;
+            if (session != null && session.isOpen()) {
+                sendMessage(session, frameWriter.prepareSignal(signal));
+            }
+            return;
+        }
+
+        if (largeRoomIndex.isLarge(signal.getRoomId())) {
+            SessionFrameWriter.Frame frame = frameWriter.prepareSignal(signal);
+            largeRoomIndex.fanOut(signal.getRoomId(), session -> {
+                if (!sender.equals(session.getAttributes().get(SessionFrameWriter.USER_ID_ATTRIBUTE))) {
+                    sendMessage(session, frame);
+                }
+            }, delivered -> { });
+            return;
+        }
+
+        // Room members from the same cache as MULTICAST, in order with the room's messages
+        var members = roomService.getRoomMembersAsync(signal.getRoomId());
+        deliveryExecutor.submit(signal.getRoomId(), members, roomMembers -> {
+            SessionFrameWriter.Frame frame = frameWriter.prepareSignal(signal);
+            for (String userId : roomMembers) {
+                String sessionId = userId.equals(sender) ? null : userSessions.get(userId);
+                WebSocketSession session = sessionId != null ? sessions.get(sessionId) : null;
+                if (session != null && session.isOpen()) {
+                    sendMessage(session, frame);
+                }
+            }
+        });
+    }
+
+    /**
+     * Listen to large-room MEMBERSHIP changes (single shared topic)
+     * Filter: Only the joining/leaving user's session on THIS server is (un)subscribed.
+     * Changes from this server are not skipped - this is how its own sessions are updated
+     */
+    @KafkaListener(topics = "chat.membership", groupId = "${app.server-id}", containerFactory = "controlListenerContainerFactory")
+    public void consumeMembership(@Payload Message change,
+                                  @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                                  @Header(KafkaHeaders.OFFSET) long offset) {
+        String sessionId = userSessions.get(change.getSenderId());
+        WebSocketSession session = sessionId != null ? sessions.get(sessionId) : null;
+        if (session == null || !session.isOpen()) {
+            return;
+        }
+
+        if ("join".equals(change.getContent())) {
+            largeRoomIndex.subscribe(change.getRoomId(), session);
+        } else {
+            largeRoomIndex.unsubscribe(change.getRoomId(), session);
+        }
+        log.debug("MEMBERSHIP {} of {} in large room {} applied (Offset: {})",
+            change.getContent(), change.getSenderId(), change.getRoomId(), offset);
     }
 
     // ============ HELPER METHODS ============
 
-    private void sendMessage(WebSocketSession session, Message message) {
+    private CompletableFuture<Void> sendMessage(WebSocketSession session, Message message) {
+        return sendMessage(session, frameWriter.prepare(message));
+    }
+
+    /**
+     * @return completes once the frame is written to the session, fails if it never is
+     */
+    private CompletableFuture<Void> sendMessage(WebSocketSession session, SessionFrameWriter.Frame frame) {
         try {
-            String json = objectMapper.writeValueAsString(message);
-            session.sendMessage(new TextMessage(json));
+            return frameWriter.send(session, frame);
         } catch (IOException e) {
             log.error("Failed to send message to session {}: {}", session.getId(), e.getMessage());
+            return CompletableFuture.failedFuture(e);
         }
     }
 }
@@ -2,8 +2,13 @@ package com.techbrain.chat.service;
 
 import com.techbrain.chat.to.Message;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Service for publishing messages to Kafka topics
+ *
+ * Every publish returns a future that completes once Kafka acknowledged the record
+ * (acks=all: written to all in-sync replicas) and fails if the send failed.
  */
 public interface KafkaProducerService {
     
@@ -11,27 +16,45 @@ public interface KafkaProducerService {
      * Publish a message to a specific Kafka topic
      * @param topic The topic name (e.g., "unicast", "multicast.room-123", "broadcast")
      * @param message The message to publish
+     * @return Completes when Kafka acknowledged the record
      */
-    void publish(String topic, Message message);
+    CompletableFuture<Void> publish(String topic, Message message);
     
     /**
      * Publish a unicast message to user-specific topic
      * @param userId Target user ID
      * @param message The message
      */
-    void publishUnicast(String userId, Message message);
+    CompletableFuture<Void> publishUnicast(String userId, Message message);
     
     /**
      * Publish a multicast message to room-specific topic
      * @param roomId Room ID
      * @param message The message
      */
-    void publishMulticast(String roomId, Message message);
+    CompletableFuture<Void> publishMulticast(String roomId, Message message);
     
     /**
      * Publish a broadcast message to global topic
      * @param message The message
      */
-    void publishBroadcast(Message message);
+    CompletableFuture<Void> publishBroadcast(Message message);
+    
+    /**
+     * Publish a batch of presence changes to all servers
+     * @param message PRESENCE message whose content is the JSON list of changes
+     */
+    CompletableFuture<Void> publishPresence(Message message);
+    
+    /**
+     * Publish an ephemeral signal (typing, read cursor) to the low-retention signal topic
+     * @param message Message with signal set
+     */
+    CompletableFuture<Void> publishSignal(Message message);
+    
+    /**
+     * Publish a large-room membership change to all servers (they re-sync local subscriptions)
+     * @param message MEMBERSHIP message
+     */
+    CompletableFuture<Void> publishMembership(Message message);
 }
-
@@ -0,0 +1,40 @@
+package com.techbrain.chat.service;
+
+import com.techbrain.chat.to.Message;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Message Cache Service Interface
+ *
+ * Keeps a capped window of the most recent messages per room in Redis
+ * so that history reads for active rooms do not hit MySQL.
+ */
+public interface MessageCacheService {
+
+    /**
+     * Append a freshly persisted message to its room's window
+     * (only if the window is already warm)
+     */
+    void append(Message message);
+
+    /**
+     * Read a page of room history (most recent first)
+     * - Served from the window when the page fits inside it
+     * - Deeper pages go straight to the loader
+     *
+     * @param roomId Room ID
+     * @param page Page number (0-based)
+     * @param size Page size
+     * @param loader Database loader taking (page, size)
+     * @return List of messages
+     */
+    List<Message> getMessages(String roomId, int page, int size,
+                              BiFunction<Integer, Integer, List<Message>> loader);
+
+    /**
+     * Drop a room's window (e.g. after a message was deleted)
+     */
+    void evict(String roomId);
+}
@@ -0,0 +1,27 @@
+package com.techbrain.chat.service;
+
+/**
+ * Presence Notification Service Interface
+ *
+ * Pushes online/offline/last-seen changes to room co-members:
+ * - Changes are coalesced per user and flushed on an interval as one batch
+ * - Each server turns a batch into at most one "presence" frame per local session
+ * - Per-user and per-flush limits keep reconnect storms from becoming presence storms
+ */
+public interface PresenceNotificationService {
+
+    /**
+     * Queue a presence change of a user connected to this server
+     */
+    void record(String userId, boolean online);
+
+    /**
+     * Publish the queued changes (runs on the notification interval)
+     */
+    void flush();
+
+    /**
+     * Publish every queued change now, ignoring the rate limits (node shutdown)
+     */
+    void drain();
+}
@@ -0,0 +1,43 @@
+package com.techbrain.chat.service;
+
+import com.techbrain.chat.to.PresencePage;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Presence Service Interface
+ *
+ * Online state is recorded per server:
+ * - Each server keeps the users connected to it in its own Redis set
+ * - The set expires with the server's discovery heartbeat, so the users of a
+ *   crashed server disappear when that single key expires
+ * - Global queries union the live servers' sets (cached briefly) and page through them
+ */
+public interface PresenceService {
+
+    /**
+     * Record that a user connected to this server
+     */
+    CompletableFuture<Void> markOnline(String userId);
+
+    /**
+     * Record that a user disconnected from this server
+     */
+    CompletableFuture<Void> markOffline(String userId);
+
+    /**
+     * Extend this server's presence (called on every discovery heartbeat)
+     */
+    void refresh(long ttlSeconds);
+
+    /**
+     * Is the user connected to any live server?
+     */
+    boolean isOnline(String userId);
+
+    /**
+     * Page through the user IDs online on any live server (SSCAN cursor semantics)
+     * @param cursor "0" to start
+     */
+    PresencePage scanOnline(String cursor, int count);
+}
@@ -0,0 +1,21 @@
+package com.techbrain.chat.service;
+
+import com.techbrain.chat.to.Message;
+import com.techbrain.chat.to.RateLimitDecision;
+
+/**
+ * Rate Limit Service Interface
+ *
+ * Send limits enforced on ingress, before anything is persisted or delivered:
+ * - per sending user (all message types)
+ * - per room (MULTICAST)
+ * - for BROADCAST globally
+ */
+public interface RateLimitService {
+
+    /**
+     * Take one permit from every limit the message falls under
+     * @param userId Sender (the connection's user, not the client-supplied senderId when known)
+     */
+    RateLimitDecision check(String userId, Message message);
+}
@@ -0,0 +1,65 @@
+package com.techbrain.chat.service;
+
+import com.techbrain.chat.to.Message;
+import com.techbrain.chat.utils.ReplayBuffer;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resume Service Interface
+ *
+ * Keeps a bounded replay buffer per user connected to this server:
+ * - Outbound chat messages get per-stream sequence numbers (see SessionFrameWriter)
+ * - Clients ack what they received; a client that reconnects within the retention
+ *   window asks for everything after its last sequence number instead of re-fetching history
+ * - Buffers live in memory on the node; user affinity (consistent hashing) brings a
+ *   reconnecting user back to the same node
+ * - Messages for a disconnected user are not numbered: delivery paths report them
+ *   (missed*), and such a buffer answers resume with a re-fetch
+ */
+public interface ResumeService {
+
+    /**
+     * Buffer for a user's new session (the retained one if the user reconnects in time).
+     * A retained buffer still records misses until activate: messages sent before the
+     * session is registered do not reach it
+     */
+    ReplayBuffer attach(String userId, String sessionId);
+
+    /**
+     * The session is registered and subscribed (live messages reach it): stop recording
+     * misses. Call before resume, so misses up to this point make the resume fail.
+     */
+    void activate(ReplayBuffer buffer, String sessionId);
+
+    /**
+     * The user's session closed: keep the buffer for the retention window
+     * (ignored if a newer session of the user attached in the meantime)
+     * @param largeRooms Large rooms the session was subscribed to (their messages are not
+     *                   looked up per member, see missedRoom)
+     */
+    void detach(String userId, String sessionId, Set<String> largeRooms);
+
+    /**
+     * A message for the user found no session on this server
+     */
+    void missed(String userId);
+
+    /**
+     * A large-room message: every detached user who was subscribed to the room missed it
+     */
+    void missedRoom(String roomId);
+
+    /**
+     * A broadcast: every detached user missed it
+     */
+    void missedAll();
+
+    /**
+     * Messages after fromSeq of the given stream
+     * @return null if they cannot be replayed (other stream, not held any more, or
+     *         messages went to the user while disconnected)
+     */
+    List<Message> resume(ReplayBuffer buffer, String streamId, long fromSeq);
+}
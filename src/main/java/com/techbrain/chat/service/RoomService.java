@@ -2,8 +2,11 @@ package com.techbrain.chat.service;
 
 import com.techbrain.chat.to.Room;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Room Service Interface
@@ -38,12 +41,12 @@ public interface RoomService {
     void deleteRoom(String roomId);
     
     /**
-     * Join a room
+     * Join a room (large rooms: every server re-syncs the user's subscription)
      */
     boolean joinRoom(String roomId, String userId);
     
     /**
-     * Leave a room
+     * Leave a room (large rooms: every server re-syncs the user's subscription)
      */
     void leaveRoom(String roomId, String userId);
     
@@ -52,6 +55,36 @@ public interface RoomService {
      */
     Set<String> getRoomMembers(String roomId);
     
+    /**
+     * Get room members without blocking the calling thread (delivery path)
+     */
+    CompletableFuture<Set<String>> getRoomMembersAsync(String roomId);
+    
+    /**
+     * Get the rooms any of the given users is a member of (one query; large rooms excluded)
+     */
+    List<Room> getRoomsOfUsers(Collection<String> userIds);
+    
+    /**
+     * Move a room into (or out of) the large-room tier
+     */
+    Room setLarge(String roomId, boolean large);
+    
+    /**
+     * IDs of all rooms in the large-room tier
+     */
+    List<String> getLargeRoomIds();
+    
+    /**
+     * IDs of the large rooms each of the given users is a member of (users without any are absent)
+     */
+    Map<String, Set<String>> getLargeRoomIdsOf(Collection<String> userIds);
+    
+    /**
+     * IDs of the large rooms a user is a member of
+     */
+    List<String> getLargeRoomIdsOf(String userId);
+    
     /**
      * Check if room exists
      */
@@ -9,4 +9,5 @@ public interface ServiceDiscoveryService {
     void updateHeartbeat();
     List<ServiceInfo> discoverServices();
     void unregisterService();
+    void markDraining();
 }
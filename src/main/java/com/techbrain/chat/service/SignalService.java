@@ -0,0 +1,23 @@
+package com.techbrain.chat.service;
+
+import com.techbrain.chat.to.Message;
+
+/**
+ * Signal Service Interface
+ *
+ * Ephemeral signals (typing indicators, read cursors) skip the durable path:
+ * - Never written to MySQL, the inbox or the resume buffers, never acked
+ * - Coalesced per (sender, conversation, signal) within a short window: only the
+ *   latest signal of each window is sent on
+ * - Published on the low-retention "chat.signal" topic and delivered by every
+ *   server to its own sessions (addressed like UNICAST / MULTICAST messages)
+ */
+public interface SignalService {
+
+    /**
+     * Queue a signal for the next window
+     * @param senderId Sender (the connection's user when known)
+     * @throws IllegalArgumentException if the signal, type or roomId is not valid
+     */
+    void submit(String senderId, Message signal);
+}
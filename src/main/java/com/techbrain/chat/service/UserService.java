@@ -1,5 +1,6 @@
 package com.techbrain.chat.service;
 
+import com.techbrain.chat.to.OnlineUsersPage;
 import com.techbrain.chat.to.User;
 
 import java.util.List;
@@ -25,9 +26,11 @@ public interface UserService {
     Optional<User> getUserByUsername(String username);
     
     /**
-     * Get all online users
+     * Get one page of online users (across all live servers)
+     * @param cursor "0" for the first page, then the previous page's nextCursor
+     * @param count Page size hint (pages may be slightly smaller or larger)
      */
-    List<User> getOnlineUsers();
+    OnlineUsersPage getOnlineUsers(String cursor, int count);
     
     /**
      * Mark user as online
@@ -0,0 +1,127 @@
+package com.techbrain.chat.service.impl;
+
+import com.techbrain.chat.service.AsyncRedisService;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.codec.StringCodec;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Async Redis Service Implementation
+ *
+ * - One Lettuce connection (thread-safe, pipelined) opened on first use
+ * - Script SHAs come from Spring's RedisScript, so sync and async callers share
+ *   the same loaded scripts
+ * - Blocking fallbacks run on a fixed pool sized by app.redis.async.blocking-threads
+ */
+@Service
+public class AsyncRedisServiceImpl implements AsyncRedisService {
+
+    private final RedisClient asyncRedisClient;
+    private final ExecutorService blockingExecutor;
+
+    private volatile StatefulRedisConnection<String, String> connection;
+
+    public AsyncRedisServiceImpl(RedisClient asyncRedisClient,
+                                 @Value("${app.redis.async.blocking-threads:4}") int blockingThreads) {
+        this.asyncRedisClient = asyncRedisClient;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.blockingExecutor = Executors.newFixedThreadPool(blockingThreads, runnable -> {
+            Thread thread = new Thread(runnable, "redis-blocking-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<T> eval(RedisScript<T> script, List<String> keys, String... args) {
+        RedisAsyncCommands<String, String> commands;
+        try {
+            commands = connection().async();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        String[] keyArray = keys.toArray(new String[0]);
+        ScriptOutputType outputType = outputType(script.getResultType());
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        commands.<T>evalsha(script.getSha1(), outputType, keyArray, args).whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else if (error.getMessage() != null && error.getMessage().startsWith("NOSCRIPT")) {
+                // First use on this Redis instance: EVAL also loads the script
+                commands.<T>eval(script.getScriptAsString(), outputType, keyArray, args)
+                        .whenComplete((retried, retryError) -> {
+                            if (retryError == null) {
+                                result.complete(retried);
+                            } else {
+                                result.completeExceptionally(retryError);
+                            }
+                        });
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> supplyBlocking(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, blockingExecutor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        blockingExecutor.shutdownNow();
+        if (connection != null) {
+            connection.closeAsync();
+        }
+    }
+
+    // Helper methods
+
+    private StatefulRedisConnection<String, String> connection() {
+        StatefulRedisConnection<String, String> current = connection;
+        if (current == null) {
+            synchronized (this) {
+                current = connection;
+                if (current == null) {
+                    // Lettuce reconnects this connection by itself after network failures
+                    current = asyncRedisClient.connect(StringCodec.UTF8);
+                    connection = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static ScriptOutputType outputType(Class<?> resultType) {
+        if (resultType == null) {
+            return ScriptOutputType.STATUS;
+        }
+        if (Long.class.equals(resultType)) {
+            return ScriptOutputType.INTEGER;
+        }
+        if (Boolean.class.equals(resultType)) {
+            return ScriptOutputType.BOOLEAN;
+        }
+        if (List.class.isAssignableFrom(resultType)) {
+            return ScriptOutputType.MULTI;
+        }
+        return ScriptOutputType.VALUE;
+    }
+}
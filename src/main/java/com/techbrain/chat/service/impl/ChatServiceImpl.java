@@ -3,19 +3,26 @@ package com.techbrain.chat.service.impl;
 import com.techbrain.chat.entity.MessageEntity;
 import com.techbrain.chat.repository.MessageRepository;
 import com.techbrain.chat.service.ChatService;
+import com.techbrain.chat.service.MessageCacheService;
 import com.techbrain.chat.service.RedisPubSubService;
 import com.techbrain.chat.stretegy.MessageRoutingStrategy;
 import com.techbrain.chat.to.Message;
+import com.techbrain.chat.to.SendReceipt;
+import com.techbrain.chat.utils.RedisRoundTripMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -30,20 +37,37 @@ public class ChatServiceImpl implements ChatService {
     private final MessageRepository messageRepository;
     private final RedisPubSubService redisPubSubService;
     private final Map<String, MessageRoutingStrategy> strategies;
+    private final MessageCacheService messageCacheService;
+    private final RedisRoundTripMetrics roundTripMetrics;
     
     @Value("${app.server-id}")
     private String serverId;
     
     public ChatServiceImpl(MessageRepository messageRepository, 
                           RedisPubSubService redisPubSubService,
-                          Map<String, MessageRoutingStrategy> strategies) {
+                          Map<String, MessageRoutingStrategy> strategies,
+                          MessageCacheService messageCacheService,
+                          RedisRoundTripMetrics roundTripMetrics) {
         this.messageRepository = messageRepository;
         this.redisPubSubService = redisPubSubService;
         this.strategies = strategies;
+        this.messageCacheService = messageCacheService;
+        this.roundTripMetrics = roundTripMetrics;
     }
     
     @Override
     public Message sendMessage(Message message) {
+        return send(message).getMessage();
+    }
+    
+    @Override
+    public SendReceipt sendMessageWithReceipt(Message message) {
+        return send(message);
+    }
+    
+    private SendReceipt send(Message message) {
+        roundTripMetrics.recordMessage();
+        
         // Set server ID and timestamp
         message.setServerId(serverId);
         if (message.getTimestamp() == null) {
@@ -57,30 +81,86 @@ public class ChatServiceImpl implements ChatService {
         // Convert back to DTO
         Message savedMessage = toDTO(saved);
         
+        // Write-through to the room's recent-messages window once the row is committed
+        CompletableFuture<Void> committed = committed();
+        afterCommit(() -> messageCacheService.append(savedMessage));
+        
         // Route message using strategy (will publish to Redis on correct channel)
         MessageRoutingStrategy strategy = strategies.get(message.getType().name().toLowerCase());
-        if (strategy != null) {
-            strategy.route(savedMessage);
-        }
+        CompletableFuture<Void> published = strategy != null
+            ? strategy.route(savedMessage) : CompletableFuture.completedFuture(null);
         
-        return savedMessage;
+        return new SendReceipt(savedMessage, CompletableFuture.allOf(committed, published));
     }
     
     @Override
-    @Transactional(readOnly = true)
-    public List<Message> getMessageHistory(String roomId, int limit) {
-        PageRequest pageRequest = PageRequest.of(0, limit, 
-            Sort.by(Sort.Direction.DESC, "timestamp"));
+    public List<SendReceipt> sendMessages(List<Message> messages) {
+        List<MessageEntity> entities = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            roundTripMetrics.recordMessage();
+            message.setServerId(serverId);
+            if (message.getTimestamp() == null) {
+                message.setTimestamp(LocalDateTime.now());
+            }
+            entities.add(toEntity(message));
+        }
         
-        return messageRepository.findByRoomId(roomId, pageRequest)
+        // One transaction; inserts are flushed in JDBC batches (hibernate.jdbc.batch_size)
+        List<Message> savedMessages = messageRepository.saveAll(entities)
             .stream()
             .map(this::toDTO)
             .collect(Collectors.toList());
+        
+        CompletableFuture<Void> committed = committed();
+        afterCommit(() -> savedMessages.forEach(messageCacheService::append));
+        
+        // Kafka sends are asynchronous: the producer groups them into its own batches
+        List<SendReceipt> receipts = new ArrayList<>(savedMessages.size());
+        for (Message savedMessage : savedMessages) {
+            MessageRoutingStrategy strategy = strategies.get(savedMessage.getType().name().toLowerCase());
+            CompletableFuture<Void> published = strategy != null
+                ? strategy.route(savedMessage) : CompletableFuture.completedFuture(null);
+            receipts.add(new SendReceipt(savedMessage, CompletableFuture.allOf(committed, published)));
+        }
+        
+        return receipts;
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public List<Message> getMessageHistory(String roomId, int limit) {
+        // Latest messages of a room: served from the Redis window when it covers the request
+        return messageCacheService.getMessages(roomId, 0, limit,
+            (page, size) -> loadMessages(roomId, page, size));
     }
     
     @Override
     @Transactional(readOnly = true)
     public List<Message> getRoomMessages(String roomId, int page, int size) {
+        // Only pages deeper than the Redis window reach MySQL
+        return messageCacheService.getMessages(roomId, page, size,
+            (p, s) -> loadMessages(roomId, p, s));
+    }
+    
+    @Override
+    public void deleteMessage(String messageId) {
+        messageRepository.findById(messageId).ifPresent(entity -> {
+            messageRepository.delete(entity);
+            
+            // The deleted message may sit in the room's window
+            afterCommit(() -> messageCacheService.evict(entity.getRoomId()));
+        });
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public long getMessageCount(String roomId) {
+        return messageRepository.countByRoomId(roomId);
+    }
+    
+    // Helper methods
+    
+    private List<Message> loadMessages(String roomId, int page, int size) {
         PageRequest pageRequest = PageRequest.of(page, size, 
             Sort.by(Sort.Direction.DESC, "timestamp"));
         
@@ -90,15 +170,39 @@ public class ChatServiceImpl implements ChatService {
             .collect(Collectors.toList());
     }
     
-    @Override
-    public void deleteMessage(String messageId) {
-        messageRepository.deleteById(messageId);
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
     
-    @Override
-    @Transactional(readOnly = true)
-    public long getMessageCount(String roomId) {
-        return messageRepository.countByRoomId(roomId);
+    /**
+     * Completes when the current transaction commits, fails if it rolls back
+     */
+    private CompletableFuture<Void> committed() {
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            committed.complete(null);
+            return committed;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    committed.complete(null);
+                } else {
+                    committed.completeExceptionally(new IllegalStateException("Transaction rolled back"));
+                }
+            }
+        });
+        return committed;
     }
     
     // Helper methods for entity-DTO conversion
@@ -119,6 +223,7 @@ public class ChatServiceImpl implements ChatService {
     
     private Message toDTO(MessageEntity entity) {
         Message message = new Message();
+        message.setId(entity.getId());
         message.setRoomId(entity.getRoomId());
         message.setSenderId(entity.getSenderId());
         message.setSenderUsername(entity.getSenderUsername());
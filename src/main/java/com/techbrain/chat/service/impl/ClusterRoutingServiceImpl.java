@@ -0,0 +1,96 @@
+package com.techbrain.chat.service.impl;
+
+import com.techbrain.chat.service.ClusterRoutingService;
+import com.techbrain.chat.service.ServiceDiscoveryService;
+import com.techbrain.chat.to.ServiceInfo;
+import com.techbrain.chat.utils.ConsistentHashRing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cluster Routing Service Implementation
+ *
+ * - The ring is rebuilt from discoverServices() every app.cluster.ring.refresh-ms,
+ *   and only replaced when the set of nodes changed
+ * - Owner lookups read the current ring without locking or Redis calls
+ * - Draining nodes are left off the ring
+ */
+@Service
+public class ClusterRoutingServiceImpl implements ClusterRoutingService {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterRoutingServiceImpl.class);
+
+    private final ServiceDiscoveryService serviceDiscoveryService;
+
+    private volatile ConsistentHashRing ring = ConsistentHashRing.empty();
+    private volatile Map<String, ServiceInfo> nodes = Map.of();
+
+    @Value("${app.service.discovery.service-id}")
+    private String localNodeId;
+
+    @Value("${app.cluster.ring.virtual-nodes:128}")
+    private int virtualNodes;
+
+    public ClusterRoutingServiceImpl(ServiceDiscoveryService serviceDiscoveryService) {
+        this.serviceDiscoveryService = serviceDiscoveryService;
+    }
+
+    @Override
+    public String ownerOf(String userId) {
+        String owner = ring.owner(userId);
+        return owner != null ? owner : localNodeId;
+    }
+
+    @Override
+    public boolean isLocalOwner(String userId) {
+        return localNodeId.equals(ownerOf(userId));
+    }
+
+    @Override
+    public String getLocalNodeId() {
+        return localNodeId;
+    }
+
+    @Override
+    public List<ServiceInfo> getNodes() {
+        return List.copyOf(nodes.values());
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${app.cluster.ring.refresh-ms:5000}")
+    public void refresh() {
+        Map<String, ServiceInfo> discovered = new LinkedHashMap<>();
+        for (ServiceInfo service : serviceDiscoveryService.discoverServices()) {
+            discovered.put(service.getServiceId(), service);
+        }
+
+        // Keep the current ring if discovery failed or returned nothing (e.g. Redis down)
+        if (discovered.isEmpty()) {
+            return;
+        }
+
+        nodes = discovered;
+
+        // Draining nodes stay listed but own no users, so clients move off them
+        Set<String> ringNodes = new HashSet<>();
+        for (ServiceInfo service : discovered.values()) {
+            if (!service.isDraining()) {
+                ringNodes.add(service.getServiceId());
+            }
+        }
+
+        if (!ringNodes.equals(new HashSet<>(ring.getNodes()))) {
+            ring = ConsistentHashRing.of(ringNodes, virtualNodes);
+            log.info("Hash ring rebuilt with nodes {}", ring.getNodes());
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.techbrain.chat.service.impl;
+
+import com.techbrain.chat.service.DedupeService;
+import com.techbrain.chat.to.DedupeDecision;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dedupe Service Implementation
+ *
+ * - Local: bounded map in claim order (app.dedupe.local-max-entries); answers retries
+ *   that reach the same node without Redis
+ * - Redis (app.dedupe.redis=true): "dedupe:<sender>:<clientMessageId>" set with SET NX,
+ *   holding "pending" until the send completes and then the server message ID, so retries
+ *   that reach another node are caught too; falls back to the local map while Redis is
+ *   unreachable
+ * - A claim is "pending" for app.dedupe.pending-seconds only (a node that dies mid-send
+ *   does not block retries for long); complete() keeps the ID for app.dedupe.window-seconds
+ * - Only completed sends are remembered locally: another node's "pending" is checked in
+ *   Redis again on every retry, since that node may still release it
+ */
+@Service
+public class DedupeServiceImpl implements DedupeService {
+
+    private static final Logger log = LoggerFactory.getLogger(DedupeServiceImpl.class);
+
+    private static final String DEDUPE_KEY = "dedupe:";  // + senderId:clientMessageId
+    private static final String PENDING = "pending";     // Claimed, not persisted yet
+
+    // Claim the key, or return what the first send stored (nil = claimed now)
+    private static final RedisScript<String> CLAIM_SCRIPT = RedisScript.of(
+            "if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'EX', ARGV[2]) then return false end\n" +
+            "return redis.call('GET', KEYS[1])", String.class);
+
+    // Drop a claim that never completed
+    private static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end\n" +
+            "return 0", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final boolean enabled;
+    private final boolean redisEnabled;
+    private final long windowSeconds;
+    private final long pendingSeconds;
+    private final int maxIdLength;
+
+    // Claim order (oldest dropped first when full)
+    private final LinkedHashMap<String, LocalEntry> local;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter pendingHits;
+
+    public DedupeServiceImpl(StringRedisTemplate stringRedisTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.dedupe.enabled:true}") boolean enabled,
+                             @Value("${app.dedupe.redis:true}") boolean redisEnabled,
+                             @Value("${app.dedupe.window-seconds:300}") long windowSeconds,
+                             @Value("${app.dedupe.pending-seconds:30}") long pendingSeconds,
+                             @Value("${app.dedupe.local-max-entries:100000}") int maxEntries,
+                             @Value("${app.dedupe.max-id-length:128}") int maxIdLength) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+        this.redisEnabled = redisEnabled;
+        this.windowSeconds = windowSeconds;
+        this.pendingSeconds = Math.max(1, Math.min(pendingSeconds, windowSeconds));
+        this.maxIdLength = maxIdLength;
+        this.local = new LinkedHashMap<>(1024, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LocalEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        this.hits = Counter.builder("chat.dedupe.checks")
+                .description("Sends with a client message ID, by outcome")
+                .tag("result", "duplicate")
+                .register(meterRegistry);
+        this.misses = Counter.builder("chat.dedupe.checks")
+                .description("Sends with a client message ID, by outcome")
+                .tag("result", "first")
+                .register(meterRegistry);
+        this.pendingHits = Counter.builder("chat.dedupe.checks")
+                .description("Sends with a client message ID, by outcome")
+                .tag("result", "in_progress")
+                .register(meterRegistry);
+        Gauge.builder("chat.dedupe.hit.ratio", this, DedupeServiceImpl::hitRatio)
+                .description("Share of sends with a client message ID that were retries")
+                .register(meterRegistry);
+        Gauge.builder("chat.dedupe.local.entries", this, DedupeServiceImpl::localSize)
+                .description("Client message IDs remembered on this node")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public DedupeDecision claim(String senderId, String clientMessageId) {
+        if (!enabled || clientMessageId == null || clientMessageId.isEmpty()) {
+            return DedupeDecision.first();
+        }
+        if (clientMessageId.length() > maxIdLength) {
+            throw new IllegalArgumentException("clientMessageId longer than " + maxIdLength + " characters");
+        }
+
+        String key = senderId + ":" + clientMessageId;
+        long now = System.currentTimeMillis();
+        LocalEntry claimed = new LocalEntry(PENDING, now + pendingSeconds * 1000);
+        synchronized (local) {
+            LocalEntry entry = local.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                if (PENDING.equals(entry.messageId)) {
+                    pendingHits.increment();
+                    return DedupeDecision.inProgress();
+                }
+                hits.increment();
+                return DedupeDecision.duplicate(entry.messageId);
+            }
+            local.remove(key);
+            local.put(key, claimed);
+        }
+
+        if (redisEnabled) {
+            try {
+                String existing = stringRedisTemplate.execute(CLAIM_SCRIPT, List.of(DEDUPE_KEY + key),
+                        PENDING, String.valueOf(pendingSeconds));
+                if (existing != null) {
+                    // Claimed through another node (or before this node restarted)
+                    synchronized (local) {
+                        if (PENDING.equals(existing)) {
+                            // Not ours to remember: that node may still release it
+                            local.remove(key, claimed);
+                        } else if (local.get(key) == claimed) {
+                            claimed.messageId = existing;
+                            claimed.expiresAt = now + windowSeconds * 1000;
+                        }
+                    }
+                    if (PENDING.equals(existing)) {
+                        pendingHits.increment();
+                        return DedupeDecision.inProgress();
+                    }
+                    hits.increment();
+                    return DedupeDecision.duplicate(existing);
+                }
+            } catch (Exception e) {
+                log.debug("Redis dedupe unavailable, using the local window: {}", e.getMessage());
+            }
+        }
+
+        misses.increment();
+        return DedupeDecision.first();
+    }
+
+    @Override
+    public void complete(String senderId, String clientMessageId, String messageId) {
+        if (!enabled || clientMessageId == null || clientMessageId.isEmpty() || messageId == null) {
+            return;
+        }
+        String key = senderId + ":" + clientMessageId;
+        long now = System.currentTimeMillis();
+        synchronized (local) {
+            LocalEntry entry = local.get(key);
+            if (entry != null) {
+                entry.messageId = messageId;
+                entry.expiresAt = now + windowSeconds * 1000;
+            }
+        }
+        if (redisEnabled) {
+            try {
+                // Replaces the pending claim and its short TTL
+                stringRedisTemplate.opsForValue().set(DEDUPE_KEY + key, messageId,
+                        Duration.ofSeconds(windowSeconds));
+            } catch (Exception e) {
+                log.debug("Failed to record dedupe entry {}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void release(String senderId, String clientMessageId) {
+        if (!enabled || clientMessageId == null || clientMessageId.isEmpty()) {
+            return;
+        }
+        String key = senderId + ":" + clientMessageId;
+        synchronized (local) {
+            LocalEntry entry = local.get(key);
+            if (entry != null && PENDING.equals(entry.messageId)) {
+                local.remove(key);
+            }
+        }
+        if (redisEnabled) {
+            try {
+                stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(DEDUPE_KEY + key), PENDING);
+            } catch (Exception e) {
+                log.debug("Failed to release dedupe claim {}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Forget client message IDs older than the window
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (local) {
+            // Pending and completed entries expire at different ages, so not in claim order
+            local.values().removeIf(entry -> entry.expiresAt <= now);
+        }
+    }
+
+    // Helper methods
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count() + pendingHits.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private int localSize() {
+        synchronized (local) {
+            return local.size();
+        }
+    }
+
+    private static final class LocalEntry {
+        private String messageId;           // PENDING until the first send completes
+        private long expiresAt;             // Pending TTL, then the full window from complete()
+
+        private LocalEntry(String messageId, long expiresAt) {
+            this.messageId = messageId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
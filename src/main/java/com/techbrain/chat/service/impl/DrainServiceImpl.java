@@ -0,0 +1,190 @@
+package com.techbrain.chat.service.impl;
+
+import com.techbrain.chat.service.ClusterRoutingService;
+import com.techbrain.chat.service.DrainService;
+import com.techbrain.chat.service.KafkaConsumerService;
+import com.techbrain.chat.service.PresenceNotificationService;
+import com.techbrain.chat.service.ServiceDiscoveryService;
+import com.techbrain.chat.utils.OrderedDeliveryExecutor;
+import com.techbrain.chat.utils.SessionFrameWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drain Service Implementation
+ *
+ * - SmartLifecycle with the highest phase: stop() runs before the web server's graceful
+ *   shutdown and before the Kafka listeners stop, so remote deliveries continue while
+ *   sessions are moved
+ * - Waits app.drain.propagation-ms after marking the node draining, so the other nodes'
+ *   rings (refreshed every app.cluster.ring.refresh-ms) agree with the reconnect hints
+ * - Closes app.drain.wave-size sessions every app.drain.wave-interval-ms; whatever is left
+ *   after app.drain.timeout-ms is closed at once
+ */
+@Service
+public class DrainServiceImpl implements DrainService, SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(DrainServiceImpl.class);
+
+    private final KafkaConsumerService kafkaConsumerService;
+    private final ServiceDiscoveryService serviceDiscoveryService;
+    private final ClusterRoutingService clusterRoutingService;
+    private final PresenceNotificationService presenceNotificationService;
+    private final OrderedDeliveryExecutor deliveryExecutor;
+    private final SessionFrameWriter frameWriter;
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean running;
+
+    @Value("${app.drain.propagation-ms:6000}")
+    private long propagationMs;
+
+    @Value("${app.drain.wave-size:200}")
+    private int waveSize;
+
+    @Value("${app.drain.wave-interval-ms:1000}")
+    private long waveIntervalMs;
+
+    @Value("${app.drain.max-backoff-ms:5000}")
+    private long maxBackoffMs;
+
+    @Value("${app.drain.timeout-ms:30000}")
+    private long timeoutMs;
+
+    public DrainServiceImpl(KafkaConsumerService kafkaConsumerService,
+                            ServiceDiscoveryService serviceDiscoveryService,
+                            ClusterRoutingService clusterRoutingService,
+                            PresenceNotificationService presenceNotificationService,
+                            OrderedDeliveryExecutor deliveryExecutor,
+                            SessionFrameWriter frameWriter) {
+        this.kafkaConsumerService = kafkaConsumerService;
+        this.serviceDiscoveryService = serviceDiscoveryService;
+        this.clusterRoutingService = clusterRoutingService;
+        this.presenceNotificationService = presenceNotificationService;
+        this.deliveryExecutor = deliveryExecutor;
+        this.frameWriter = frameWriter;
+    }
+
+    @Override
+    public boolean isDraining() {
+        return draining.get();
+    }
+
+    @Override
+    public void drain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        List<WebSocketSession> sessions = new ArrayList<>(kafkaConsumerService.getSessions().values());
+        log.info("Draining node {} with {} sessions", clusterRoutingService.getLocalNodeId(), sessions.size());
+
+        // Leave the ring here and (after one refresh) on every other node
+        serviceDiscoveryService.markDraining();
+        clusterRoutingService.refresh();
+        if (!sessions.isEmpty()) {
+            sleep(Math.min(propagationMs, timeoutMs / 2));
+        }
+
+        Map<String, String> usersBySession = new HashMap<>();
+        kafkaConsumerService.getUserSessions().forEach((userId, sessionId) -> usersBySession.put(sessionId, userId));
+
+        // Close in waves; past the deadline, close the rest at once
+        int closed = 0;
+        while (closed < sessions.size()) {
+            int waveEnd = System.currentTimeMillis() < deadline
+                    ? Math.min(closed + waveSize, sessions.size())
+                    : sessions.size();
+
+            for (WebSocketSession session : sessions.subList(closed, waveEnd)) {
+                migrate(session, usersBySession.get(session.getId()));
+            }
+            closed = waveEnd;
+
+            if (closed < sessions.size()) {
+                sleep(waveIntervalMs);
+            }
+        }
+
+        // Offline changes of the closed sessions, then deliveries still in flight
+        presenceNotificationService.drain();
+        if (!deliveryExecutor.awaitIdle(Math.max(0, deadline - System.currentTimeMillis()) + 1000, TimeUnit.MILLISECONDS)) {
+            log.warn("Drain finished with deliveries still pending");
+        }
+
+        log.info("Node {} drained ({} sessions moved)", clusterRoutingService.getLocalNodeId(), closed);
+    }
+
+    // ============ LIFECYCLE ============
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        try {
+            drain();
+        } finally {
+            running = false;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Stop before everything else (web server, Kafka listeners)
+        return Integer.MAX_VALUE;
+    }
+
+    // Helper methods
+
+    /**
+     * Tell the client where and when to reconnect, then close the session
+     */
+    private void migrate(WebSocketSession session, String userId) {
+        try {
+            if (session.isOpen()) {
+                String owner = userId != null ? clusterRoutingService.ownerOf(userId) : null;
+
+                Map<String, Object> hint = new LinkedHashMap<>();
+                hint.put("type", "reconnect");
+                // No other node on the ring: reconnect through the load balancer without a node
+                hint.put("reconnectTo", owner != null && !owner.equals(clusterRoutingService.getLocalNodeId()) ? owner : null);
+                hint.put("retryAfterMs", ThreadLocalRandom.current().nextLong(maxBackoffMs + 1));
+                frameWriter.sendControl(session, hint);
+            }
+            session.close(CloseStatus.SERVICE_RESTARTED);
+        } catch (Exception e) {
+            log.warn("Failed to migrate session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.techbrain.chat.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techbrain.chat.service.AsyncRedisService;
+import com.techbrain.chat.service.InboxService;
+import com.techbrain.chat.to.Message;
+import com.techbrain.chat.utils.RedisRoundTripMetrics;
+import com.techbrain.chat.utils.SessionFrameWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inbox Service Implementation
+ *
+ * Redis layout per user:
+ * - "user:inbox:<userId>"           LIST of message JSON (oldest first), capped at max-length
+ * - "user:inbox:delivered:<userId>" ZSET of message IDs delivered live, capped at max-length
+ *
+ * Every multi-command step is a Lua script, i.e. a single round trip;
+ * pushes go through the async Redis layer and never block the sender.
+ * Draining runs on a small scheduler, never on the WebSocket thread:
+ * each step takes one chunk (LRANGE + LTRIM), skips IDs already
+ * delivered live, waits until the chunk's frames are written (entries whose
+ * write failed go back to the head of the inbox), and waits long enough
+ * to respect max-per-second.
+ */
+@Service
+public class InboxServiceImpl implements InboxService {
+
+    private static final Logger log = LoggerFactory.getLogger(InboxServiceImpl.class);
+
+    private static final String INBOX_KEY = "user:inbox:";
+    private static final String DELIVERED_KEY = "user:inbox:delivered:";
+
+    // Append, keep only the newest max-length entries, refresh expiry
+    private static final RedisScript<Long> PUSH_SCRIPT = RedisScript.of(
+            "redis.call('RPUSH', KEYS[1], ARGV[1])\n" +
+            "redis.call('LTRIM', KEYS[1], -tonumber(ARGV[2]), -1)\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[3])\n" +
+            "return 1", Long.class);
+
+    // Record a live delivery; IDs older than the inbox cap can no longer be in the inbox
+    private static final RedisScript<Long> MARK_DELIVERED_SCRIPT = RedisScript.of(
+            "redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[3]) + 1))\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[4])\n" +
+            "return 1", Long.class);
+
+    // Read the oldest chunk and cut it off the inbox
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TAKE_CHUNK_SCRIPT = RedisScript.of(
+            "local chunk = redis.call('LRANGE', KEYS[1], 0, tonumber(ARGV[1]) - 1)\n" +
+            "redis.call('LTRIM', KEYS[1], tonumber(ARGV[1]), -1)\n" +
+            "return chunk", List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final AsyncRedisService asyncRedisService;
+    private final ObjectMapper objectMapper;
+    private final RedisRoundTripMetrics roundTripMetrics;
+    private final SessionFrameWriter frameWriter;
+    private final ScheduledExecutorService drainScheduler;
+
+    // Drains in progress on this server (userId -> drain)
+    private final Map<String, Drain> activeDrains = new ConcurrentHashMap<>();
+
+    private final Counter drainedMessages;
+    private final Counter skippedDuplicates;
+
+    @Value("${app.inbox.max-length:500}")
+    private int maxLength;
+
+    @Value("${app.inbox.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${app.inbox.drain.chunk-size:50}")
+    private int chunkSize;
+
+    @Value("${app.inbox.drain.max-per-second:200}")
+    private int maxPerSecond;
+
+    public InboxServiceImpl(StringRedisTemplate stringRedisTemplate,
+                            AsyncRedisService asyncRedisService,
+                            @Qualifier("objectMapper") ObjectMapper objectMapper,
+                            RedisRoundTripMetrics roundTripMetrics,
+                            SessionFrameWriter frameWriter,
+                            MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.asyncRedisService = asyncRedisService;
+        this.objectMapper = objectMapper;
+        this.roundTripMetrics = roundTripMetrics;
+        this.frameWriter = frameWriter;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.drainScheduler = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "inbox-drain-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.drainedMessages = Counter.builder("chat.inbox.drained")
+                .description("Inbox messages delivered to reconnecting sessions")
+                .register(meterRegistry);
+        this.skippedDuplicates = Counter.builder("chat.inbox.duplicates.skipped")
+                .description("Inbox messages skipped because they were already delivered live")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public CompletableFuture<Void> push(Message message) {
+        String inboxKey = INBOX_KEY + message.getRoomId();
+        String messageJson;
+        try {
+            messageJson = objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(new RuntimeException("Failed to serialize inbox message", e));
+        }
+        long ttlSeconds = TimeUnit.HOURS.toSeconds(ttlHours);
+
+        roundTripMetrics.record("inbox.push");
+        return asyncRedisService.eval(PUSH_SCRIPT, List.of(inboxKey),
+                        messageJson, String.valueOf(maxLength), String.valueOf(ttlSeconds))
+                .thenApply(ignored -> null);
+    }
+
+    @Override
+    public void markDelivered(String userId, String messageId) {
+        if (userId == null || messageId == null) {
+            return;
+        }
+
+        // A drain running right now must not resend it either
+        Drain drain = activeDrains.get(userId);
+        if (drain != null) {
+            drain.delivered.add(messageId);
+        }
+
+        // Runs on the writing thread: through the async connection, never blocking it
+        String deliveredKey = DELIVERED_KEY + userId;
+        long ttlSeconds = TimeUnit.HOURS.toSeconds(ttlHours);
+        roundTripMetrics.record("inbox.mark-delivered");
+        asyncRedisService.eval(MARK_DELIVERED_SCRIPT, List.of(deliveredKey),
+                        String.valueOf(System.currentTimeMillis()), messageId,
+                        String.valueOf(maxLength), String.valueOf(ttlSeconds))
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        log.warn("Failed to mark message {} delivered for user {}: {}", messageId, userId, error.getMessage());
+                    }
+                });
+    }
+
+    @Override
+    public void drain(String userId, WebSocketSession session) {
+        Drain drain = new Drain(userId, session);
+
+        // A newer session supersedes an older drain (e.g. quick reconnect)
+        Drain previous = activeDrains.put(userId, drain);
+        if (previous != null) {
+            drain.delivered.addAll(previous.delivered);
+        }
+
+        drainScheduler.execute(() -> startDrain(drain));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        drainScheduler.shutdownNow();
+    }
+
+    // Helper methods
+
+    private void startDrain(Drain drain) {
+        try {
+            Set<String> deliveredLive = stringRedisTemplate.opsForZSet()
+                    .range(DELIVERED_KEY + drain.userId, 0, -1);
+            if (deliveredLive != null) {
+                drain.delivered.addAll(deliveredLive);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to load live deliveries for user {}: {}", drain.userId, e.getMessage());
+        }
+        drainChunk(drain);
+    }
+
+    private void drainChunk(Drain drain) {
+        String inboxKey = INBOX_KEY + drain.userId;
+
+        if (activeDrains.get(drain.userId) != drain || !drain.session.isOpen()) {
+            finish(drain);
+            return;
+        }
+
+        List<String> chunk;
+        try {
+            @SuppressWarnings("unchecked")
+            List<String> entries = stringRedisTemplate.execute(TAKE_CHUNK_SCRIPT, List.of(inboxKey),
+                    String.valueOf(chunkSize));
+            chunk = entries != null ? entries : List.of();
+        } catch (Exception e) {
+            log.warn("Failed to read inbox of user {}: {}", drain.userId, e.getMessage());
+            finish(drain);
+            return;
+        }
+
+        int skipped = 0;
+        List<String> sending = new ArrayList<>(chunk.size());
+        List<CompletableFuture<Void>> writes = new ArrayList<>(chunk.size());
+        for (String entry : chunk) {
+            String messageId = readMessageId(entry);
+            if (messageId != null && drain.delivered.contains(messageId)) {
+                skipped++;
+                continue;
+            }
+            CompletableFuture<Void> write;
+            try {
+                write = frameWriter.sendMessageJson(drain.session, entry);
+            } catch (Exception e) {
+                write = CompletableFuture.failedFuture(e);
+            }
+            sending.add(entry);
+            writes.add(write);
+        }
+        skippedDuplicates.increment(skipped);
+
+        // Next step once every frame of the chunk is written (or failed), back on the drain pool
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]))
+                .whenCompleteAsync((ignored, error) -> afterChunk(drain, chunk.size(), sending, writes), drainScheduler);
+    }
+
+    private void afterChunk(Drain drain, int chunkLength, List<String> entries, List<CompletableFuture<Void>> writes) {
+        List<String> failed = new ArrayList<>();
+        for (int i = 0; i < writes.size(); i++) {
+            if (writes.get(i).isCompletedExceptionally()) {
+                failed.add(entries.get(i));
+            }
+        }
+        int sent = writes.size() - failed.size();
+        drainedMessages.increment(sent);
+
+        if (!failed.isEmpty()) {
+            // Not written (session closed or overflowed): back at the head, in order
+            log.debug("Inbox drain for user {} interrupted, {} messages requeued", drain.userId, failed.size());
+            requeue(INBOX_KEY + drain.userId, failed);
+            finish(drain);
+            return;
+        }
+
+        if (chunkLength < chunkSize) {
+            log.info("📬 Inbox drained for user {}", drain.userId);
+            finish(drain);
+            return;
+        }
+
+        // Per-connect rate limit: pace chunks at max-per-second
+        long delayMillis = Math.max(1, sent * 1000L / Math.max(1, maxPerSecond));
+        drainScheduler.schedule(() -> drainChunk(drain), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private String readMessageId(String entry) {
+        try {
+            return objectMapper.readValue(entry, Message.class).getId();
+        } catch (Exception e) {
+            return null;  // Deliver as-is; the client parses it anyway
+        }
+    }
+
+    private void requeue(String inboxKey, List<String> remaining) {
+        try {
+            List<String> reversed = new ArrayList<>(remaining);
+            Collections.reverse(reversed);
+            stringRedisTemplate.opsForList().leftPushAll(inboxKey, reversed);
+        } catch (Exception e) {
+            log.error("Failed to requeue {} inbox messages to {}", remaining.size(), inboxKey, e);
+        }
+    }
+
+    private void finish(Drain drain) {
+        activeDrains.remove(drain.userId, drain);
+    }
+
+    private static class Drain {
+        private final String userId;
+        private final WebSocketSession session;
+        private final Set<String> delivered = ConcurrentHashMap.newKeySet();
+
+        private Drain(String userId, WebSocketSession session) {
+            this.userId = userId;
+            this.session = session;
+        }
+    }
+}
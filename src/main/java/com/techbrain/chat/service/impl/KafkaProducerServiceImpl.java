@@ -2,6 +2,8 @@ package com.techbrain.chat.service.impl;
 
 import com.techbrain.chat.service.KafkaProducerService;
 import com.techbrain.chat.to.Message;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -9,6 +11,7 @@ import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class KafkaProducerServiceImpl implements KafkaProducerService {
@@ -16,17 +19,29 @@ public class KafkaProducerServiceImpl implements KafkaProducerService {
     private static final Logger log = LoggerFactory.getLogger(KafkaProducerServiceImpl.class);
 
     private final KafkaTemplate<String, Message> kafkaTemplate;
+    private final MeterRegistry meterRegistry;
 
-    public KafkaProducerServiceImpl(KafkaTemplate<String, Message> kafkaTemplate) {
+    public KafkaProducerServiceImpl(KafkaTemplate<String, Message> kafkaTemplate, MeterRegistry meterRegistry) {
         this.kafkaTemplate = kafkaTemplate;
+        this.meterRegistry = meterRegistry;
     }
 
     @Override
-    public void publish(String topic, Message message) {
+    public CompletableFuture<Void> publish(String topic, Message message) {
         try {
+            long start = System.nanoTime();
             CompletableFuture<SendResult<String, Message>> future = kafkaTemplate.send(topic, message);
             
-            future.whenComplete((result, ex) -> {
+            return future.whenComplete((result, ex) -> {
+                // Send to broker ack (acks=all), as a histogram per topic and outcome
+                Timer.builder("chat.kafka.publish.latency")
+                        .description("Time from send to broker acknowledgement")
+                        .tag("topic", topic)
+                        .tag("result", ex == null ? "ok" : "error")
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
                 if (ex == null) {
                     log.info("📤 Published to Kafka topic [{}]: {} from {} (Offset: {})",
                         topic, 
@@ -36,7 +51,7 @@ public class KafkaProducerServiceImpl implements KafkaProducerService {
                 } else {
                     log.error("Failed to publish to topic [{}]: {}", topic, ex.getMessage(), ex);
                 }
-            });
+            }).thenApply(result -> null);
         } catch (Exception e) {
             log.error("Exception publishing to Kafka topic [{}]", topic, e);
             throw new RuntimeException("Failed to publish message to Kafka", e);
@@ -44,22 +59,36 @@ public class KafkaProducerServiceImpl implements KafkaProducerService {
     }
 
     @Override
-    public void publishUnicast(String userId, Message message) {
+    public CompletableFuture<Void> publishUnicast(String userId, Message message) {
         // Use single shared topic for all unicast messages
         // Target userId is in message.roomId, consumers will filter
-        publish("chat.unicast", message);
+        return publish("chat.unicast", message);
     }
 
     @Override
-    public void publishMulticast(String roomId, Message message) {
+    public CompletableFuture<Void> publishMulticast(String roomId, Message message) {
         // Use single shared topic for all multicast messages
         // Target roomId is in message.roomId, consumers will filter
-        publish("chat.multicast", message);
+        return publish("chat.multicast", message);
     }
 
     @Override
-    public void publishBroadcast(Message message) {
-        publish("chat.broadcast", message);
+    public CompletableFuture<Void> publishBroadcast(Message message) {
+        return publish("chat.broadcast", message);
+    }
+
+    @Override
+    public CompletableFuture<Void> publishPresence(Message message) {
+        return publish("chat.presence", message);
     }
-}
 
+    @Override
+    public CompletableFuture<Void> publishSignal(Message message) {
+        return publish("chat.signal", message);
+    }
+
+    @Override
+    public CompletableFuture<Void> publishMembership(Message message) {
+        return publish("chat.membership", message);
+    }
+}
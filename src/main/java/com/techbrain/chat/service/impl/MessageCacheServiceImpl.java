@@ -0,0 +1,253 @@
+package com.techbrain.chat.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techbrain.chat.service.MessageCacheService;
+import com.techbrain.chat.to.Message;
+import com.techbrain.chat.utils.RedisRoundTripMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Message Cache Service Implementation
+ *
+ * Each room gets a Redis list "room:recent:<roomId>" holding the latest
+ * N messages as JSON (index 0 = newest):
+ * - Writes are write-through: one script (LPUSHX + LTRIM) after the DB commit
+ * - A cold room is warmed from MySQL on its first history read
+ * - A short-lived fill token guards the warm-up against a concurrent send,
+ *   so a fill based on an older DB snapshot is simply discarded
+ */
+@Service
+public class MessageCacheServiceImpl implements MessageCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageCacheServiceImpl.class);
+
+    private static final String RECENT_MESSAGES_KEY = "room:recent:";
+    private static final String FILL_TOKEN_KEY = "room:recent:fill:";
+    private static final long FILL_TOKEN_TTL_MILLIS = 5000;
+
+    // Push only onto a warm window, cap it, and cancel any in-flight fill
+    private static final RedisScript<Long> APPEND_SCRIPT = RedisScript.of(
+            "redis.call('DEL', KEYS[2])\n" +
+            "if redis.call('LPUSHX', KEYS[1], ARGV[1]) > 0 then\n" +
+            "  redis.call('LTRIM', KEYS[1], 0, tonumber(ARGV[2]) - 1)\n" +
+            "  redis.call('EXPIRE', KEYS[1], ARGV[3])\n" +
+            "end\n" +
+            "return 1", Long.class);
+
+    // Fill the window only if no message was appended since the token was taken
+    private static final RedisScript<Long> FILL_SCRIPT = RedisScript.of(
+            "if redis.call('GET', KEYS[2]) ~= ARGV[1] then return 0 end\n" +
+            "redis.call('DEL', KEYS[2], KEYS[1])\n" +
+            "for i = 3, #ARGV do redis.call('RPUSH', KEYS[1], ARGV[i]) end\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2])\n" +
+            "return 1", Long.class);
+
+    // The requested range plus the window length as the last element; nothing if the window is cold
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> READ_WINDOW_SCRIPT = RedisScript.of(
+            "local length = redis.call('LLEN', KEYS[1])\n" +
+            "if length == 0 then return {} end\n" +
+            "local entries = redis.call('LRANGE', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "entries[#entries + 1] = tostring(length)\n" +
+            "return entries", List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final RedisRoundTripMetrics roundTripMetrics;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypasses;
+    private final Timer cacheReads;
+    private final Timer databaseReads;
+
+    @Value("${app.chat.history.cache-enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.chat.history.window-size:100}")
+    private int windowSize;
+
+    @Value("${app.chat.history.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    public MessageCacheServiceImpl(StringRedisTemplate stringRedisTemplate,
+                                   @Qualifier("objectMapper") ObjectMapper objectMapper,
+                                   RedisRoundTripMetrics roundTripMetrics,
+                                   MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.roundTripMetrics = roundTripMetrics;
+
+        this.hits = Counter.builder("chat.history.cache.requests").tag("result", "hit")
+                .description("History reads served from the recent-messages window")
+                .register(meterRegistry);
+        this.misses = Counter.builder("chat.history.cache.requests").tag("result", "miss")
+                .description("History reads that had to warm the window from MySQL")
+                .register(meterRegistry);
+        this.bypasses = Counter.builder("chat.history.cache.requests").tag("result", "bypass")
+                .description("History reads deeper than the window (always MySQL)")
+                .register(meterRegistry);
+        this.cacheReads = Timer.builder("chat.history.read").tag("source", "cache")
+                .register(meterRegistry);
+        this.databaseReads = Timer.builder("chat.history.read").tag("source", "database")
+                .register(meterRegistry);
+
+        Gauge.builder("chat.history.cache.hit.ratio", this, MessageCacheServiceImpl::hitRatio)
+                .description("Share of window-eligible history reads served from Redis")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void append(Message message) {
+        if (!enabled || message.getRoomId() == null) {
+            return;
+        }
+
+        String key = RECENT_MESSAGES_KEY + message.getRoomId();
+        String fillKey = FILL_TOKEN_KEY + message.getRoomId();
+        long ttlSeconds = TimeUnit.MINUTES.toSeconds(ttlMinutes);
+
+        try {
+            String json = objectMapper.writeValueAsString(message);
+
+            stringRedisTemplate.execute(APPEND_SCRIPT, List.of(key, fillKey),
+                    json, String.valueOf(windowSize), String.valueOf(ttlSeconds));
+            roundTripMetrics.record("history.append");
+        } catch (Exception e) {
+            // A stale window is worse than a cold one
+            log.warn("Failed to append message to recent window of room {}: {}", message.getRoomId(), e.getMessage());
+            evict(message.getRoomId());
+        }
+    }
+
+    @Override
+    public List<Message> getMessages(String roomId, int page, int size,
+                                     BiFunction<Integer, Integer, List<Message>> loader) {
+        int offset = page * size;
+
+        if (!enabled || size <= 0 || offset + size > windowSize) {
+            bypasses.increment();
+            return databaseReads.record(() -> loader.apply(page, size));
+        }
+
+        List<Message> cached = readWindow(roomId, offset, size);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        List<Message> window = databaseReads.record(() -> warm(roomId, loader));
+
+        if (offset >= window.size()) {
+            return List.of();
+        }
+        return new ArrayList<>(window.subList(offset, Math.min(offset + size, window.size())));
+    }
+
+    @Override
+    public void evict(String roomId) {
+        try {
+            stringRedisTemplate.delete(List.of(RECENT_MESSAGES_KEY + roomId, FILL_TOKEN_KEY + roomId));
+        } catch (Exception e) {
+            log.warn("Failed to evict recent window of room {}: {}", roomId, e.getMessage());
+        }
+    }
+
+    // Helper methods
+
+    /**
+     * @return messages from the window (empty for a page past its end), or null if the window is cold
+     */
+    @SuppressWarnings("unchecked")
+    private List<Message> readWindow(String roomId, int offset, int size) {
+        long start = System.nanoTime();
+        try {
+            // One round trip: the range and whether the window exists at all
+            List<String> reply = stringRedisTemplate.execute(READ_WINDOW_SCRIPT,
+                    List.of(RECENT_MESSAGES_KEY + roomId),
+                    String.valueOf(offset), String.valueOf(offset + size - 1));
+
+            if (reply == null || reply.isEmpty()) {
+                return null;
+            }
+            // A warm window shorter than window-size holds the room's whole history,
+            // so a page at or past its end is empty (a full window never gets here: see getMessages)
+            List<String> entries = reply.subList(0, reply.size() - 1);
+            if (entries.isEmpty()) {
+                return List.of();
+            }
+
+            List<Message> messages = new ArrayList<>(entries.size());
+            for (String entry : entries) {
+                messages.add(objectMapper.readValue(entry, Message.class));
+            }
+            return messages;
+        } catch (Exception e) {
+            log.warn("Failed to read recent window of room {}: {}", roomId, e.getMessage());
+            return null;
+        } finally {
+            cacheReads.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Load the latest window from MySQL and publish it to Redis
+     */
+    private List<Message> warm(String roomId, BiFunction<Integer, Integer, List<Message>> loader) {
+        String key = RECENT_MESSAGES_KEY + roomId;
+        String fillKey = FILL_TOKEN_KEY + roomId;
+        String token = UUID.randomUUID().toString();
+
+        // Take the token BEFORE reading MySQL: an append committed after this point deletes it
+        boolean tokenTaken = false;
+        try {
+            stringRedisTemplate.opsForValue().set(fillKey, token, FILL_TOKEN_TTL_MILLIS, TimeUnit.MILLISECONDS);
+            tokenTaken = true;
+        } catch (Exception e) {
+            log.warn("Failed to take fill token for room {}: {}", roomId, e.getMessage());
+        }
+
+        List<Message> window = loader.apply(0, windowSize);
+
+        if (tokenTaken && !window.isEmpty()) {
+            try {
+                Object[] args = new Object[window.size() + 2];
+                args[0] = token;
+                args[1] = String.valueOf(TimeUnit.MINUTES.toSeconds(ttlMinutes));
+                for (int i = 0; i < window.size(); i++) {
+                    args[i + 2] = objectMapper.writeValueAsString(window.get(i));
+                }
+                Long filled = stringRedisTemplate.execute(FILL_SCRIPT, List.of(key, fillKey), args);
+                if (filled == null || filled == 0) {
+                    log.debug("Skipped warming room {}: a message arrived during the fill", roomId);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to warm recent window of room {}: {}", roomId, e.getMessage());
+            }
+        }
+
+        return window;
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0.0 : hits.count() / total;
+    }
+}
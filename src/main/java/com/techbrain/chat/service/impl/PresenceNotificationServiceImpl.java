@@ -0,0 +1,211 @@
+package com.techbrain.chat.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techbrain.chat.service.KafkaProducerService;
+import com.techbrain.chat.service.PresenceNotificationService;
+import com.techbrain.chat.service.RoomService;
+import com.techbrain.chat.to.Message;
+import com.techbrain.chat.to.PresenceChange;
+import com.techbrain.chat.to.Room;
+import com.techbrain.chat.utils.MessageType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Presence Notification Service Implementation
+ *
+ * - Pending changes are keyed by user, so only the latest state per interval survives
+ * - A change back to the last announced state is dropped (connect/disconnect flaps)
+ * - A user is announced at most once per app.presence.notify.min-user-interval-ms;
+ *   later changes wait (and keep coalescing) until the interval has passed
+ * - At most app.presence.notify.max-changes-per-flush changes go out per flush
+ * - Watchers come from one room query per flush; rooms larger than
+ *   app.presence.notify.max-room-size are skipped
+ * - A flush waits for Kafka to take its changes (app.presence.notify.publish-timeout-ms);
+ *   changes that were not taken are retried next interval and not marked announced
+ */
+@Service
+public class PresenceNotificationServiceImpl implements PresenceNotificationService {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceNotificationServiceImpl.class);
+
+    private final RoomService roomService;
+    private final KafkaProducerService kafkaProducerService;
+    private final ObjectMapper objectMapper;
+
+    // Latest unpublished change per user
+    private final Map<String, PresenceChange> pending = new ConcurrentHashMap<>();
+
+    // Last published state per user with the publish time (flush thread only),
+    // kept for one min-user-interval
+    private final Map<String, PresenceChange> announced = new HashMap<>();
+
+    private final Counter publishedChanges;
+    private final Counter coalescedChanges;
+    private final Counter deferredChanges;
+
+    @Value("${app.server-id}")
+    private String serverId;
+
+    @Value("${app.presence.notify.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.presence.notify.min-user-interval-ms:10000}")
+    private long minUserIntervalMs;
+
+    @Value("${app.presence.notify.max-changes-per-flush:1000}")
+    private int maxChangesPerFlush;
+
+    @Value("${app.presence.notify.max-room-size:200}")
+    private int maxRoomSize;
+
+    @Value("${app.presence.notify.publish-timeout-ms:5000}")
+    private long publishTimeoutMs;
+
+    public PresenceNotificationServiceImpl(RoomService roomService,
+                                           KafkaProducerService kafkaProducerService,
+                                           @Qualifier("objectMapper") ObjectMapper objectMapper,
+                                           MeterRegistry meterRegistry) {
+        this.roomService = roomService;
+        this.kafkaProducerService = kafkaProducerService;
+        this.objectMapper = objectMapper;
+
+        this.publishedChanges = Counter.builder("chat.presence.changes")
+                .tag("result", "published")
+                .description("Presence changes sent to watchers")
+                .register(meterRegistry);
+        this.coalescedChanges = Counter.builder("chat.presence.changes")
+                .tag("result", "coalesced")
+                .description("Presence changes replaced or cancelled before being sent")
+                .register(meterRegistry);
+        this.deferredChanges = Counter.builder("chat.presence.changes")
+                .tag("result", "deferred")
+                .description("Presence changes held back by the per-user or per-flush limit")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void record(String userId, boolean online) {
+        if (!enabled) {
+            return;
+        }
+        if (pending.put(userId, new PresenceChange(userId, online, System.currentTimeMillis())) != null) {
+            coalescedChanges.increment();
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${app.presence.notify.interval-ms:2000}")
+    public void flush() {
+        flush(false);
+    }
+
+    @Override
+    public void drain() {
+        flush(true);
+    }
+
+    // Helper methods
+
+    /**
+     * @param force ignore the per-user and per-flush limits (shutdown)
+     */
+    private synchronized void flush(boolean force) {
+        if (!enabled || pending.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        announced.values().removeIf(change -> now - change.getLastSeen() >= minUserIntervalMs);
+
+        // Pick this interval's changes
+        Map<String, PresenceChange> batch = new HashMap<>();
+        for (PresenceChange change : pending.values()) {
+            PresenceChange last = announced.get(change.getUserId());
+
+            if (last != null && last.isOnline() == change.isOnline()) {
+                // Flapped back to what watchers already know
+                if (pending.remove(change.getUserId(), change)) {
+                    coalescedChanges.increment();
+                }
+            } else if (!force && (last != null || batch.size() >= maxChangesPerFlush)) {
+                deferredChanges.increment();
+            } else if (pending.remove(change.getUserId(), change)) {
+                batch.put(change.getUserId(), change);
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            publish(batch);
+            batch.values().forEach(change -> announced.put(change.getUserId(),
+                    new PresenceChange(change.getUserId(), change.isOnline(), now)));
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // Retry next interval unless a newer change arrived meanwhile
+            batch.values().forEach(change -> pending.putIfAbsent(change.getUserId(), change));
+            log.warn("Failed to publish {} presence changes: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void publish(Map<String, PresenceChange> batch) throws Exception {
+        // Watchers = co-members of every room the user is in (one query for the whole batch)
+        for (Room room : roomService.getRoomsOfUsers(batch.keySet())) {
+            if (room.getMemberIds().size() > maxRoomSize) {
+                continue;
+            }
+            for (String memberId : room.getMemberIds()) {
+                PresenceChange change = batch.get(memberId);
+                if (change == null) {
+                    continue;
+                }
+                if (change.getWatchers() == null) {
+                    change.setWatchers(new HashSet<>());
+                }
+                change.getWatchers().addAll(room.getMemberIds());
+                change.getWatchers().remove(memberId);
+            }
+        }
+
+        List<PresenceChange> changes = new ArrayList<>();
+        for (PresenceChange change : batch.values()) {
+            if (change.getWatchers() != null && !change.getWatchers().isEmpty()) {
+                changes.add(change);
+            }
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        Message message = new Message();
+        message.setType(MessageType.PRESENCE);
+        message.setServerId(serverId);
+        message.setTimestamp(LocalDateTime.now());
+        message.setContent(objectMapper.writeValueAsString(changes));
+
+        // Send failures are asynchronous: wait for the broker, so they reach the retry above
+        kafkaProducerService.publishPresence(message).get(publishTimeoutMs, TimeUnit.MILLISECONDS);
+        publishedChanges.increment(changes.size());
+        log.debug("Published {} presence changes", changes.size());
+    }
+}
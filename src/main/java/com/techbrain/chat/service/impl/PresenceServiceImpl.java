@@ -0,0 +1,190 @@
+package com.techbrain.chat.service.impl;
+
+import com.techbrain.chat.service.AsyncRedisService;
+import com.techbrain.chat.service.KafkaConsumerService;
+import com.techbrain.chat.service.PresenceService;
+import com.techbrain.chat.to.PresencePage;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Presence Service Implementation
+ *
+ * Redis layout:
+ * - "presence:server:<serverId>" SET of user IDs connected to that server,
+ *   expiring with the server's heartbeat TTL
+ * - "presence:servers"           ZSET serverId -> last heartbeat (epoch millis)
+ * - "presence:all"               short-lived union of the live servers' sets,
+ *   rebuilt on demand and paged with SSCAN
+ *
+ * The global scripts derive per-server keys from "presence:servers", so they
+ * assume a single Redis instance (not Redis Cluster), like the rest of this app.
+ */
+@Service
+public class PresenceServiceImpl implements PresenceService {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceServiceImpl.class);
+
+    private static final String SERVER_PRESENCE_KEY = "presence:server:";
+    private static final String SERVERS_KEY = "presence:servers";
+    private static final String ONLINE_UNION_KEY = "presence:all";
+
+    // Add the user and make sure a fresh set still expires with the heartbeat
+    private static final RedisScript<Long> ONLINE_SCRIPT = RedisScript.of(
+            "redis.call('SADD', KEYS[1], ARGV[1])\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2])\n" +
+            "return 1", Long.class);
+
+    private static final RedisScript<Long> OFFLINE_SCRIPT = RedisScript.of(
+            "return redis.call('SREM', KEYS[1], ARGV[1])", Long.class);
+
+    // Heartbeat: register this server, forget servers whose heartbeat expired,
+    // extend this server's set (returns 0 if the set is gone)
+    private static final RedisScript<Long> REFRESH_SCRIPT = RedisScript.of(
+            "redis.call('ZADD', KEYS[2], ARGV[2], ARGV[3])\n" +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', tonumber(ARGV[2]) - tonumber(ARGV[1]) * 1000)\n" +
+            "return redis.call('EXPIRE', KEYS[1], ARGV[1])", Long.class);
+
+    // Re-add this server's local users (after the set expired during a Redis outage)
+    private static final RedisScript<Long> RESTORE_SCRIPT = RedisScript.of(
+            "for i = 2, #ARGV, 1000 do\n" +
+            "  redis.call('SADD', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV)))\n" +
+            "end\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+            "return 1", Long.class);
+
+    // Is the user in the set of any server with a live heartbeat?
+    private static final RedisScript<Long> IS_ONLINE_SCRIPT = RedisScript.of(
+            "local servers = redis.call('ZRANGEBYSCORE', KEYS[1], ARGV[2], '+inf')\n" +
+            "for _, id in ipairs(servers) do\n" +
+            "  if redis.call('SISMEMBER', ARGV[3] .. id, ARGV[1]) == 1 then return 1 end\n" +
+            "end\n" +
+            "return 0", Long.class);
+
+    // Rebuild the union if it expired, then return the SSCAN cursor followed by the page
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCAN_SCRIPT = RedisScript.of(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then\n" +
+            "  local keys = {}\n" +
+            "  for i, id in ipairs(redis.call('ZRANGEBYSCORE', KEYS[2], ARGV[4], '+inf')) do\n" +
+            "    keys[i] = ARGV[5] .. id\n" +
+            "  end\n" +
+            "  if #keys > 0 and redis.call('SUNIONSTORE', KEYS[1], unpack(keys)) > 0 then\n" +
+            "    redis.call('EXPIRE', KEYS[1], ARGV[3])\n" +
+            "  end\n" +
+            "end\n" +
+            "local page = redis.call('SSCAN', KEYS[1], ARGV[1], 'COUNT', ARGV[2])\n" +
+            "local reply = {page[1]}\n" +
+            "for _, member in ipairs(page[2]) do reply[#reply + 1] = member end\n" +
+            "return reply", List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final AsyncRedisService asyncRedisService;
+    private final KafkaConsumerService kafkaConsumerService;
+
+    // Last TTL received from the heartbeat; also applied to sets created in between
+    private volatile long ttlSeconds = 90;
+
+    @Value("${app.server-id}")
+    private String serverId;
+
+    @Value("${app.presence.union-ttl-seconds:10}")
+    private long unionTtlSeconds;
+
+    public PresenceServiceImpl(StringRedisTemplate stringRedisTemplate,
+                               AsyncRedisService asyncRedisService,
+                               KafkaConsumerService kafkaConsumerService) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.asyncRedisService = asyncRedisService;
+        this.kafkaConsumerService = kafkaConsumerService;
+    }
+
+    @Override
+    public CompletableFuture<Void> markOnline(String userId) {
+        return asyncRedisService.eval(ONLINE_SCRIPT, List.of(serverKey()), userId, String.valueOf(ttlSeconds))
+                .thenApply(ignored -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> markOffline(String userId) {
+        return asyncRedisService.eval(OFFLINE_SCRIPT, List.of(serverKey()), userId)
+                .thenApply(ignored -> null);
+    }
+
+    @Override
+    public void refresh(long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+
+        Long extended = stringRedisTemplate.execute(REFRESH_SCRIPT, List.of(serverKey(), SERVERS_KEY),
+                String.valueOf(ttlSeconds), String.valueOf(System.currentTimeMillis()), serverId);
+
+        // The set is gone (expired while Redis was unreachable, or never created): rebuild it
+        if (extended == null || extended == 0) {
+            List<String> localUsers = new ArrayList<>(kafkaConsumerService.getUserSessions().keySet());
+            if (!localUsers.isEmpty()) {
+                Object[] args = new Object[localUsers.size() + 1];
+                args[0] = String.valueOf(ttlSeconds);
+                for (int i = 0; i < localUsers.size(); i++) {
+                    args[i + 1] = localUsers.get(i);
+                }
+                stringRedisTemplate.execute(RESTORE_SCRIPT, List.of(serverKey()), args);
+                log.info("Restored presence of {} local users", localUsers.size());
+            }
+        }
+    }
+
+    @Override
+    public boolean isOnline(String userId) {
+        Long online = stringRedisTemplate.execute(IS_ONLINE_SCRIPT, List.of(SERVERS_KEY),
+                userId, String.valueOf(liveSince()), SERVER_PRESENCE_KEY);
+        return online != null && online == 1;
+    }
+
+    @Override
+    public PresencePage scanOnline(String cursor, int count) {
+        @SuppressWarnings("unchecked")
+        List<String> reply = stringRedisTemplate.execute(SCAN_SCRIPT, List.of(ONLINE_UNION_KEY, SERVERS_KEY),
+                cursor, String.valueOf(count), String.valueOf(unionTtlSeconds),
+                String.valueOf(liveSince()), SERVER_PRESENCE_KEY);
+
+        if (reply == null || reply.isEmpty()) {
+            return new PresencePage(List.of(), "0");
+        }
+        return new PresencePage(new ArrayList<>(reply.subList(1, reply.size())), reply.get(0));
+    }
+
+    /**
+     * Graceful shutdown: this server's users go offline at once instead of after the TTL
+     */
+    @PreDestroy
+    public void clear() {
+        try {
+            stringRedisTemplate.delete(serverKey());
+            stringRedisTemplate.opsForZSet().remove(SERVERS_KEY, serverId);
+        } catch (Exception e) {
+            log.warn("Failed to clear presence of server {}: {}", serverId, e.getMessage());
+        }
+    }
+
+    // Helper methods
+
+    private String serverKey() {
+        return SERVER_PRESENCE_KEY + serverId;
+    }
+
+    /**
+     * Heartbeats older than one TTL belong to dead servers
+     */
+    private long liveSince() {
+        return System.currentTimeMillis() - ttlSeconds * 1000;
+    }
+}
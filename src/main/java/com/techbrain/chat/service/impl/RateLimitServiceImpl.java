@@ -0,0 +1,176 @@
+package com.techbrain.chat.service.impl;
+
+import com.techbrain.chat.service.RateLimitService;
+import com.techbrain.chat.to.Message;
+import com.techbrain.chat.to.RateLimitDecision;
+import com.techbrain.chat.utils.LocalRateLimiter;
+import com.techbrain.chat.utils.MessageType;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate Limit Service Implementation
+ *
+ * - app.ratelimit.mode=local (default): lock-free per-node buckets, no network calls;
+ *   limits apply per node (the BROADCAST limit too)
+ * - app.ratelimit.mode=redis: the same algorithm in one Lua script per limit, so limits
+ *   are cluster-wide; falls back to the local buckets while Redis is unreachable
+ * - The user's permit is given back when the room or broadcast limit refuses the message,
+ *   so a sender blocked by a busy room keeps its own budget
+ */
+@Service
+public class RateLimitServiceImpl implements RateLimitService {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitServiceImpl.class);
+
+    private static final String RATE_LIMIT_KEY = "ratelimit:";  // + scope:id, holds the next arrival time (µs)
+    private static final String BROADCAST_KEY = "global";
+
+    // GCRA on Redis time; ARGV: interval µs, tolerance µs. Returns 0 or the wait in µs
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = RedisScript.of(
+            "local t = redis.call('TIME')\n" +
+            "local now = tonumber(t[1]) * 1000000 + tonumber(t[2])\n" +
+            "local tat = tonumber(redis.call('GET', KEYS[1]) or '0')\n" +
+            "if tat < now then tat = now end\n" +
+            "local nextTat = tat + tonumber(ARGV[1])\n" +
+            "local wait = nextTat - now - tonumber(ARGV[2])\n" +
+            "if wait > 0 then return wait end\n" +
+            "redis.call('SET', KEYS[1], string.format('%.0f', nextTat), 'PX', math.ceil((nextTat - now) / 1000) + 1)\n" +
+            "return 0", Long.class);
+
+    // Give back one permit: move the arrival time back by ARGV[1] µs (expired key = full bucket)
+    private static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then\n" +
+            "  redis.call('DECRBY', KEYS[1], ARGV[1])\n" +
+            "end\n" +
+            "return 1", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final boolean redisMode;
+    private final Limit userLimit;
+    private final Limit roomLimit;
+    private final Limit broadcastLimit;
+
+    public RateLimitServiceImpl(StringRedisTemplate stringRedisTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.ratelimit.enabled:true}") boolean enabled,
+                                @Value("${app.ratelimit.mode:local}") String mode,
+                                @Value("${app.ratelimit.user.per-second:10}") double userRate,
+                                @Value("${app.ratelimit.user.burst:20}") int userBurst,
+                                @Value("${app.ratelimit.room.per-second:50}") double roomRate,
+                                @Value("${app.ratelimit.room.burst:100}") int roomBurst,
+                                @Value("${app.ratelimit.broadcast.per-second:2}") double broadcastRate,
+                                @Value("${app.ratelimit.broadcast.burst:5}") int broadcastBurst) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.redisMode = "redis".equalsIgnoreCase(mode);
+        this.userLimit = new Limit("user", userRate, userBurst);
+        this.roomLimit = new Limit("room", roomRate, roomBurst);
+        this.broadcastLimit = new Limit("broadcast", broadcastRate, broadcastBurst);
+
+        Gauge.builder("chat.ratelimit.keys", this,
+                        service -> service.userLimit.local.size() + service.roomLimit.local.size())
+                .description("Users and rooms with local limiter state")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public RateLimitDecision check(String userId, Message message) {
+        if (!enabled) {
+            return RateLimitDecision.allowed();
+        }
+
+        RateLimitDecision decision = acquire(userLimit, userId);
+        if (decision.isAllowed() && message.getType() == MessageType.MULTICAST && message.getRoomId() != null) {
+            decision = acquire(roomLimit, message.getRoomId());
+            if (!decision.isAllowed()) {
+                release(userLimit, userId);
+            }
+        }
+        if (decision.isAllowed() && message.getType() == MessageType.BROADCAST) {
+            decision = acquire(broadcastLimit, BROADCAST_KEY);
+            if (!decision.isAllowed()) {
+                release(userLimit, userId);
+            }
+        }
+
+        if (!decision.isAllowed()) {
+            meterRegistry.counter("chat.ratelimit.rejected", "scope", decision.getScope()).increment();
+        }
+        return decision;
+    }
+
+    /**
+     * Forget users and rooms whose buckets are full again
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        userLimit.local.evictIdle();
+        roomLimit.local.evictIdle();
+        broadcastLimit.local.evictIdle();
+    }
+
+    // Helper methods
+
+    private RateLimitDecision acquire(Limit limit, String id) {
+        long waitNanos;
+        if (redisMode) {
+            try {
+                Long waitMicros = stringRedisTemplate.execute(ACQUIRE_SCRIPT,
+                        List.of(RATE_LIMIT_KEY + limit.scope + ":" + id),
+                        String.valueOf(limit.intervalMicros), String.valueOf(limit.toleranceMicros));
+                waitNanos = waitMicros != null ? TimeUnit.MICROSECONDS.toNanos(waitMicros) : 0;
+            } catch (Exception e) {
+                log.debug("Redis rate limit unavailable, using local buckets: {}", e.getMessage());
+                waitNanos = limit.local.tryAcquire(id);
+            }
+        } else {
+            waitNanos = limit.local.tryAcquire(id);
+        }
+
+        return waitNanos <= 0
+                ? RateLimitDecision.allowed()
+                : RateLimitDecision.rejected(limit.scope, TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1);
+    }
+
+    private void release(Limit limit, String id) {
+        if (redisMode) {
+            try {
+                stringRedisTemplate.execute(RELEASE_SCRIPT,
+                        List.of(RATE_LIMIT_KEY + limit.scope + ":" + id), String.valueOf(limit.intervalMicros));
+                return;
+            } catch (Exception e) {
+                log.debug("Redis rate limit unavailable, using local buckets: {}", e.getMessage());
+            }
+        }
+        limit.local.release(id);
+    }
+
+    private static final class Limit {
+        private final String scope;
+        private final long intervalMicros;
+        private final long toleranceMicros;
+        private final LocalRateLimiter local;
+
+        private Limit(String scope, double perSecond, int burst) {
+            this.scope = scope;
+            this.intervalMicros = (long) (1_000_000 / perSecond);
+            this.toleranceMicros = intervalMicros * Math.max(1, burst);
+            this.local = new LocalRateLimiter(perSecond, burst);
+        }
+    }
+}
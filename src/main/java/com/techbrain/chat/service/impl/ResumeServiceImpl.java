@@ -0,0 +1,146 @@
+package com.techbrain.chat.service.impl;
+
+import com.techbrain.chat.service.ResumeService;
+import com.techbrain.chat.to.Message;
+import com.techbrain.chat.utils.ReplayBuffer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resume Service Implementation
+ *
+ * - app.resume.buffer-size messages per user (ring; acked entries are released early)
+ * - Buffers of disconnected users are dropped after app.resume.retain-seconds
+ * - Detached buffers are also kept in a set of their own, so broadcasts and large-room
+ *   messages only scan the recently disconnected users
+ *
+ * Metrics: chat.resume.buffers, chat.resume.attempts{result=replayed|unknown_stream|gap|missed}
+ * and chat.resume.replayed (messages sent from buffers)
+ */
+@Service
+public class ResumeServiceImpl implements ResumeService {
+
+    private final Map<String, ReplayBuffer> buffers = new ConcurrentHashMap<>();
+    private final Set<ReplayBuffer> detached = ConcurrentHashMap.newKeySet();
+
+    private final int bufferSize;
+    private final long retainMillis;
+
+    private final Counter replayed;
+    private final Counter unknownStream;
+    private final Counter gap;
+    private final Counter missed;
+    private final Counter replayedMessages;
+
+    public ResumeServiceImpl(@Value("${app.resume.buffer-size:256}") int bufferSize,
+                             @Value("${app.resume.retain-seconds:120}") long retainSeconds,
+                             MeterRegistry meterRegistry) {
+        this.bufferSize = bufferSize;
+        this.retainMillis = retainSeconds * 1000;
+
+        this.replayed = attempts(meterRegistry, "replayed");
+        this.unknownStream = attempts(meterRegistry, "unknown_stream");
+        this.gap = attempts(meterRegistry, "gap");
+        this.missed = attempts(meterRegistry, "missed");
+        this.replayedMessages = Counter.builder("chat.resume.replayed")
+                .description("Messages replayed from buffers to resuming sessions")
+                .register(meterRegistry);
+
+        Gauge.builder("chat.resume.buffers", buffers, Map::size)
+                .description("Replay buffers held (connected users plus recently disconnected ones)")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public ReplayBuffer attach(String userId, String sessionId) {
+        ReplayBuffer buffer = buffers.computeIfAbsent(userId, id -> new ReplayBuffer(bufferSize));
+        buffer.attached(sessionId);
+        return buffer;
+    }
+
+    @Override
+    public void activate(ReplayBuffer buffer, String sessionId) {
+        if (buffer.activated(sessionId)) {
+            detached.remove(buffer);
+        }
+    }
+
+    @Override
+    public void detach(String userId, String sessionId, Set<String> largeRooms) {
+        ReplayBuffer buffer = buffers.get(userId);
+        if (buffer != null && buffer.detached(sessionId, largeRooms)) {
+            detached.add(buffer);
+        }
+    }
+
+    @Override
+    public void missed(String userId) {
+        ReplayBuffer buffer = buffers.get(userId);
+        if (buffer != null) {
+            buffer.missed();
+        }
+    }
+
+    @Override
+    public void missedRoom(String roomId) {
+        for (ReplayBuffer buffer : detached) {
+            if (buffer.wasSubscribedTo(roomId)) {
+                buffer.missed();
+            }
+        }
+    }
+
+    @Override
+    public void missedAll() {
+        detached.forEach(ReplayBuffer::missed);
+    }
+
+    @Override
+    public List<Message> resume(ReplayBuffer buffer, String streamId, long fromSeq) {
+        if (!buffer.getStreamId().equals(streamId)) {
+            unknownStream.increment();
+            return null;
+        }
+        if (buffer.isMissed()) {
+            // Messages went to the user while disconnected and were never numbered
+            missed.increment();
+            return null;
+        }
+        List<Message> since = buffer.since(fromSeq);
+        if (since == null) {
+            gap.increment();
+            return null;
+        }
+        replayed.increment();
+        replayedMessages.increment(since.size());
+        return since;
+    }
+
+    /**
+     * Drop the buffers of users who did not come back in time
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void evictDetached() {
+        long cutoff = System.currentTimeMillis() - retainMillis;
+        buffers.values().removeIf(buffer -> buffer.getDetachedAt() != 0 && buffer.getDetachedAt() < cutoff);
+        detached.removeIf(buffer -> buffer.getDetachedAt() == 0 || buffer.getDetachedAt() < cutoff);
+    }
+
+    // Helper methods
+
+    private static Counter attempts(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("chat.resume.attempts")
+                .description("Resume requests by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -2,16 +2,34 @@ package com.techbrain.chat.service.impl;
 
 import com.techbrain.chat.entity.RoomEntity;
 import com.techbrain.chat.repository.RoomRepository;
+import com.techbrain.chat.service.AsyncRedisService;
+import com.techbrain.chat.service.KafkaProducerService;
 import com.techbrain.chat.service.RoomService;
+import com.techbrain.chat.to.Message;
 import com.techbrain.chat.to.Room;
+import com.techbrain.chat.utils.CompactEntityCache;
+import com.techbrain.chat.utils.MessageType;
+import com.techbrain.chat.utils.RedisRoundTripMetrics;
+import com.techbrain.chat.utils.SingleFlightCacheLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -19,22 +37,84 @@ import java.util.stream.Collectors;
  * Room Service Implementation
  * 
  * Manages chat rooms with Redis caching
+ * - Rooms are cached as compact hashes without members ("room:v2:<roomId>")
+ * - Room members are cached as a plain-string set (one Redis round trip per lookup)
+ * - Membership changes are single Lua scripts (SADD/SREM + EXPIRE + cache invalidation)
+ * - Misses and early refreshes load from MySQL once per node (single-flight), with jittered TTLs
+ * - Rooms created with maxMembers >= app.rooms.large.min-members join the large-room tier
+ *   (see LargeRoomIndex); joins and leaves of large rooms are published on chat.membership
+ *   so every server (this one included) re-syncs the user's local subscription at once
  */
 @Service
 @Transactional
 public class RoomServiceImpl implements RoomService {
     
+    private static final Logger log = LoggerFactory.getLogger(RoomServiceImpl.class);
+    
     private final RoomRepository roomRepository;
     private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisRoundTripMetrics roundTripMetrics;
+    private final CompactEntityCache entityCache;
+    private final SingleFlightCacheLoader cacheLoader;
+    private final AsyncRedisService asyncRedisService;
+    private final KafkaProducerService kafkaProducerService;
+    private final int largeMinMembers;
     
     private static final String ACTIVE_ROOMS_KEY = "active:rooms";
-    private static final String ROOM_MEMBERS_KEY = "room:members:";
-    private static final String ROOM_CACHE_KEY = "room:";
+    private static final String ROOM_MEMBERS_KEY = "room:member-ids:";  // Set of plain user IDs
+    private static final String ROOM_CACHE_KEY = "room:v2:";  // Hash of primitive room fields
+    private static final int MEMBERSHIP_QUERY_BATCH = 1000;     // User IDs per large-room membership query
+    
+    // Add to a cached member set (never create a partial one) and drop the room cache
+    private static final RedisScript<Long> JOIN_SCRIPT = RedisScript.of(
+        "if redis.call('EXISTS', KEYS[1]) == 1 then\n" +
+        "  redis.call('SADD', KEYS[1], ARGV[1])\n" +
+        "  redis.call('EXPIRE', KEYS[1], ARGV[2])\n" +
+        "end\n" +
+        "redis.call('DEL', KEYS[2])\n" +
+        "return 1", Long.class);
+    
+    // Remove from the cached member set and drop the room cache
+    private static final RedisScript<Long> LEAVE_SCRIPT = RedisScript.of(
+        "redis.call('SREM', KEYS[1], ARGV[1])\n" +
+        "redis.call('DEL', KEYS[2])\n" +
+        "return 1", Long.class);
+    
+    // Members plus the remaining TTL in milliseconds as the last element
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> READ_MEMBERS_SCRIPT = RedisScript.of(
+        "local members = redis.call('SMEMBERS', KEYS[1])\n" +
+        "if #members == 0 then return members end\n" +
+        "members[#members + 1] = tostring(redis.call('PTTL', KEYS[1]))\n" +
+        "return members", List.class);
+    
+    // Cache the full member set loaded from the database (SADD in batches of 1000)
+    private static final RedisScript<Long> FILL_MEMBERS_SCRIPT = RedisScript.of(
+        "for i = 2, #ARGV, 1000 do\n" +
+        "  redis.call('SADD', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV)))\n" +
+        "end\n" +
+        "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+        "return 1", Long.class);
     
     public RoomServiceImpl(RoomRepository roomRepository, 
-                          RedisTemplate<String, Object> redisTemplate) {
+                          RedisTemplate<String, Object> redisTemplate,
+                          StringRedisTemplate stringRedisTemplate,
+                          RedisRoundTripMetrics roundTripMetrics,
+                          CompactEntityCache entityCache,
+                          SingleFlightCacheLoader cacheLoader,
+                          AsyncRedisService asyncRedisService,
+                          KafkaProducerService kafkaProducerService,
+                          @Value("${app.rooms.large.min-members:1000}") int largeMinMembers) {
         this.roomRepository = roomRepository;
         this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.roundTripMetrics = roundTripMetrics;
+        this.entityCache = entityCache;
+        this.cacheLoader = cacheLoader;
+        this.asyncRedisService = asyncRedisService;
+        this.kafkaProducerService = kafkaProducerService;
+        this.largeMinMembers = largeMinMembers;
     }
     
     @Override
@@ -46,14 +126,16 @@ public class RoomServiceImpl implements RoomService {
         if (room.getCreatedAt() == null) {
             room.setCreatedAt(LocalDateTime.now());
         }
+        if (room.getMaxMembers() >= largeMinMembers) {
+            room.setLarge(true);
+        }
         
         // Save to database
         RoomEntity entity = toEntity(room);
         RoomEntity saved = roomRepository.save(entity);
         
         // Cache in Redis
-        String cacheKey = ROOM_CACHE_KEY + saved.getId();
-        redisTemplate.opsForValue().set(cacheKey, saved, 1, TimeUnit.HOURS);
+        cacheRoom(saved);
         
         // Add to active rooms set
         redisTemplate.opsForSet().add(ACTIVE_ROOMS_KEY, saved.getId());
@@ -85,20 +167,27 @@ public class RoomServiceImpl implements RoomService {
     public Room getRoomById(String roomId) {
         // Try cache first
         String cacheKey = ROOM_CACHE_KEY + roomId;
-        Object cached = redisTemplate.opsForValue().get(cacheKey);
+        CompactEntityCache.Entry entry = entityCache.read(cacheKey);
+        RoomEntity cached = entityCache.decodeRoom(entry.getFields());
         
-        if (cached instanceof RoomEntity) {
-            return toDTO((RoomEntity) cached);
+        if (cached != null && !cacheLoader.shouldRefreshEarly("room", entry.getTtlMillis())) {
+            // Members are not part of the cached room; they come from the member set
+            cached.setMemberIds(getRoomMembers(roomId));
+            return toDTO(cached);
         }
         
-        // Fallback to database
-        RoomEntity entity = roomRepository.findById(roomId)
-            .orElseThrow(() -> new RuntimeException("Room not found: " + roomId));
-        
-        // Cache for next time
-        redisTemplate.opsForValue().set(cacheKey, entity, 1, TimeUnit.HOURS);
-        
-        return toDTO(entity);
+        // Fallback to database (one load per node for concurrent misses)
+        return cacheLoader.load("room", cacheKey, () -> {
+            RoomEntity entity = roomRepository.findById(roomId)
+                .orElseThrow(() -> new RuntimeException("Room not found: " + roomId));
+            
+            // Cache for next time
+            cacheRoom(entity);
+            
+            Room room = toDTO(entity);
+            room.setMemberIds(new HashSet<>(entity.getMemberIds()));
+            return room;
+        });
     }
     
     @Override
@@ -108,14 +197,14 @@ public class RoomServiceImpl implements RoomService {
         
         // Remove from Redis cache
         String cacheKey = ROOM_CACHE_KEY + roomId;
-        redisTemplate.delete(cacheKey);
+        stringRedisTemplate.delete(cacheKey);
         
         // Remove from active rooms
         redisTemplate.opsForSet().remove(ACTIVE_ROOMS_KEY, roomId);
         
         // Remove members set
         String membersKey = ROOM_MEMBERS_KEY + roomId;
-        redisTemplate.delete(membersKey);
+        stringRedisTemplate.delete(membersKey);
     }
     
     @Override
@@ -138,15 +227,14 @@ public class RoomServiceImpl implements RoomService {
         room.getMemberIds().add(userId);
         roomRepository.save(room);
         
-        // Update Redis cache
-        String membersKey = ROOM_MEMBERS_KEY + roomId;
-        redisTemplate.opsForSet().add(membersKey, userId);
-        redisTemplate.expire(membersKey, 1, TimeUnit.HOURS);
-        
-        // Invalidate room cache
-        String cacheKey = ROOM_CACHE_KEY + roomId;
-        redisTemplate.delete(cacheKey);
+        // Update Redis cache and invalidate room cache (one round trip)
+        stringRedisTemplate.execute(JOIN_SCRIPT, 
+            List.of(ROOM_MEMBERS_KEY + roomId, ROOM_CACHE_KEY + roomId),
+            userId, String.valueOf(cacheLoader.jitteredTtlSeconds(1, TimeUnit.HOURS)));
         
+        if (room.isLarge()) {
+            publishMembership(roomId, userId, "join");
+        }
         return true;
     }
     
@@ -160,13 +248,14 @@ public class RoomServiceImpl implements RoomService {
         room.getMemberIds().remove(userId);
         roomRepository.save(room);
         
-        // Update Redis
-        String membersKey = ROOM_MEMBERS_KEY + roomId;
-        redisTemplate.opsForSet().remove(membersKey, userId);
+        // Update Redis and invalidate room cache (one round trip)
+        stringRedisTemplate.execute(LEAVE_SCRIPT, 
+            List.of(ROOM_MEMBERS_KEY + roomId, ROOM_CACHE_KEY + roomId),
+            userId);
         
-        // Invalidate room cache
-        String cacheKey = ROOM_CACHE_KEY + roomId;
-        redisTemplate.delete(cacheKey);
+        if (room.isLarge()) {
+            publishMembership(roomId, userId, "leave");
+        }
     }
     
     @Override
@@ -174,26 +263,83 @@ public class RoomServiceImpl implements RoomService {
     public Set<String> getRoomMembers(String roomId) {
         // Try Redis first
         String membersKey = ROOM_MEMBERS_KEY + roomId;
-        Set<Object> redisMembers = redisTemplate.opsForSet().members(membersKey);
+        @SuppressWarnings("unchecked")
+        List<String> reply = stringRedisTemplate.execute(READ_MEMBERS_SCRIPT, List.of(membersKey));
+        roundTripMetrics.record("room.members");
         
-        if (redisMembers != null && !redisMembers.isEmpty()) {
-            return redisMembers.stream()
-                .map(Object::toString)
-                .collect(Collectors.toSet());
+        Set<String> cached = cachedMembers(reply);
+        if (cached != null) {
+            return cached;
         }
         
-        // Fallback to database
+        // Fallback to database (one load per node for concurrent misses)
+        return loadMembers(roomId, membersKey);
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Set<String>> getRoomMembersAsync(String roomId) {
+        String membersKey = ROOM_MEMBERS_KEY + roomId;
+        
+        return asyncRedisService.eval(READ_MEMBERS_SCRIPT, List.of(membersKey))
+            .thenCompose(reply -> {
+                roundTripMetrics.record("room.members");
+                
+                Set<String> cached = cachedMembers((List<String>) reply);
+                if (cached != null) {
+                    return CompletableFuture.completedFuture(cached);
+                }
+                
+                // The database fallback blocks, so it must leave the Redis I/O thread
+                return asyncRedisService.supplyBlocking(() -> loadMembers(roomId, membersKey));
+            });
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public List<Room> getRoomsOfUsers(Collection<String> userIds) {
+        return roomRepository.findDistinctByMemberIdsInAndLargeFalse(userIds)
+            .stream()
+            .map(this::toDTO)
+            .collect(Collectors.toList());
+    }
+    
+    @Override
+    public Room setLarge(String roomId, boolean large) {
         RoomEntity room = roomRepository.findById(roomId)
             .orElseThrow(() -> new RuntimeException("Room not found: " + roomId));
+        room.setLarge(large);
+        RoomEntity saved = roomRepository.save(room);
         
-        // Cache for next time
-        Set<String> members = room.getMemberIds();
-        if (!members.isEmpty()) {
-            redisTemplate.opsForSet().add(membersKey, members.toArray());
-            redisTemplate.expire(membersKey, 1, TimeUnit.HOURS);
+        // Nodes pick the change up with their next large-room refresh
+        stringRedisTemplate.delete(ROOM_CACHE_KEY + roomId);
+        return toDTO(saved);
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public List<String> getLargeRoomIds() {
+        return roomRepository.findLargeRoomIds();
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public List<String> getLargeRoomIdsOf(String userId) {
+        return roomRepository.findLargeRoomIdsOfMember(userId);
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public Map<String, Set<String>> getLargeRoomIdsOf(Collection<String> userIds) {
+        Map<String, Set<String>> roomsByUser = new HashMap<>();
+        List<String> ids = new ArrayList<>(userIds);
+        for (int i = 0; i < ids.size(); i += MEMBERSHIP_QUERY_BATCH) {
+            List<String> batch = ids.subList(i, Math.min(i + MEMBERSHIP_QUERY_BATCH, ids.size()));
+            for (Object[] row : roomRepository.findLargeRoomIdsOfMembers(batch)) {
+                roomsByUser.computeIfAbsent((String) row[1], k -> new HashSet<>()).add((String) row[0]);
+            }
         }
-        
-        return members;
+        return roomsByUser;
     }
     
     @Override
@@ -209,6 +355,67 @@ public class RoomServiceImpl implements RoomService {
         return roomRepository.existsById(roomId);
     }
     
+    // Helper methods
+    
+    /**
+     * @return members from a READ_MEMBERS_SCRIPT reply, or null on a miss or an early refresh
+     */
+    private Set<String> cachedMembers(List<String> reply) {
+        if (reply == null || reply.isEmpty()) {
+            return null;
+        }
+        long ttlMillis = Long.parseLong(reply.get(reply.size() - 1));
+        if (cacheLoader.shouldRefreshEarly("room-members", ttlMillis)) {
+            return null;
+        }
+        return new HashSet<>(reply.subList(0, reply.size() - 1));
+    }
+    
+    private Set<String> loadMembers(String roomId, String membersKey) {
+        return cacheLoader.load("room-members", membersKey, () -> {
+            RoomEntity room = roomRepository.findById(roomId)
+                .orElseThrow(() -> new RuntimeException("Room not found: " + roomId));
+            
+            // Cache for next time
+            Set<String> members = new HashSet<>(room.getMemberIds());
+            if (!members.isEmpty()) {
+                Object[] args = new Object[members.size() + 1];
+                args[0] = String.valueOf(cacheLoader.jitteredTtlSeconds(1, TimeUnit.HOURS));
+                int i = 1;
+                for (String member : members) {
+                    args[i++] = member;
+                }
+                stringRedisTemplate.execute(FILL_MEMBERS_SCRIPT, List.of(membersKey), args);
+                roundTripMetrics.record("room.members.fill");
+            }
+            
+            return members;
+        });
+    }
+    
+    /**
+     * Tell every server (this one too) to re-sync a large-room subscription of the user
+     */
+    private void publishMembership(String roomId, String userId, String change) {
+        Message message = new Message();
+        message.setType(MessageType.MEMBERSHIP);
+        message.setRoomId(roomId);
+        message.setSenderId(userId);
+        message.setContent(change);
+        message.setTimestamp(LocalDateTime.now());
+        kafkaProducerService.publishMembership(message).whenComplete((ignored, error) -> {
+            if (error != null) {
+                // The next large-room refresh repairs the subscription
+                log.warn("Failed to publish {} of {} in large room {}: {}", change, userId, roomId, error.getMessage());
+            }
+        });
+    }
+    
+    private void cacheRoom(RoomEntity room) {
+        entityCache.put(ROOM_CACHE_KEY + room.getId(), entityCache.encodeRoom(room),
+            cacheLoader.jitteredTtlSeconds(1, TimeUnit.HOURS), TimeUnit.SECONDS);
+    }
+    
     // Helper methods for entity-DTO conversion
     
     private RoomEntity toEntity(Room room) {
@@ -220,6 +427,7 @@ public class RoomServiceImpl implements RoomService {
         entity.setCreatedAt(room.getCreatedAt());
         entity.setPrivate(room.isPrivate());
         entity.setMaxMembers(room.getMaxMembers());
+        entity.setLarge(room.isLarge());
         entity.setMemberIds(room.getMemberIds());
         return entity;
     }
@@ -233,6 +441,7 @@ public class RoomServiceImpl implements RoomService {
         room.setCreatedAt(entity.getCreatedAt());
         room.setPrivate(entity.isPrivate());
         room.setMaxMembers(entity.getMaxMembers());
+        room.setLarge(entity.isLarge());
         room.setMemberIds(entity.getMemberIds());
         return room;
     }
@@ -1,20 +1,33 @@
 package com.techbrain.chat.service.impl;
 
+import com.techbrain.chat.service.PresenceService;
 import com.techbrain.chat.service.ServiceDiscoveryService;
 import com.techbrain.chat.to.ServiceInfo;
+import com.techbrain.chat.utils.CompactEntityCache;
+import com.techbrain.chat.utils.NodeLoadSampler;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 public class ServiceDiscoveryServiceImpl implements ServiceDiscoveryService {
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CompactEntityCache entityCache;
+    private final PresenceService presenceService;
+    private final NodeLoadSampler loadSampler;
 
     @Value("${app.service.discovery.service-id}")
     private String serviceId;
@@ -25,11 +38,58 @@ public class ServiceDiscoveryServiceImpl implements ServiceDiscoveryService {
     @Value("${app.service.discovery.enabled:true}")
     private boolean discoveryEnabled;
 
-    private static final String SERVICE_PREFIX = "service:";
-    private static final String SERVICES_SET = "services:active";
+    private static final String SERVICE_PREFIX = "service:v2:";     // Hash of primitive service fields
+    private static final String SERVICES_SET = "services:v2:active";  // Set of plain service IDs
+    private static final int SERVICE_TTL_SECONDS = 90;
+
+    // Rewrite the service hash with its TTL and (re-)add it to the active set in one round trip
+    // ARGV: ttl, serviceId, field1, value1, ...
+    private static final RedisScript<Long> HEARTBEAT_SCRIPT = RedisScript.of(
+            "redis.call('DEL', KEYS[1])\n" +
+            "redis.call('HSET', KEYS[1], unpack(ARGV, 3))\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+            "redis.call('SADD', KEYS[2], ARGV[2])\n" +
+            "return 1", Long.class);
+
+    // All live service hashes in one round trip, flattened as: field count, fields, field count, ...
+    // Expired records are dropped from the active set on the way
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> DISCOVER_SCRIPT = RedisScript.of(
+            "local reply = {}\n" +
+            "for _, id in ipairs(redis.call('SMEMBERS', KEYS[1])) do\n" +
+            "  local fields = redis.call('HGETALL', ARGV[1] .. id)\n" +
+            "  if #fields == 0 then\n" +
+            "    redis.call('SREM', KEYS[1], id)\n" +
+            "  else\n" +
+            "    reply[#reply + 1] = tostring(#fields)\n" +
+            "    for _, value in ipairs(fields) do reply[#reply + 1] = value end\n" +
+            "  end\n" +
+            "end\n" +
+            "return reply", List.class);
+
+    // This node's own record; heartbeats refresh it without reading it back from Redis
+    private volatile ServiceInfo localServiceInfo;
+
+    // Locally cached discovery view, reloaded at most every app.service.discovery.cache-ms
+    private volatile List<ServiceInfo> cachedServices = List.of();
+    private volatile long cachedAt;
+
+    @Value("${app.service.discovery.cache-ms:5000}")
+    private long cacheMs;
+
+    public ServiceDiscoveryServiceImpl(StringRedisTemplate stringRedisTemplate,
+                                       CompactEntityCache entityCache,
+                                       PresenceService presenceService,
+                                       NodeLoadSampler loadSampler) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.entityCache = entityCache;
+        this.presenceService = presenceService;
+        this.loadSampler = loadSampler;
+    }
 
-    public ServiceDiscoveryServiceImpl(RedisTemplate<String, Object> redisTemplate) {
-        this.redisTemplate = redisTemplate;
+    @EventListener(ApplicationReadyEvent.class)
+    public void registerOnStartup() {
+        registerService();
     }
 
     @Override
@@ -51,14 +111,12 @@ public class ServiceDiscoveryServiceImpl implements ServiceDiscoveryService {
             serviceInfo.setServiceId(serviceId);
             serviceInfo.setHost(host);
             serviceInfo.setPort(serverPort);
+            serviceInfo.setRegisteredAt(LocalDateTime.now());
+            serviceInfo.updateHeartbeat();
 
-            // Store in Redis
-            String key = SERVICE_PREFIX + serviceId;
-            redisTemplate.opsForValue().set(key, serviceInfo);
-            redisTemplate.expire(key, 90, java.util.concurrent.TimeUnit.SECONDS);
-
-            // Add to active services set
-            redisTemplate.opsForSet().add(SERVICES_SET, serviceId);
+            // Store in Redis and add to active services set
+            writeServiceInfo(serviceInfo);
+            localServiceInfo = serviceInfo;
 
             System.out.println("Service registered: " + serviceId + " at " + host + ":{}" + serverPort);
 
@@ -75,13 +133,12 @@ public class ServiceDiscoveryServiceImpl implements ServiceDiscoveryService {
         }
 
         try {
-            String key = SERVICE_PREFIX + serviceId;
-            ServiceInfo serviceInfo = (ServiceInfo) redisTemplate.opsForValue().get(key);
+            ServiceInfo serviceInfo = localServiceInfo;
 
             if (serviceInfo != null) {
+                // The script also recreates the record if it expired in the meantime
                 serviceInfo.updateHeartbeat();
-                redisTemplate.opsForValue().set(key, serviceInfo);
-                redisTemplate.expire(key, 90, java.util.concurrent.TimeUnit.SECONDS);
+                writeServiceInfo(serviceInfo);
             } else {
                 // Service not registered, register again
                 registerService();
@@ -94,30 +151,18 @@ public class ServiceDiscoveryServiceImpl implements ServiceDiscoveryService {
 
     @Override
     public List<ServiceInfo> discoverServices() {
-        try {
-            // Get all service IDs from set
-            Set<Object> serviceIds = redisTemplate.opsForSet().members(SERVICES_SET);
-
-            if (serviceIds == null || serviceIds.isEmpty()) {
-                return List.of();
-            }
-
-            // Get service info for each ID
-            return serviceIds.stream()
-                    .map(id -> {
-                        String key = SERVICE_PREFIX + id.toString();
-                        return (ServiceInfo) redisTemplate.opsForValue().get(key);
-                    })
-                    .filter(service -> service != null && !service.isStale())
-                    .collect(Collectors.toList());
-
-        } catch (Exception e) {
-            System.out.println("Failed to discover services" + e);
-            return List.of();
+        if (System.currentTimeMillis() - cachedAt >= cacheMs) {
+            reloadServices();
         }
+
+        // Records age while cached, so the staleness check runs on every call
+        return cachedServices.stream()
+                .filter(service -> !service.isStale())
+                .collect(Collectors.toList());
     }
 
     @Override
+    @PreDestroy
     public void unregisterService() {
         if (!discoveryEnabled) {
             return;
@@ -125,8 +170,9 @@ public class ServiceDiscoveryServiceImpl implements ServiceDiscoveryService {
 
         try {
             String key = SERVICE_PREFIX + serviceId;
-            redisTemplate.delete(key);
-            redisTemplate.opsForSet().remove(SERVICES_SET, serviceId);
+            stringRedisTemplate.delete(key);
+            stringRedisTemplate.opsForSet().remove(SERVICES_SET, serviceId);
+            localServiceInfo = null;
 
             System.out.println("Service unregistered: " + serviceId);
 
@@ -135,4 +181,70 @@ public class ServiceDiscoveryServiceImpl implements ServiceDiscoveryService {
         }
     }
 
+    @Override
+    public void markDraining() {
+        if (!discoveryEnabled) {
+            return;
+        }
+
+        try {
+            ServiceInfo serviceInfo = localServiceInfo;
+            if (serviceInfo != null) {
+                // Later heartbeats keep the flag (same local record)
+                serviceInfo.setDraining(true);
+                writeServiceInfo(serviceInfo);
+                System.out.println("Service draining: " + serviceId);
+            }
+        } catch (Exception e) {
+            System.out.println("Failed to mark service as draining" + e);
+        }
+    }
+
+    private synchronized void reloadServices() {
+        if (System.currentTimeMillis() - cachedAt < cacheMs) {
+            return;  // Another caller just reloaded
+        }
+
+        try {
+            @SuppressWarnings("unchecked")
+            List<String> reply = stringRedisTemplate.execute(DISCOVER_SCRIPT, List.of(SERVICES_SET), SERVICE_PREFIX);
+
+            List<ServiceInfo> services = new ArrayList<>();
+            int i = 0;
+            while (reply != null && i < reply.size()) {
+                int count = Integer.parseInt(reply.get(i++));
+                Map<String, String> fields = new HashMap<>();
+                for (int end = i + count; i < end; i += 2) {
+                    fields.put(reply.get(i), reply.get(i + 1));
+                }
+                ServiceInfo service = entityCache.decodeService(fields);
+                if (service != null) {
+                    services.add(service);
+                }
+            }
+
+            cachedServices = services;
+        } catch (Exception e) {
+            // Keep serving the last view (callers such as the hash ring prefer it to nothing)
+            System.out.println("Failed to discover services" + e);
+        }
+        cachedAt = System.currentTimeMillis();
+    }
+
+    private void writeServiceInfo(ServiceInfo serviceInfo) {
+        // Discovery records carry the live load (see NodeLoadSampler)
+        serviceInfo.setLoad(loadSampler.sample());
+        Object[] fieldArgs = CompactEntityCache.toArgs(SERVICE_TTL_SECONDS, entityCache.encodeService(serviceInfo));
+
+        Object[] args = new Object[fieldArgs.length + 1];
+        args[0] = fieldArgs[0];
+        args[1] = serviceId;
+        System.arraycopy(fieldArgs, 1, args, 2, fieldArgs.length - 1);
+
+        stringRedisTemplate.execute(HEARTBEAT_SCRIPT, List.of(SERVICE_PREFIX + serviceId, SERVICES_SET), args);
+        cachedAt = 0;  // Own changes (e.g. draining) show up in the next discovery read
+
+        // This server's presence lives exactly as long as its registration
+        presenceService.refresh(SERVICE_TTL_SECONDS);
+    }
 }
@@ -0,0 +1,112 @@
+package com.techbrain.chat.service.impl;
+
+import com.techbrain.chat.service.KafkaProducerService;
+import com.techbrain.chat.service.SignalService;
+import com.techbrain.chat.to.Message;
+import com.techbrain.chat.utils.MessageType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Signal Service Implementation
+ *
+ * - submit() keeps the latest signal per (sender, type, roomId, signal) in a map,
+ *   so a client typing at 20 signals/s costs one publish per window
+ * - flush() runs every app.signal.window-ms and publishes what the window collected
+ * - The map is bounded (app.signal.max-pending); signals beyond it are dropped
+ */
+@Service
+public class SignalServiceImpl implements SignalService {
+
+    private static final Logger log = LoggerFactory.getLogger(SignalServiceImpl.class);
+
+    private static final Set<String> SIGNALS = Set.of("typing", "idle", "read");
+
+    private final KafkaProducerService kafkaProducerService;
+
+    // Latest signal per key, waiting for the next flush
+    private final Map<String, Message> pending = new ConcurrentHashMap<>();
+
+    private final Counter received;
+    private final Counter published;
+    private final Counter dropped;
+
+    @Value("${app.server-id}")
+    private String serverId;
+
+    @Value("${app.signal.max-pending:100000}")
+    private int maxPending;
+
+    public SignalServiceImpl(KafkaProducerService kafkaProducerService, MeterRegistry meterRegistry) {
+        this.kafkaProducerService = kafkaProducerService;
+        this.received = Counter.builder("chat.signal.received")
+                .description("Signals received from clients")
+                .register(meterRegistry);
+        this.published = Counter.builder("chat.signal.published")
+                .description("Signals published after coalescing")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("chat.signal.dropped")
+                .description("Signals dropped because too many were pending")
+                .register(meterRegistry);
+        Gauge.builder("chat.signal.pending", pending, Map::size)
+                .description("Signals waiting for the next window")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void submit(String senderId, Message signal) {
+        if (!SIGNALS.contains(signal.getSignal())) {
+            throw new IllegalArgumentException("Unknown signal: " + signal.getSignal());
+        }
+        if (signal.getRoomId() == null
+                || !(signal.getType() == MessageType.UNICAST || signal.getType() == MessageType.MULTICAST)) {
+            throw new IllegalArgumentException("Signals need a roomId and type UNICAST or MULTICAST");
+        }
+        received.increment();
+
+        signal.setId(null);
+        signal.setSeq(null);
+        signal.setClientMessageId(null);
+        signal.setSenderId(senderId);
+        signal.setServerId(serverId);
+        signal.setTimestamp(LocalDateTime.now());
+
+        String key = senderId + "|" + signal.getType() + "|" + signal.getRoomId() + "|" + signal.getSignal();
+        if (pending.size() >= maxPending && !pending.containsKey(key)) {
+            dropped.increment();
+            return;
+        }
+        pending.put(key, signal);
+    }
+
+    /**
+     * Publish the latest signal of each key collected in this window
+     */
+    @Scheduled(fixedDelayString = "${app.signal.window-ms:300}")
+    public void flush() {
+        for (String key : pending.keySet()) {
+            Message signal = pending.remove(key);
+            if (signal == null) {
+                continue;
+            }
+            kafkaProducerService.publishSignal(signal).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    log.debug("Failed to publish {} signal of {}: {}",
+                        signal.getSignal(), signal.getSenderId(), error.getMessage());
+                }
+            });
+            published.increment();
+        }
+    }
+}
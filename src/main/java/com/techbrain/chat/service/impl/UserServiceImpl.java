@@ -2,9 +2,16 @@ package com.techbrain.chat.service.impl;
 
 import com.techbrain.chat.entity.UserEntity;
 import com.techbrain.chat.repository.UserRepository;
+import com.techbrain.chat.service.AsyncRedisService;
+import com.techbrain.chat.service.PresenceService;
 import com.techbrain.chat.service.UserService;
+import com.techbrain.chat.to.OnlineUsersPage;
+import com.techbrain.chat.to.PresencePage;
 import com.techbrain.chat.to.User;
-import org.springframework.data.redis.core.RedisTemplate;
+import com.techbrain.chat.utils.CompactEntityCache;
+import com.techbrain.chat.utils.SingleFlightCacheLoader;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,15 +27,30 @@ import java.util.stream.Collectors;
 public class UserServiceImpl implements UserService {
     
     private final UserRepository userRepository;
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final AsyncRedisService asyncRedisService;
+    private final CompactEntityCache entityCache;
+    private final SingleFlightCacheLoader cacheLoader;
+    private final PresenceService presenceService;
     
-    private static final String ONLINE_USERS_KEY = "online:users";
-    private static final String USER_CACHE_KEY = "user:";
+    private static final String USER_CACHE_KEY = "user:v2:";  // Hash of primitive user fields (no room IDs)
+
+    // Cache invalidation through the async connection (online state lives in PresenceService)
+    private static final RedisScript<Long> INVALIDATE_SCRIPT = RedisScript.of(
+            "return redis.call('DEL', KEYS[1])", Long.class);
     
     public UserServiceImpl(UserRepository userRepository, 
-                          RedisTemplate<String, Object> redisTemplate) {
+                          StringRedisTemplate stringRedisTemplate,
+                          AsyncRedisService asyncRedisService,
+                          CompactEntityCache entityCache,
+                          SingleFlightCacheLoader cacheLoader,
+                          PresenceService presenceService) {
         this.userRepository = userRepository;
-        this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.asyncRedisService = asyncRedisService;
+        this.entityCache = entityCache;
+        this.cacheLoader = cacheLoader;
+        this.presenceService = presenceService;
     }
     
     @Override
@@ -81,23 +103,20 @@ public class UserServiceImpl implements UserService {
     public Optional<User> getUserByPhone(String phoneNumber) {
         // Try Redis cache first
         String cacheKey = USER_CACHE_KEY + phoneNumber;
-        Object cached = redisTemplate.opsForValue().get(cacheKey);
-        
-        if (cached instanceof UserEntity) {
-            return Optional.of(toDTO((UserEntity) cached));
-        }
-        
-        // Fallback to database
-        Optional<UserEntity> userOpt = userRepository.findByPhoneNumber(phoneNumber);
+        CompactEntityCache.Entry entry = entityCache.read(cacheKey);
+        UserEntity cached = entityCache.decodeUser(entry.getFields());
         
-        if (userOpt.isPresent()) {
-            UserEntity user = userOpt.get();
-            // Cache for next time
-            cacheUser(user);
-            return Optional.of(toDTO(user));
+        if (cached != null && !cacheLoader.shouldRefreshEarly("user", entry.getTtlMillis())) {
+            return Optional.of(toDTO(cached));
         }
         
-        return Optional.empty();
+        // Fallback to database (one load per node for concurrent misses)
+        return cacheLoader.load("user", cacheKey, () -> userRepository.findByPhoneNumber(phoneNumber)
+            .map(user -> {
+                // Cache for next time
+                cacheUser(user);
+                return toDTO(user);
+            }));
     }
     
     @Override
@@ -109,24 +128,25 @@ public class UserServiceImpl implements UserService {
     
     @Override
     @Transactional(readOnly = true)
-    public List<User> getOnlineUsers() {
-        // Try Redis first
-        var onlineUserPhones = redisTemplate.opsForSet().members(ONLINE_USERS_KEY);
+    public OnlineUsersPage getOnlineUsers(String cursor, int count) {
+        // One page of IDs from the per-server presence sets
+        PresencePage page = presenceService.scanOnline(cursor, count);
         
-        if (onlineUserPhones != null && !onlineUserPhones.isEmpty()) {
-            return onlineUserPhones.stream()
-                .map(Object::toString)
-                .map(this::getUserByPhone)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(Collectors.toList());
+        if (page.getUserIds().isEmpty()) {
+            return new OnlineUsersPage(List.of(), page.getNextCursor());
         }
         
-        // Fallback to database
-        return userRepository.findByOnline(true)
+        // One query for the whole page instead of one lookup per user
+        List<User> users = userRepository.findByPhoneNumberIn(page.getUserIds())
             .stream()
-            .map(this::toDTO)
+            .map(entity -> {
+                User user = toDTO(entity);
+                user.setOnline(true);  // Presence is authoritative, the DB flag may lag
+                return user;
+            })
             .collect(Collectors.toList());
+        
+        return new OnlineUsersPage(users, page.getNextCursor());
     }
     
     @Override
@@ -144,16 +164,14 @@ public class UserServiceImpl implements UserService {
         user.setLastSeen(LocalDateTime.now());
         userRepository.save(user);
         
-        // Update Redis
-        if (online) {
-            redisTemplate.opsForSet().add(ONLINE_USERS_KEY, user.getPhoneNumber());
-        } else {
-            redisTemplate.opsForSet().remove(ONLINE_USERS_KEY, user.getPhoneNumber());
-        }
-        
-        // Invalidate cache
-        String cacheKey = USER_CACHE_KEY + user.getPhoneNumber();
-        redisTemplate.delete(cacheKey);
+        // Invalidate cache (async - the WebSocket thread does not wait)
+        String phoneNumber = user.getPhoneNumber();
+        asyncRedisService.eval(INVALIDATE_SCRIPT, List.of(USER_CACHE_KEY + phoneNumber))
+            .whenComplete((ignored, error) -> {
+                if (error != null) {
+                    System.out.println("⚠️ Failed to invalidate cached user " + phoneNumber + ": " + error.getMessage());
+                }
+            });
         
         System.out.println(online ? "User online: " + user.getPhoneNumber() : "User offline: " + user.getPhoneNumber());
     }
@@ -184,7 +202,7 @@ public class UserServiceImpl implements UserService {
         
         // Invalidate cache
         String cacheKey = USER_CACHE_KEY + user.getPhoneNumber();
-        redisTemplate.delete(cacheKey);
+        stringRedisTemplate.delete(cacheKey);
         
         System.out.println("User " + user.getPhoneNumber() + " joined room: " + roomId);
     }
@@ -203,7 +221,7 @@ public class UserServiceImpl implements UserService {
         
         // Invalidate cache
         String cacheKey = USER_CACHE_KEY + user.getPhoneNumber();
-        redisTemplate.delete(cacheKey);
+        stringRedisTemplate.delete(cacheKey);
         
         System.out.println("User " + user.getPhoneNumber() + " left room: " + roomId);
     }
@@ -239,10 +257,8 @@ public class UserServiceImpl implements UserService {
     
     private void cacheUser(UserEntity user) {
         String cacheKey = USER_CACHE_KEY + user.getPhoneNumber();
-        redisTemplate.opsForValue().set(cacheKey, user, 1, TimeUnit.HOURS);
-        if (user.isOnline()) {
-            redisTemplate.opsForSet().add(ONLINE_USERS_KEY, user.getPhoneNumber());
-        }
+        entityCache.put(cacheKey, entityCache.encodeUser(user),
+            cacheLoader.jitteredTtlSeconds(1, TimeUnit.HOURS), TimeUnit.SECONDS);
     }
     
     private User toDTO(UserEntity entity) {
@@ -2,6 +2,11 @@ package com.techbrain.chat.stretegy;
 
 import com.techbrain.chat.to.Message;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface MessageRoutingStrategy {
-    void route(Message message);
+    /**
+     * @return Completes when Kafka acknowledged the routed message
+     */
+    CompletableFuture<Void> route(Message message);
 }
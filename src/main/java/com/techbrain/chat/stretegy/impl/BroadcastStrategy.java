@@ -7,6 +7,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
+
 @Component("broadcast")
 public class BroadcastStrategy implements MessageRoutingStrategy {
     
@@ -19,13 +21,14 @@ public class BroadcastStrategy implements MessageRoutingStrategy {
     }
     
     @Override
-    public void route(Message message) {
+    public CompletableFuture<Void> route(Message message) {
         log.info("Routing BROADCAST message from {}", message.getSenderUsername());
         
         // Publish to Kafka global broadcast topic
         // All servers (Kafka consumers) will receive and deliver to their connected clients
-        kafkaProducerService.publishBroadcast(message);
+        CompletableFuture<Void> published = kafkaProducerService.publishBroadcast(message);
         
         log.info("BROADCAST message routed to Kafka for all servers");
+        return published;
     }
 }
@@ -1,50 +1,49 @@
 package com.techbrain.chat.stretegy.impl;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techbrain.chat.service.InboxService;
 import com.techbrain.chat.service.KafkaProducerService;
 import com.techbrain.chat.stretegy.MessageRoutingStrategy;
 import com.techbrain.chat.to.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 
 @Component("unicast")
 public class UnicastStrategy implements MessageRoutingStrategy {
-    
+
     private static final Logger log = LoggerFactory.getLogger(UnicastStrategy.class);
-    
-    private final StringRedisTemplate stringRedisTemplate;
+
+    private final InboxService inboxService;
     private final KafkaProducerService kafkaProducerService;
-    private final ObjectMapper objectMapper;
-    
-    public UnicastStrategy(StringRedisTemplate stringRedisTemplate, 
-                          KafkaProducerService kafkaProducerService,
-                          @Qualifier("objectMapper") ObjectMapper objectMapper) {
-        this.stringRedisTemplate = stringRedisTemplate;
+
+    public UnicastStrategy(InboxService inboxService,
+                          KafkaProducerService kafkaProducerService) {
+        this.inboxService = inboxService;
         this.kafkaProducerService = kafkaProducerService;
-        this.objectMapper = objectMapper;
     }
-    
+
     @Override
-    public void route(Message message) {
+    public CompletableFuture<Void> route(Message message) {
         log.info("Routing UNICAST message from {} to {}",
             message.getSenderUsername(), message.getRoomId());  // roomId contains target userId for unicast
-        
+
+        // Store in Redis inbox for offline message delivery (drained on next connect);
+        // runs concurrently with the Kafka publish, failures are only logged
+        inboxService.push(message).whenComplete((ignored, error) -> {
+            if (error != null) {
+                log.error("Failed to store UNICAST message {} in inbox of {}",
+                    message.getId(), message.getRoomId(), error);
+            }
+        });
+
         try {
-            // Store in Redis inbox for offline message delivery (as JSON string)
-            String inboxKey = "user:inbox:" + message.getRoomId();
-            String messageJson = objectMapper.writeValueAsString(message);
-            stringRedisTemplate.opsForList().rightPush(inboxKey, messageJson);
-            stringRedisTemplate.expire(inboxKey, 24, TimeUnit.HOURS);
-            
             // Publish to Kafka for real-time delivery across all servers
-            kafkaProducerService.publishUnicast(message.getRoomId(), message);
-            
+            CompletableFuture<Void> published = kafkaProducerService.publishUnicast(message.getRoomId(), message);
+
             log.info("UNICAST message routed to Kafka and Redis inbox");
+            return published;
         } catch (Exception e) {
             log.error("Failed to route UNICAST message", e);
             throw new RuntimeException("Failed to route message", e);
@@ -0,0 +1,44 @@
+package com.techbrain.chat.to;
+
+public class DedupeDecision {
+
+    private static final DedupeDecision FIRST = new DedupeDecision(false, false, null);
+    private static final DedupeDecision IN_PROGRESS = new DedupeDecision(false, true, null);
+
+    private final boolean duplicate;        // Was this client message ID accepted within the window?
+    private final boolean inProgress;       // Is the first send with this ID still being stored?
+    private final String originalId;        // Server ID of the first send (duplicates only)
+
+    private DedupeDecision(boolean duplicate, boolean inProgress, String originalId) {
+        this.duplicate = duplicate;
+        this.inProgress = inProgress;
+        this.originalId = originalId;
+    }
+
+    public static DedupeDecision first() {
+        return FIRST;
+    }
+
+    public static DedupeDecision duplicate(String originalId) {
+        return new DedupeDecision(true, false, originalId);
+    }
+
+    /**
+     * The first send may still fail, so the retry is neither accepted nor dropped
+     */
+    public static DedupeDecision inProgress() {
+        return IN_PROGRESS;
+    }
+
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+
+    public boolean isInProgress() {
+        return inProgress;
+    }
+
+    public String getOriginalId() {
+        return originalId;
+    }
+}
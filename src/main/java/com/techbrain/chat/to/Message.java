@@ -1,12 +1,14 @@
 package com.techbrain.chat.to;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.techbrain.chat.utils.MessageType;
 
 import java.time.LocalDateTime;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Message {
+    private String id;                      // Message ID (assigned when persisted)
     private String roomId;                 // Room where message was sent
     private String senderId;                // User who sent the message
     private String senderUsername;          // Username (for quick access)
@@ -14,8 +16,32 @@ public class Message {
     private MessageType type;               // Message type (see enum below)
     private LocalDateTime timestamp;        // When message was sent
     private String serverId;                // Which server processed it (for debugging)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long seq;                       // ACK frames: last sequence number received (outbound seq is added per session)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String clientMessageId;         // Optional sender-chosen ID: retries with the same ID are stored once
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String signal;                  // Ephemeral signal ("typing", "idle", "read"): never stored, see SignalService
 
 
+    /**
+     * get field
+     *
+     * @return id
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * set field
+     *
+     * @param id
+     */
+    public void setId(String id) {
+        this.id = id;
+    }
+
     /**
      * get field
      *
@@ -141,4 +167,58 @@ public class Message {
     public void setServerId(String serverId) {
         this.serverId = serverId;
     }
+
+    /**
+     * get field
+     *
+     * @return seq
+     */
+    public Long getSeq() {
+        return this.seq;
+    }
+
+    /**
+     * set field
+     *
+     * @param seq
+     */
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+
+    /**
+     * get field
+     *
+     * @return clientMessageId
+     */
+    public String getClientMessageId() {
+        return this.clientMessageId;
+    }
+
+    /**
+     * set field
+     *
+     * @param clientMessageId
+     */
+    public void setClientMessageId(String clientMessageId) {
+        this.clientMessageId = clientMessageId;
+    }
+
+    /**
+     * get field
+     *
+     * @return signal
+     */
+    public String getSignal() {
+        return this.signal;
+    }
+
+    /**
+     * set field
+     *
+     * @param signal
+     */
+    public void setSignal(String signal) {
+        this.signal = signal;
+    }
 }
@@ -0,0 +1,59 @@
+package com.techbrain.chat.to;
+
+public class NodeLoad {
+
+    private int sessions;                   // Open WebSocket sessions
+    private long outboundBytes;             // Bytes buffered for slow sessions
+    private int pendingDeliveries;          // Delivery keys still queued or running
+    private long kafkaLag;                  // Max records lag over the listener partitions
+    private double cpu;                     // Process CPU usage (0.0 - 1.0)
+    private int weight;                     // Load balancer weight (0 = draining, 1 - 100)
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    public void setSessions(int sessions) {
+        this.sessions = sessions;
+    }
+
+    public long getOutboundBytes() {
+        return outboundBytes;
+    }
+
+    public void setOutboundBytes(long outboundBytes) {
+        this.outboundBytes = outboundBytes;
+    }
+
+    public int getPendingDeliveries() {
+        return pendingDeliveries;
+    }
+
+    public void setPendingDeliveries(int pendingDeliveries) {
+        this.pendingDeliveries = pendingDeliveries;
+    }
+
+    public long getKafkaLag() {
+        return kafkaLag;
+    }
+
+    public void setKafkaLag(long kafkaLag) {
+        this.kafkaLag = kafkaLag;
+    }
+
+    public double getCpu() {
+        return cpu;
+    }
+
+    public void setCpu(double cpu) {
+        this.cpu = cpu;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+}
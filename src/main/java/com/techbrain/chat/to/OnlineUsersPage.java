@@ -0,0 +1,33 @@
+package com.techbrain.chat.to;
+
+import java.util.List;
+
+public class OnlineUsersPage {
+
+    private List<User> users;               // Online users on this page
+    private String nextCursor;              // Cursor for the next page ("0" = no more pages)
+
+    public OnlineUsersPage() {
+    }
+
+    public OnlineUsersPage(List<User> users, String nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<User> users) {
+        this.users = users;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,55 @@
+package com.techbrain.chat.to;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.Set;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PresenceChange {
+
+    private String userId;                  // User whose presence changed
+    private boolean online;                 // New state
+    private long lastSeen;                  // When the change happened (epoch millis)
+    private Set<String> watchers;           // Room co-members to notify (not sent to clients)
+
+    public PresenceChange() {
+    }
+
+    public PresenceChange(String userId, boolean online, long lastSeen) {
+        this.userId = userId;
+        this.online = online;
+        this.lastSeen = lastSeen;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    public void setOnline(boolean online) {
+        this.online = online;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public void setLastSeen(long lastSeen) {
+        this.lastSeen = lastSeen;
+    }
+
+    public Set<String> getWatchers() {
+        return watchers;
+    }
+
+    public void setWatchers(Set<String> watchers) {
+        this.watchers = watchers;
+    }
+}
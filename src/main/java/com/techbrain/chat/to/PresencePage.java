@@ -0,0 +1,30 @@
+package com.techbrain.chat.to;
+
+import java.util.List;
+
+public class PresencePage {
+
+    private List<String> userIds;           // User IDs online on this page
+    private String nextCursor;              // Cursor for the next page ("0" = no more pages)
+
+    public PresencePage(List<String> userIds, String nextCursor) {
+        this.userIds = userIds;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<String> getUserIds() {
+        return userIds;
+    }
+
+    public void setUserIds(List<String> userIds) {
+        this.userIds = userIds;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,36 @@
+package com.techbrain.chat.to;
+
+public class RateLimitDecision {
+
+    private static final RateLimitDecision ALLOWED = new RateLimitDecision(true, null, 0);
+
+    private final boolean allowed;          // May the message go through?
+    private final String scope;             // Exhausted limit: "user", "room" or "broadcast"
+    private final long retryAfterMs;        // When the limit frees up again
+
+    private RateLimitDecision(boolean allowed, String scope, long retryAfterMs) {
+        this.allowed = allowed;
+        this.scope = scope;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public static RateLimitDecision allowed() {
+        return ALLOWED;
+    }
+
+    public static RateLimitDecision rejected(String scope, long retryAfterMs) {
+        return new RateLimitDecision(false, scope, Math.max(1, retryAfterMs));
+    }
+
+    public boolean isAllowed() {
+        return allowed;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
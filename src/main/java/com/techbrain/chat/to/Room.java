@@ -19,6 +19,7 @@ public class Room {
     private Set<String> memberIds;          // Set of user IDs in the room
     private boolean isPrivate;              // Is room private?
     private int maxMembers = 100;           // Maximum members allowed (default 100)
+    private boolean large;                  // Large-room tier (see LargeRoomIndex)
     
     public Room() {
         this.memberIds = new HashSet<>();
@@ -91,6 +92,14 @@ public class Room {
         this.maxMembers = maxMembers;
     }
     
+    public boolean isLarge() {
+        return large;
+    }
+    
+    public void setLarge(boolean large) {
+        this.large = large;
+    }
+    
     // Helper methods
     
     public boolean addMember(String userId) {
@@ -0,0 +1,22 @@
+package com.techbrain.chat.to;
+
+import java.util.concurrent.CompletableFuture;
+
+public class SendReceipt {
+
+    private final Message message;                  // Saved message (with ID)
+    private final CompletableFuture<Void> durable;  // Completes once committed and acknowledged by Kafka
+
+    public SendReceipt(Message message, CompletableFuture<Void> durable) {
+        this.message = message;
+        this.durable = durable;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public CompletableFuture<Void> getDurable() {
+        return durable;
+    }
+}
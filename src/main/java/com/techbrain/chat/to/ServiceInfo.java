@@ -10,6 +10,8 @@ public class ServiceInfo {
     private LocalDateTime registeredAt;     // When service registered
     private LocalDateTime lastHeartbeat;    // Last heartbeat time
     private boolean isActive;                // Is service active?
+    private boolean draining;                // Is service shutting down (no new connections)?
+    private NodeLoad load;                   // Load published with the last heartbeat
 
     public void updateHeartbeat() {
         this.lastHeartbeat = LocalDateTime.now();
@@ -67,4 +69,20 @@ public class ServiceInfo {
     public void setActive(boolean active) {
         isActive = active;
     }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    public void setDraining(boolean draining) {
+        this.draining = draining;
+    }
+
+    public NodeLoad getLoad() {
+        return load;
+    }
+
+    public void setLoad(NodeLoad load) {
+        this.load = load;
+    }
 }
@@ -0,0 +1,514 @@
+package com.techbrain.chat.utils;
+
+import com.techbrain.chat.to.Message;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary frame encoding for the "chat-binary.v1" WebSocket subprotocol
+ *
+ * Every frame starts with a kind byte:
+ * - 0x01 MESSAGE: presence bitmask (1 byte), type (1 byte, 0xFF = none), then the present
+ *   fields in order id, roomId, senderId, senderUsername, content, timestamp, serverId.
+ *   Mask bit 7 = an extension mask byte follows the type; its bits: 0 clientMessageId,
+ *   1 signal (written after serverId, in that order)
+ *   Strings are varint length + UTF-8, the timestamp is a varint of epoch millis (UTC)
+ * - 0x02 CONTROL: one tagged value (a map for all current control frames: welcome, error,
+ *   presence, reconnect). Tags: 0 null, 1 false, 2 true, 3 zigzag varint, 4 float64,
+ *   5 string, 6 list (varint count + values), 7 map (varint count + string key + value)
+ * - 0x03 DEFLATE: varint length of the inner frame, then the inner MESSAGE or CONTROL frame
+ *   as raw deflate with the preset dictionary DEFLATE_DICTIONARY (used above a size threshold)
+ * - 0x04 BATCH: varint count, then per frame a varint length + one MESSAGE, CONTROL or
+ *   DEFLATE frame (outbound: coalesced delivery to sessions that opted in;
+ *   inbound: batch ingest, MESSAGE or DEFLATE frames only)
+ * - 0x05 SEQUENCED: varint sequence number, then one MESSAGE or DEFLATE frame (outbound
+ *   chat messages, numbered per user stream)
+ * - 0x06 ACK: varint sequence number (inbound: everything up to it was received)
+ *
+ * Timestamps keep millisecond precision. Malformed input raises IllegalArgumentException.
+ */
+public final class BinaryMessageCodec {
+
+    public static final String SUBPROTOCOL = "chat-binary.v1";
+
+    public static final byte KIND_MESSAGE = 0x01;
+    public static final byte KIND_CONTROL = 0x02;
+    public static final byte KIND_DEFLATE = 0x03;
+    public static final byte KIND_BATCH = 0x04;
+    public static final byte KIND_SEQUENCED = 0x05;
+    public static final byte KIND_ACK = 0x06;
+
+    // Largest inflated frame accepted from a client (guards against deflate bombs)
+    public static final int MAX_INFLATED_BYTES = 1 << 20;
+
+    // Preset dictionary: control frame keys/values and common chat text, so that even
+    // short frames compress; clients must use the same bytes
+    public static final byte[] DEFLATE_DICTIONARY = (
+            "typeconnectedmessageserverIduserIdownerNodeguestpresencechangesonlinelastSeen" +
+            "reconnectreconnectToretryAfterMserrorcoderate_limitedscopeuserroombroadcast" +
+            "Failed to process: Welcome to server (Kafka-powered)! server-1server-2+91" +
+            " the and you to is it that for of in on this what are have with not can we" +
+            " hi hello thanks ok yes no please ").getBytes(StandardCharsets.UTF_8);
+
+    private static final ThreadLocal<Deflater> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATERS =
+            ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private static final MessageType[] TYPES = MessageType.values();
+    private static final int NO_TYPE = 0xFF;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_FALSE = 1;
+    private static final byte TAG_TRUE = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_STRING = 5;
+    private static final byte TAG_LIST = 6;
+    private static final byte TAG_MAP = 7;
+
+    private BinaryMessageCodec() {
+    }
+
+    // ============ MESSAGE ============
+
+    public static byte[] encodeMessage(Message message) {
+        String[] strings = {message.getId(), message.getRoomId(), message.getSenderId(),
+                message.getSenderUsername(), message.getContent()};
+
+        int mask = 0;
+        for (int i = 0; i < strings.length; i++) {
+            if (strings[i] != null) {
+                mask |= 1 << i;
+            }
+        }
+        if (message.getTimestamp() != null) {
+            mask |= 1 << 5;
+        }
+        if (message.getServerId() != null) {
+            mask |= 1 << 6;
+        }
+        int extensions = 0;
+        if (message.getClientMessageId() != null) {
+            extensions |= 1;
+        }
+        if (message.getSignal() != null) {
+            extensions |= 1 << 1;
+        }
+        if (extensions != 0) {
+            mask |= 1 << 7;
+        }
+
+        Writer out = new Writer(64 + (message.getContent() != null ? message.getContent().length() * 3 : 0));
+        out.writeByte(KIND_MESSAGE);
+        out.writeByte(mask);
+        out.writeByte(message.getType() != null ? message.getType().ordinal() : NO_TYPE);
+        if (extensions != 0) {
+            out.writeByte(extensions);
+        }
+        for (String value : strings) {
+            if (value != null) {
+                out.writeString(value);
+            }
+        }
+        if (message.getTimestamp() != null) {
+            out.writeVarLong(message.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+        if (message.getServerId() != null) {
+            out.writeString(message.getServerId());
+        }
+        if (message.getClientMessageId() != null) {
+            out.writeString(message.getClientMessageId());
+        }
+        if (message.getSignal() != null) {
+            out.writeString(message.getSignal());
+        }
+        return out.toByteArray();
+    }
+
+    public static Message decodeMessage(ByteBuffer in) {
+        in = onHeap(in);
+        try {
+            if (in.get() != KIND_MESSAGE) {
+                throw new IllegalArgumentException("Not a MESSAGE frame");
+            }
+            int mask = in.get() & 0xFF;
+            int type = in.get() & 0xFF;
+            int extensions = (mask & 1 << 7) != 0 ? in.get() & 0xFF : 0;
+
+            Message message = new Message();
+            if (type != NO_TYPE) {
+                if (type >= TYPES.length) {
+                    throw new IllegalArgumentException("Unknown message type " + type);
+                }
+                message.setType(TYPES[type]);
+            }
+            if ((mask & 1) != 0) message.setId(readString(in));
+            if ((mask & 1 << 1) != 0) message.setRoomId(readString(in));
+            if ((mask & 1 << 2) != 0) message.setSenderId(readString(in));
+            if ((mask & 1 << 3) != 0) message.setSenderUsername(readString(in));
+            if ((mask & 1 << 4) != 0) message.setContent(readString(in));
+            if ((mask & 1 << 5) != 0) {
+                long millis = readVarLong(in);
+                message.setTimestamp(LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                        (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC));
+            }
+            if ((mask & 1 << 6) != 0) message.setServerId(readString(in));
+            if ((extensions & 1) != 0) message.setClientMessageId(readString(in));
+            if ((extensions & 1 << 1) != 0) message.setSignal(readString(in));
+            return message;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated MESSAGE frame", e);
+        }
+    }
+
+    // ============ CONTROL ============
+
+    public static byte[] encodeControl(Map<String, ?> frame) {
+        Writer out = new Writer(128);
+        out.writeByte(KIND_CONTROL);
+        writeValue(out, frame);
+        return out.toByteArray();
+    }
+
+    public static Object decodeControl(ByteBuffer in) {
+        in = onHeap(in);
+        try {
+            if (in.get() != KIND_CONTROL) {
+                throw new IllegalArgumentException("Not a CONTROL frame");
+            }
+            return readValue(in, 0);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated CONTROL frame", e);
+        }
+    }
+
+    // ============ BATCH ============
+
+    /**
+     * Several encoded frames as one BATCH frame
+     */
+    public static byte[] encodeBatch(List<byte[]> frames) {
+        int size = 8;
+        for (byte[] frame : frames) {
+            size += frame.length + 5;
+        }
+        Writer out = new Writer(size);
+        out.writeByte(KIND_BATCH);
+        out.writeVarLong(frames.size());
+        for (byte[] frame : frames) {
+            out.writeVarLong(frame.length);
+            out.writeBytes(frame, frame.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Inner frames of a BATCH frame (views on the same bytes)
+     */
+    public static List<ByteBuffer> decodeBatch(ByteBuffer in, int maxFrames) {
+        in = onHeap(in);
+        try {
+            if (in.get() != KIND_BATCH) {
+                throw new IllegalArgumentException("Not a BATCH frame");
+            }
+            int count = readCount(in);
+            if (count > maxFrames) {
+                throw new IllegalArgumentException("Batch of " + count + " frames exceeds " + maxFrames);
+            }
+            List<ByteBuffer> frames = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = readCount(in);
+                ByteBuffer frame = in.slice(in.position(), length);
+                if (length == 0 || frame.get(0) == KIND_BATCH) {
+                    throw new IllegalArgumentException("Invalid frame " + i + " in batch");
+                }
+                frames.add(frame);
+                in.position(in.position() + length);
+            }
+            return frames;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated BATCH frame", e);
+        }
+    }
+
+    // ============ SEQUENCE / ACK ============
+
+    /**
+     * Number an encoded frame for one recipient (the frame itself stays shared)
+     */
+    public static byte[] encodeSequenced(long seq, byte[] frame) {
+        Writer out = new Writer(frame.length + 11);
+        out.writeByte(KIND_SEQUENCED);
+        out.writeVarLong(seq);
+        out.writeBytes(frame, frame.length);
+        return out.toByteArray();
+    }
+
+    public static long decodeAck(ByteBuffer in) {
+        try {
+            if (in.get() != KIND_ACK) {
+                throw new IllegalArgumentException("Not an ACK frame");
+            }
+            return readVarLong(in);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated ACK frame", e);
+        }
+    }
+
+    // ============ DEFLATE ============
+
+    /**
+     * Wrap an encoded MESSAGE or CONTROL frame in a DEFLATE frame
+     */
+    public static byte[] compress(byte[] frame) {
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setDictionary(DEFLATE_DICTIONARY);
+        deflater.setInput(frame);
+        deflater.finish();
+
+        Writer out = new Writer(frame.length / 2 + 16);
+        out.writeByte(KIND_DEFLATE);
+        out.writeVarLong(frame.length);
+        byte[] chunk = new byte[Math.max(64, Math.min(frame.length, 8192))];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.writeBytes(chunk, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Inner frame of a DEFLATE frame
+     */
+    public static ByteBuffer decompress(ByteBuffer in) {
+        in = onHeap(in);
+        try {
+            if (in.get() != KIND_DEFLATE) {
+                throw new IllegalArgumentException("Not a DEFLATE frame");
+            }
+            long length = readVarLong(in);
+            if (length <= 0 || length > MAX_INFLATED_BYTES) {
+                throw new IllegalArgumentException("Invalid inflated length " + length);
+            }
+
+            Inflater inflater = INFLATERS.get();
+            inflater.reset();
+            inflater.setDictionary(DEFLATE_DICTIONARY);
+            inflater.setInput(in.array(), in.arrayOffset() + in.position(), in.remaining());
+
+            byte[] frame = new byte[(int) length];
+            int read = 0;
+            while (read < frame.length) {
+                int n = inflater.inflate(frame, read, frame.length - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != frame.length) {
+                throw new IllegalArgumentException("Inflated " + read + " of " + length + " bytes");
+            }
+            return ByteBuffer.wrap(frame);
+        } catch (BufferUnderflowException | DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt DEFLATE frame", e);
+        }
+    }
+
+    /**
+     * Kind byte of a frame without consuming it
+     */
+    public static byte kind(ByteBuffer in) {
+        if (!in.hasRemaining()) {
+            throw new IllegalArgumentException("Empty frame");
+        }
+        return in.get(in.position());
+    }
+
+    // Helper methods
+
+    private static void writeValue(Writer out, Object value) {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof Boolean flag) {
+            out.writeByte(flag ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof Number number) {
+            out.writeByte(TAG_LONG);
+            long v = number.longValue();
+            out.writeVarLong((v << 1) ^ (v >> 63));
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeByte(TAG_MAP);
+            out.writeVarLong(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                out.writeString(String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof Iterable<?> items) {
+            List<Object> list = new ArrayList<>();
+            items.forEach(list::add);
+            out.writeByte(TAG_LIST);
+            out.writeVarLong(list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else {
+            out.writeByte(TAG_STRING);
+            out.writeString(value.toString());
+        }
+    }
+
+    private static Object readValue(ByteBuffer in, int depth) {
+        if (depth > 16) {
+            throw new IllegalArgumentException("CONTROL frame nested too deeply");
+        }
+        byte tag = in.get();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_FALSE:
+                return false;
+            case TAG_TRUE:
+                return true;
+            case TAG_LONG:
+                long v = readVarLong(in);
+                return (v >>> 1) ^ -(v & 1);
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(in.getLong());
+            case TAG_STRING:
+                return readString(in);
+            case TAG_LIST: {
+                int count = readCount(in);
+                List<Object> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(readValue(in, depth + 1));
+                }
+                return list;
+            }
+            case TAG_MAP: {
+                int count = readCount(in);
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    map.put(readString(in), readValue(in, depth + 1));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown value tag " + tag);
+        }
+    }
+
+    /**
+     * Reads go through the backing array (container buffers may be direct)
+     */
+    private static ByteBuffer onHeap(ByteBuffer in) {
+        if (in.hasArray()) {
+            return in;
+        }
+        byte[] copy = new byte[in.remaining()];
+        in.get(copy);
+        return ByteBuffer.wrap(copy);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readCount(in);
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /**
+     * Length or element count, bounded by the bytes left (no huge allocations from bad input)
+     */
+    private static int readCount(ByteBuffer in) {
+        long count = readVarLong(in);
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Invalid length " + count);
+        }
+        return (int) count;
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    /**
+     * Growable byte array (single-threaded, no synchronization)
+     */
+    private static final class Writer {
+        private byte[] buffer;
+        private int size;
+
+        private Writer(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int i = 7; i >= 0; i--) {
+                buffer[size++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, buffer, size, length);
+            size += length;
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+}
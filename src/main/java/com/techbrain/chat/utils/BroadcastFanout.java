@@ -0,0 +1,90 @@
+package com.techbrain.chat.utils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Broadcast Fanout
+ *
+ * The BROADCAST lane's own pool (app.lanes.broadcast.threads), so sending one message to
+ * every session never runs on a WebSocket request thread or on the listener threads of
+ * the other lanes:
+ * - Each thread owns a fixed shard of the sessions (by session ID), so broadcasts reach
+ *   every session in the order they were submitted
+ * - The shards of one broadcast run in parallel
+ */
+@Component
+public class BroadcastFanout {
+
+    private final ThreadPoolExecutor[] shards;
+
+    public BroadcastFanout(@Value("${app.lanes.broadcast.threads:2}") int threads,
+                           MeterRegistry meterRegistry) {
+        this.shards = new ThreadPoolExecutor[Math.max(1, threads)];
+        for (int i = 0; i < shards.length; i++) {
+            String name = "broadcast-" + (i + 1);
+            shards[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        Gauge.builder("chat.delivery.broadcast.pending", this, BroadcastFanout::pending)
+                .description("Broadcast shard deliveries waiting for the broadcast lane")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Call send for every open session, one shard per thread
+     * @param delivered Called once per shard with the number of sessions it reached
+     */
+    public void fanOut(Map<String, WebSocketSession> sessions,
+                       Consumer<WebSocketSession> send, IntConsumer delivered) {
+        for (int i = 0; i < shards.length; i++) {
+            int shard = i;
+            shards[i].execute(() -> {
+                int count = 0;
+                for (WebSocketSession session : sessions.values()) {
+                    if (shardOf(session.getId()) == shard && session.isOpen()) {
+                        send.accept(session);
+                        count++;
+                    }
+                }
+                delivered.accept(count);
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ThreadPoolExecutor shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+    // Helper methods
+
+    private int shardOf(String sessionId) {
+        return Math.floorMod(sessionId.hashCode(), shards.length);
+    }
+
+    private int pending() {
+        int pending = 0;
+        for (ThreadPoolExecutor shard : shards) {
+            pending += shard.getQueue().size();
+        }
+        return pending;
+    }
+}
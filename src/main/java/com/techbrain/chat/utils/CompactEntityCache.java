@@ -0,0 +1,318 @@
+package com.techbrain.chat.utils;
+
+import com.techbrain.chat.entity.RoomEntity;
+import com.techbrain.chat.entity.UserEntity;
+import com.techbrain.chat.to.NodeLoad;
+import com.techbrain.chat.to.ServiceInfo;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compact Entity Cache
+ *
+ * Cached entities are stored as Redis hashes of primitive fields instead of
+ * polymorphic JSON (no "@class" metadata, no reflective decoding):
+ * - Collections are never part of the cached form
+ *   (room members live in "room:member-ids:<roomId>")
+ * - Null fields are left out, booleans are "1"/"0",
+ *   timestamps are ISO-8601 LocalDateTime strings
+ * - A value that cannot be decoded is treated as a cache miss
+ *
+ * Metrics: "chat.cache.entry.bytes" and "chat.cache.decode" tagged by entity.
+ */
+@Component
+public class CompactEntityCache {
+
+    // Replace the whole hash (fields that became null must not linger) and set its expiry
+    private static final RedisScript<Long> PUT_SCRIPT = RedisScript.of(
+            "redis.call('DEL', KEYS[1])\n" +
+            "redis.call('HSET', KEYS[1], unpack(ARGV, 2))\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+            "return 1", Long.class);
+
+    // HGETALL plus the remaining TTL in milliseconds as the last element
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> READ_SCRIPT = RedisScript.of(
+            "local fields = redis.call('HGETALL', KEYS[1])\n" +
+            "if #fields == 0 then return fields end\n" +
+            "fields[#fields + 1] = tostring(redis.call('PTTL', KEYS[1]))\n" +
+            "return fields", List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisNearCache nearCache;
+    private final MeterRegistry meterRegistry;
+
+    public CompactEntityCache(StringRedisTemplate stringRedisTemplate,
+                              RedisNearCache nearCache,
+                              MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.nearCache = nearCache;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // ============ REDIS ACCESS ============
+
+    /**
+     * Store encoded fields under the key (one round trip)
+     */
+    public void put(String key, Map<String, String> fields, long ttl, TimeUnit unit) {
+        stringRedisTemplate.execute(PUT_SCRIPT, List.of(key), toArgs(unit.toSeconds(ttl), fields));
+    }
+
+    /**
+     * @return the stored fields, empty if the key does not exist
+     */
+    public Map<String, String> get(String key) {
+        Map<String, String> fields = stringRedisTemplate.<String, String>opsForHash().entries(key);
+        return fields != null ? fields : Map.of();
+    }
+
+    /**
+     * Read the stored fields together with the remaining TTL (one round trip).
+     * Near-cached keys report no TTL: their expiry arrives as an invalidation instead.
+     */
+    public Entry read(String key) {
+        if (nearCache.handles(key)) {
+            try {
+                Map<String, String> fields = nearCache.hgetall(key);
+                return fields.isEmpty() ? Entry.MISS : new Entry(fields, -1);
+            } catch (RuntimeException e) {
+                // Tracking connection trouble: read through the shared connection instead
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        List<String> reply = stringRedisTemplate.execute(READ_SCRIPT, List.of(key));
+        if (reply == null || reply.isEmpty()) {
+            return Entry.MISS;
+        }
+
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i + 1 < reply.size(); i += 2) {
+            fields.put(reply.get(i), reply.get(i + 1));
+        }
+        return new Entry(fields, Long.parseLong(reply.get(reply.size() - 1)));
+    }
+
+    /**
+     * Flatten a TTL and encoded fields into script arguments: ttl, field1, value1, ...
+     */
+    public static Object[] toArgs(long ttlSeconds, Map<String, String> fields) {
+        Object[] args = new Object[fields.size() * 2 + 1];
+        args[0] = String.valueOf(ttlSeconds);
+        int i = 1;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            args[i++] = field.getKey();
+            args[i++] = field.getValue();
+        }
+        return args;
+    }
+
+    // ============ ROOM ============
+
+    public Map<String, String> encodeRoom(RoomEntity room) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        putIfPresent(fields, "id", room.getId());
+        putIfPresent(fields, "name", room.getName());
+        putIfPresent(fields, "desc", room.getDescription());
+        putIfPresent(fields, "by", room.getCreatedBy());
+        putIfPresent(fields, "created", room.getCreatedAt());
+        fields.put("private", room.isPrivate() ? "1" : "0");
+        fields.put("max", String.valueOf(room.getMaxMembers()));
+        fields.put("large", room.isLarge() ? "1" : "0");
+        return recordSize("room", fields);
+    }
+
+    /**
+     * @return the room without members, or null on a miss or an undecodable entry
+     */
+    public RoomEntity decodeRoom(Map<String, String> fields) {
+        if (fields.isEmpty()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            RoomEntity room = new RoomEntity();
+            room.setId(fields.get("id"));
+            room.setName(fields.get("name"));
+            room.setDescription(fields.get("desc"));
+            room.setCreatedBy(fields.get("by"));
+            room.setCreatedAt(parseTime(fields.get("created")));
+            room.setPrivate("1".equals(fields.get("private")));
+            room.setMaxMembers(Integer.parseInt(fields.getOrDefault("max", "100")));
+            room.setLarge("1".equals(fields.get("large")));
+            return room;
+        } catch (RuntimeException e) {
+            return null;
+        } finally {
+            recordDecode("room", start);
+        }
+    }
+
+    // ============ USER ============
+
+    public Map<String, String> encodeUser(UserEntity user) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        putIfPresent(fields, "id", user.getId());
+        putIfPresent(fields, "phone", user.getPhoneNumber());
+        putIfPresent(fields, "name", user.getUsername());
+        putIfPresent(fields, "email", user.getEmail());
+        putIfPresent(fields, "created", user.getCreatedAt());
+        putIfPresent(fields, "seen", user.getLastSeen());
+        fields.put("online", user.isOnline() ? "1" : "0");
+        return recordSize("user", fields);
+    }
+
+    /**
+     * @return the user without room IDs, or null on a miss or an undecodable entry
+     */
+    public UserEntity decodeUser(Map<String, String> fields) {
+        if (fields.isEmpty()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            UserEntity user = new UserEntity();
+            user.setId(fields.get("id"));
+            user.setPhoneNumber(fields.get("phone"));
+            user.setUsername(fields.get("name"));
+            user.setEmail(fields.get("email"));
+            user.setCreatedAt(parseTime(fields.get("created")));
+            user.setLastSeen(parseTime(fields.get("seen")));
+            user.setOnline("1".equals(fields.get("online")));
+            return user;
+        } catch (RuntimeException e) {
+            return null;
+        } finally {
+            recordDecode("user", start);
+        }
+    }
+
+    // ============ SERVICE ============
+
+    public Map<String, String> encodeService(ServiceInfo service) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        putIfPresent(fields, "id", service.getServiceId());
+        putIfPresent(fields, "host", service.getHost());
+        fields.put("port", String.valueOf(service.getPort()));
+        putIfPresent(fields, "registered", service.getRegisteredAt());
+        putIfPresent(fields, "heartbeat", service.getLastHeartbeat());
+        fields.put("active", service.isActive() ? "1" : "0");
+        fields.put("draining", service.isDraining() ? "1" : "0");
+        NodeLoad load = service.getLoad();
+        if (load != null) {
+            fields.put("sessions", String.valueOf(load.getSessions()));
+            fields.put("outbound", String.valueOf(load.getOutboundBytes()));
+            fields.put("pending", String.valueOf(load.getPendingDeliveries()));
+            fields.put("lag", String.valueOf(load.getKafkaLag()));
+            fields.put("cpu", String.valueOf(load.getCpu()));
+            fields.put("weight", String.valueOf(load.getWeight()));
+        }
+        return recordSize("service", fields);
+    }
+
+    /**
+     * @return the service, or null on a miss or an undecodable entry
+     */
+    public ServiceInfo decodeService(Map<String, String> fields) {
+        if (fields.isEmpty()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            ServiceInfo service = new ServiceInfo();
+            service.setServiceId(fields.get("id"));
+            service.setHost(fields.get("host"));
+            service.setPort(Integer.parseInt(fields.get("port")));
+            service.setRegisteredAt(parseTime(fields.get("registered")));
+            service.setLastHeartbeat(parseTime(fields.get("heartbeat")));
+            service.setActive("1".equals(fields.get("active")));
+            service.setDraining("1".equals(fields.get("draining")));
+            if (fields.containsKey("weight")) {
+                NodeLoad load = new NodeLoad();
+                load.setSessions(Integer.parseInt(fields.get("sessions")));
+                load.setOutboundBytes(Long.parseLong(fields.get("outbound")));
+                load.setPendingDeliveries(Integer.parseInt(fields.get("pending")));
+                load.setKafkaLag(Long.parseLong(fields.get("lag")));
+                load.setCpu(Double.parseDouble(fields.get("cpu")));
+                load.setWeight(Integer.parseInt(fields.get("weight")));
+                service.setLoad(load);
+            }
+            return service;
+        } catch (RuntimeException e) {
+            return null;
+        } finally {
+            recordDecode("service", start);
+        }
+    }
+
+    // Helper methods
+
+    private static void putIfPresent(Map<String, String> fields, String name, Object value) {
+        if (value != null) {
+            fields.put(name, value.toString());
+        }
+    }
+
+    private static LocalDateTime parseTime(String value) {
+        return value != null ? LocalDateTime.parse(value) : null;
+    }
+
+    private Map<String, String> recordSize(String entity, Map<String, String> fields) {
+        long bytes = 0;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            bytes += field.getKey().getBytes(StandardCharsets.UTF_8).length;
+            bytes += field.getValue().getBytes(StandardCharsets.UTF_8).length;
+        }
+        DistributionSummary.builder("chat.cache.entry.bytes")
+                .tag("entity", entity)
+                .description("Payload bytes (field names + values) of a cached entity")
+                .baseUnit("bytes")
+                .register(meterRegistry)
+                .record(bytes);
+        return fields;
+    }
+
+    private void recordDecode(String entity, long startNanos) {
+        Timer.builder("chat.cache.decode")
+                .tag("entity", entity)
+                .description("Time to decode a cached entity from its hash fields")
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Hash fields read from Redis and their remaining TTL
+     */
+    public static class Entry {
+        private static final Entry MISS = new Entry(Map.of(), -2);
+
+        private final Map<String, String> fields;
+        private final long ttlMillis;  // -1 = no expiry, -2 = missing
+
+        private Entry(Map<String, String> fields, long ttlMillis) {
+            this.fields = fields;
+            this.ttlMillis = ttlMillis;
+        }
+
+        public Map<String, String> getFields() {
+            return fields;
+        }
+
+        public long getTtlMillis() {
+            return ttlMillis;
+        }
+    }
+}
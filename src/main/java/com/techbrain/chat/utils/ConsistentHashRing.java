@@ -0,0 +1,91 @@
+package com.techbrain.chat.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent Hash Ring
+ *
+ * Maps keys (user IDs) to node IDs:
+ * - Each node is placed on the ring at several virtual points, so keys spread
+ *   evenly and only ~1/N of them move when a node joins or leaves
+ * - Immutable: a membership change builds a new ring, lookups never lock
+ * - The hash is deterministic across JVMs, so every node computes the same owner
+ */
+public final class ConsistentHashRing {
+
+    private static final ConsistentHashRing EMPTY = new ConsistentHashRing(new TreeMap<>(), List.of());
+
+    private final NavigableMap<Long, String> points;
+    private final List<String> nodes;
+
+    private ConsistentHashRing(NavigableMap<Long, String> points, List<String> nodes) {
+        this.points = points;
+        this.nodes = nodes;
+    }
+
+    public static ConsistentHashRing empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Build a ring with the given number of virtual points per node
+     */
+    public static ConsistentHashRing of(Collection<String> nodeIds, int virtualNodes) {
+        if (nodeIds.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<String> sorted = List.copyOf(new TreeSet<>(nodeIds));
+        NavigableMap<Long, String> points = new TreeMap<>();
+        for (String node : sorted) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // On a (very unlikely) collision the smaller node ID wins on every JVM
+                points.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+        return new ConsistentHashRing(Collections.unmodifiableNavigableMap(points), sorted);
+    }
+
+    /**
+     * Node owning the key, or null if the ring is empty
+     */
+    public String owner(String key) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = points.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : points.firstEntry().getValue();
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * 64-bit FNV-1a followed by the MurmurHash3 finalizer (good spread for short keys)
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
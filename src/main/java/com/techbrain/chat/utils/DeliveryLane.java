@@ -0,0 +1,34 @@
+package com.techbrain.chat.utils;
+
+import com.techbrain.chat.to.Message;
+
+/**
+ * Outbound priority lanes, highest first
+ *
+ * A session's queued frames are written lane by lane (SessionOutboundQueue), so a DM or
+ * an ack never waits behind a backlog of room or broadcast frames.
+ */
+public enum DeliveryLane {
+    CONTROL,      // Welcome, errors, acks, presence, reconnect hints
+    DIRECT,       // UNICAST messages (live, inbox drain and replay) and their signals
+    ROOM,         // MULTICAST messages and room signals
+    BROADCAST;    // BROADCAST messages
+
+    public static DeliveryLane of(Message message) {
+        if (message.getType() == null) {
+            return DIRECT;
+        }
+        switch (message.getType()) {
+            case MULTICAST:
+                return ROOM;
+            case BROADCAST:
+                return BROADCAST;
+            default:
+                return DIRECT;
+        }
+    }
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
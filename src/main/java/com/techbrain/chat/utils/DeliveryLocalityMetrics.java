@@ -0,0 +1,51 @@
+package com.techbrain.chat.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Where message recipients are served from
+ *
+ * - "local":  the recipient is connected to the node that accepted the message
+ *   and gets it straight from the WebSocket handler
+ * - "remote": the recipient is connected to another node and gets it from Kafka
+ *
+ * "chat.delivery.local.ratio" is local / (local + remote) since startup; user
+ * affinity (ClusterRoutingService) should push it up.
+ */
+@Component
+public class DeliveryLocalityMetrics {
+
+    private final Counter local;
+    private final Counter remote;
+
+    public DeliveryLocalityMetrics(MeterRegistry meterRegistry) {
+        this.local = Counter.builder("chat.delivery.recipients")
+                .tag("path", "local")
+                .description("Recipients served by the node that accepted the message")
+                .register(meterRegistry);
+        this.remote = Counter.builder("chat.delivery.recipients")
+                .tag("path", "remote")
+                .description("Recipients served by another node through Kafka")
+                .register(meterRegistry);
+
+        Gauge.builder("chat.delivery.local.ratio", this, DeliveryLocalityMetrics::localRatio)
+                .description("Share of recipients served without crossing Kafka")
+                .register(meterRegistry);
+    }
+
+    public void recordLocal(int recipients) {
+        local.increment(recipients);
+    }
+
+    public void recordRemote(int recipients) {
+        remote.increment(recipients);
+    }
+
+    private double localRatio() {
+        double total = local.count() + remote.count();
+        return total == 0 ? 0.0 : local.count() / total;
+    }
+}
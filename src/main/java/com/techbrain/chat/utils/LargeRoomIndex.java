@@ -0,0 +1,235 @@
+package com.techbrain.chat.utils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Large Room Index
+ *
+ * Local delivery for rooms in the large-room tier (thousands of members), without
+ * looking up or iterating their member lists per message:
+ * - Which rooms are large is known locally (refreshed from the database), so the
+ *   delivery path decides without a lookup
+ * - Sessions on this node subscribe to the large rooms their user is a member of
+ *   (local interest); a node without subscribers drops the room's messages at once
+ * - Each room's subscribers are split into shards by session ID, one thread per shard
+ *   (app.rooms.large.threads): a message goes out in parallel chunks while every
+ *   session still gets the room's messages in order
+ */
+@Component
+public class LargeRoomIndex {
+
+    private static final String ROOMS_ATTRIBUTE = "largeRooms";  // Large rooms the session is subscribed to
+
+    private final ThreadPoolExecutor[] shards;
+
+    private final Set<String> largeRooms = ConcurrentHashMap.newKeySet();
+    private final Map<String, Subscribers> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriptions = new AtomicInteger();
+
+    private final Timer fanOutTimer;
+
+    public LargeRoomIndex(@Value("${app.rooms.large.threads:4}") int threads,
+                          MeterRegistry meterRegistry) {
+        this.shards = new ThreadPoolExecutor[Math.max(1, threads)];
+        for (int i = 0; i < shards.length; i++) {
+            String name = "large-room-" + (i + 1);
+            shards[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        this.fanOutTimer = Timer.builder("chat.rooms.fanout")
+                .description("Time from receiving a room message to handing it to every local recipient")
+                .tag("tier", "large")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("chat.rooms.large.subscriptions", subscriptions, AtomicInteger::get)
+                .description("Session subscriptions to large rooms on this node")
+                .register(meterRegistry);
+        Gauge.builder("chat.rooms.large.pending", this, LargeRoomIndex::pending)
+                .description("Large-room shard deliveries waiting for a thread")
+                .register(meterRegistry);
+    }
+
+    public boolean isLarge(String roomId) {
+        return roomId != null && largeRooms.contains(roomId);
+    }
+
+    public boolean hasLargeRooms() {
+        return !largeRooms.isEmpty();
+    }
+
+    public Set<String> getLargeRooms() {
+        return Set.copyOf(largeRooms);
+    }
+
+    /**
+     * Replace the set of large rooms; rooms that left the tier lose their subscribers
+     */
+    public void setLargeRooms(Collection<String> roomIds) {
+        largeRooms.addAll(roomIds);
+        Set<String> current = new HashSet<>(roomIds);
+        for (String roomId : Set.copyOf(largeRooms)) {
+            if (!current.contains(roomId)) {
+                largeRooms.remove(roomId);
+                Subscribers removed = subscribers.remove(roomId);
+                if (removed != null) {
+                    removed.forEach(session -> {
+                        rooms(session).remove(roomId);
+                        subscriptions.decrementAndGet();
+                    });
+                }
+            }
+        }
+    }
+
+    public void subscribe(String roomId, WebSocketSession session) {
+        if (!isLarge(roomId) || !rooms(session).add(roomId)) {
+            return;
+        }
+        subscribers.computeIfAbsent(roomId, k -> new Subscribers(shards.length))
+                .shard(shardOf(session)).add(session);
+        subscriptions.incrementAndGet();
+    }
+
+    public void unsubscribe(String roomId, WebSocketSession session) {
+        if (!rooms(session).remove(roomId)) {
+            return;
+        }
+        Subscribers room = subscribers.get(roomId);
+        if (room != null && room.shard(shardOf(session)).remove(session)) {
+            subscriptions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Drop every subscription of a closed session
+     */
+    public void unsubscribeAll(WebSocketSession session) {
+        for (String roomId : Set.copyOf(rooms(session))) {
+            unsubscribe(roomId, session);
+        }
+    }
+
+    public boolean isSubscribed(String roomId, WebSocketSession session) {
+        return rooms(session).contains(roomId);
+    }
+
+    public Set<String> roomsOf(WebSocketSession session) {
+        return Set.copyOf(rooms(session));
+    }
+
+    /**
+     * Call send for every open local subscriber of a large room, one shard per thread
+     * @param delivered Called once per shard with the number of sessions it reached
+     * @return false if no session on this node is subscribed (nothing was submitted)
+     */
+    public boolean fanOut(String roomId, Consumer<WebSocketSession> send, IntConsumer delivered) {
+        long start = System.nanoTime();
+        Subscribers room = subscribers.get(roomId);
+        if (room == null || room.isEmpty()) {
+            fanOutTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return false;
+        }
+
+        AtomicInteger remaining = new AtomicInteger(shards.length);
+        // One submitter per room at a time, so every shard sees the room's messages in the same order
+        synchronized (room) {
+            for (int i = 0; i < shards.length; i++) {
+                Set<WebSocketSession> shard = room.shard(i);
+                shards[i].execute(() -> {
+                    int count = 0;
+                    for (WebSocketSession session : shard) {
+                        if (session.isOpen()) {
+                            send.accept(session);
+                            count++;
+                        }
+                    }
+                    delivered.accept(count);
+                    if (remaining.decrementAndGet() == 0) {
+                        fanOutTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                });
+            }
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ThreadPoolExecutor shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+    // Helper methods
+
+    @SuppressWarnings("unchecked")
+    private static Set<String> rooms(WebSocketSession session) {
+        return (Set<String>) session.getAttributes()
+                .computeIfAbsent(ROOMS_ATTRIBUTE, k -> ConcurrentHashMap.newKeySet());
+    }
+
+    private int shardOf(WebSocketSession session) {
+        return Math.floorMod(session.getId().hashCode(), shards.length);
+    }
+
+    private int pending() {
+        int pending = 0;
+        for (ThreadPoolExecutor shard : shards) {
+            pending += shard.getQueue().size();
+        }
+        return pending;
+    }
+
+    private static final class Subscribers {
+        private final Set<WebSocketSession>[] shards;
+
+        @SuppressWarnings("unchecked")
+        private Subscribers(int count) {
+            this.shards = new Set[count];
+            for (int i = 0; i < count; i++) {
+                shards[i] = ConcurrentHashMap.newKeySet();
+            }
+        }
+
+        private Set<WebSocketSession> shard(int index) {
+            return shards[index];
+        }
+
+        private boolean isEmpty() {
+            for (Set<WebSocketSession> shard : shards) {
+                if (!shard.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void forEach(Consumer<WebSocketSession> action) {
+            for (Set<WebSocketSession> shard : shards) {
+                shard.forEach(action);
+            }
+        }
+    }
+}
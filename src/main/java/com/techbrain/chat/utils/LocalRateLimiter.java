@@ -0,0 +1,78 @@
+package com.techbrain.chat.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free keyed token bucket (GCRA)
+ *
+ * Each key holds one "theoretical arrival time" in an AtomicLong instead of a
+ * token count plus a refill timestamp, so a check is a single CAS:
+ * - every request moves the time forward by 1/rate
+ * - a request is refused if that would put it more than burst/rate ahead of now
+ * Keys whose time has passed are equivalent to a full bucket and can be dropped.
+ */
+public final class LocalRateLimiter {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final Map<String, AtomicLong> arrivals = new ConcurrentHashMap<>();
+
+    public LocalRateLimiter(double permitsPerSecond, int burst) {
+        this.intervalNanos = (long) (1_000_000_000L / permitsPerSecond);
+        this.toleranceNanos = intervalNanos * Math.max(1, burst);
+    }
+
+    /**
+     * Take one permit for the key
+     * @return 0 if allowed, otherwise nanoseconds until a permit is free
+     */
+    public long tryAcquire(String key) {
+        AtomicLong arrival = arrivals.computeIfAbsent(key, k -> new AtomicLong(Long.MIN_VALUE));
+        while (true) {
+            long now = System.nanoTime();
+            long current = arrival.get();
+            long tat = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+            long next = tat + intervalNanos;
+
+            if (next - now > toleranceNanos) {
+                return next - now - toleranceNanos;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Give back a permit taken by tryAcquire (the request was refused by another limit)
+     */
+    public void release(String key) {
+        AtomicLong arrival = arrivals.get(key);
+        if (arrival == null) {
+            return;
+        }
+        while (true) {
+            long current = arrival.get();
+            if (current == Long.MIN_VALUE || current - System.nanoTime() < 0) {
+                return;  // Bucket already full again
+            }
+            if (arrival.compareAndSet(current, current - intervalNanos)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drop keys with a full bucket (they behave exactly like absent keys)
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        arrivals.values().removeIf(arrival -> arrival.get() - now < 0);
+    }
+
+    public int size() {
+        return arrivals.size();
+    }
+}
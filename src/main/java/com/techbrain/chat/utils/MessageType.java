@@ -3,5 +3,8 @@ package com.techbrain.chat.utils;
 public enum MessageType {
     UNICAST,
     MULTICAST,
-    BROADCAST
+    BROADCAST,
+    PRESENCE,     // Batched presence changes between servers (never sent by clients)
+    ACK,          // Client acknowledgement of delivered messages up to "seq" (never stored or routed)
+    MEMBERSHIP    // Large-room join/leave between servers: roomId, senderId = user, content "join"/"leave"
 }
@@ -0,0 +1,119 @@
+package com.techbrain.chat.utils;
+
+import com.techbrain.chat.service.KafkaConsumerService;
+import com.techbrain.chat.to.NodeLoad;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Map;
+
+/**
+ * Node Load Sampler
+ *
+ * Samples this node's load and turns it into a load balancer weight:
+ * - Each signal is scaled against its app.load.max-* limit (1.0 = at the limit)
+ * - The busiest signal decides: weight = 100 * (1 - utilization), at least 1
+ * - Outbound bytes = frames queued in the sessions' delivery lanes plus the decorators' buffers
+ * - Sampling only reads in-memory state (no Redis or Kafka calls)
+ */
+@Component
+public class NodeLoadSampler {
+
+    private final KafkaConsumerService kafkaConsumerService;
+    private final OrderedDeliveryExecutor deliveryExecutor;
+    private final SessionOutboundQueue outboundQueue;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+
+    @Value("${app.load.max-sessions:10000}")
+    private int maxSessions;
+
+    @Value("${app.load.max-outbound-bytes:67108864}")
+    private long maxOutboundBytes;
+
+    @Value("${app.load.max-pending-deliveries:1000}")
+    private int maxPendingDeliveries;
+
+    @Value("${app.load.max-kafka-lag:10000}")
+    private long maxKafkaLag;
+
+    public NodeLoadSampler(KafkaConsumerService kafkaConsumerService,
+                           OrderedDeliveryExecutor deliveryExecutor,
+                           SessionOutboundQueue outboundQueue,
+                           KafkaListenerEndpointRegistry listenerRegistry) {
+        this.kafkaConsumerService = kafkaConsumerService;
+        this.deliveryExecutor = deliveryExecutor;
+        this.outboundQueue = outboundQueue;
+        this.listenerRegistry = listenerRegistry;
+    }
+
+    public NodeLoad sample() {
+        NodeLoad load = new NodeLoad();
+
+        int sessions = 0;
+        long outboundBytes = 0;
+        for (WebSocketSession session : kafkaConsumerService.getSessions().values()) {
+            sessions++;
+            // Frames waiting in the priority lanes, plus whatever the decorator still buffers
+            outboundBytes += outboundQueue.queuedBytes(session);
+            if (session instanceof ConcurrentWebSocketSessionDecorator decorator) {
+                outboundBytes += decorator.getBufferSize();
+            }
+        }
+
+        load.setSessions(sessions);
+        load.setOutboundBytes(outboundBytes);
+        load.setPendingDeliveries(deliveryExecutor.pendingKeys());
+        load.setKafkaLag(kafkaLag());
+        load.setCpu(cpu());
+        load.setWeight(weight(load));
+        return load;
+    }
+
+    // Helper methods
+
+    private int weight(NodeLoad load) {
+        double utilization = Math.max(
+                Math.max((double) load.getSessions() / maxSessions, (double) load.getOutboundBytes() / maxOutboundBytes),
+                Math.max(Math.max((double) load.getPendingDeliveries() / maxPendingDeliveries,
+                                  (double) load.getKafkaLag() / maxKafkaLag),
+                         load.getCpu()));
+
+        return (int) Math.max(1, Math.round(100 * (1 - Math.min(1.0, utilization))));
+    }
+
+    /**
+     * Largest "records-lag-max" over this node's listener consumers
+     */
+    private long kafkaLag() {
+        double lag = 0;
+        for (MessageListenerContainer container : listenerRegistry.getListenerContainers()) {
+            for (Map<MetricName, ? extends Metric> metrics : container.metrics().values()) {
+                for (var metric : metrics.entrySet()) {
+                    if ("records-lag-max".equals(metric.getKey().name())
+                            && metric.getValue().metricValue() instanceof Number value
+                            && !Double.isNaN(value.doubleValue())) {
+                        lag = Math.max(lag, value.doubleValue());
+                    }
+                }
+            }
+        }
+        return (long) lag;
+    }
+
+    private double cpu() {
+        if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean os) {
+            double cpu = os.getProcessCpuLoad();
+            return cpu >= 0 ? cpu : 0.0;  // Negative = not available yet
+        }
+        return 0.0;
+    }
+}
@@ -0,0 +1,107 @@
+package com.techbrain.chat.utils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Ordered Delivery Executor
+ *
+ * Runs delivery steps that wait on async lookups without reordering them:
+ * - Steps with the same key (e.g. a room ID) run one after another, in submit order,
+ *   even if their lookups complete out of order
+ * - Steps with different keys run in parallel on a fixed pool (app.delivery.threads)
+ * - A failed lookup or step is logged and never blocks later steps
+ */
+@Component
+public class OrderedDeliveryExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderedDeliveryExecutor.class);
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final ExecutorService executor;
+
+    // Last submitted step per key; removed once it completes
+    private final Map<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public OrderedDeliveryExecutor(@Value("${app.delivery.threads:0}") int threads,
+                                   MeterRegistry meterRegistry) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "delivery-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("chat.delivery.pending.keys", tails, Map::size)
+                .description("Keys with delivery steps still waiting or running")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run the action with the input's value once the input completes and every
+     * earlier step for the same key has finished
+     */
+    public <T> CompletableFuture<Void> submit(String key, CompletionStage<T> input, Consumer<T> action) {
+        CompletableFuture<Void> tail = tails.compute(key, (k, previous) ->
+                (previous != null ? previous : DONE)
+                        .thenCombineAsync(input, (ignored, value) -> {
+                            action.accept(value);
+                            return (Void) null;
+                        }, executor)
+                        .exceptionally(error -> {
+                            log.error("Delivery step for {} failed: {}", k, error.getMessage());
+                            return null;
+                        }));
+
+        tail.whenComplete((ignored, error) -> tails.remove(key, tail));
+        return tail;
+    }
+
+    /**
+     * Keys with delivery steps still waiting or running
+     */
+    public int pendingKeys() {
+        return tails.size();
+    }
+
+    /**
+     * Wait until every submitted step has finished (node shutdown)
+     * @return false if steps were still pending after the timeout
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) {
+        try {
+            CompletableFuture.allOf(tails.values().toArray(new CompletableFuture[0])).get(timeout, unit);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return tails.isEmpty();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
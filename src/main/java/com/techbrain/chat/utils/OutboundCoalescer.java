@@ -0,0 +1,235 @@
+package com.techbrain.chat.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Outbound Coalescer
+ *
+ * Groups the chat messages queued for one session into a single frame:
+ * - The first message of a batch starts a window (app.websocket.coalesce.window-ms);
+ *   the batch goes out when the window ends, or earlier once it holds max-messages
+ *   messages or max-bytes bytes, so the added latency is at most one window
+ * - JSON sessions get {"type":"batch","messages":[...]}, binary sessions a BATCH frame;
+ *   a batch of one message is sent as the plain message
+ * - Only sessions that opted in (?coalesce=true) are ever batched
+ * - Batches are written by the session's SessionOutboundQueue like any other frame (a window
+ *   that ends closes the batch and submits it in its highest lane, so a later message never
+ *   joins a batch already waiting in a lower lane); each message's future completes when its
+ *   batch is written
+ *
+ * Metrics: chat.websocket.coalesce.messages and chat.websocket.coalesce.frames
+ * (messages per frame), chat.websocket.coalesce.batch.size and chat.websocket.coalesce.delay
+ */
+@Component
+public class OutboundCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundCoalescer.class);
+
+    private static final String LOCK_ATTRIBUTE = "coalesceLock";  // Session attribute: guards the session's batch
+
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final SessionOutboundQueue outboundQueue;
+
+    // Open batch per session ID; removed when it is flushed
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+    private final long windowNanos;
+    private final int maxMessages;
+    private final int maxBytes;
+
+    private final Counter messages;
+    private final Counter frames;
+    private final DistributionSummary batchSize;
+    private final Timer delay;
+
+    public OutboundCoalescer(@Value("${app.websocket.coalesce.window-ms:3}") long windowMs,
+                             @Value("${app.websocket.coalesce.max-messages:32}") int maxMessages,
+                             @Value("${app.websocket.coalesce.max-bytes:65536}") int maxBytes,
+                             @Value("${app.websocket.coalesce.threads:2}") int threads,
+                             SessionOutboundQueue outboundQueue,
+                             MeterRegistry meterRegistry) {
+        this.outboundQueue = outboundQueue;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scheduler = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "coalesce-flush-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Batches flushed early cancel their timer; don't keep the dead tasks queued
+        this.scheduler.setRemoveOnCancelPolicy(true);
+
+        this.messages = Counter.builder("chat.websocket.coalesce.messages")
+                .description("Messages sent to coalescing sessions")
+                .register(meterRegistry);
+        this.frames = Counter.builder("chat.websocket.coalesce.frames")
+                .description("Frames written to coalescing sessions")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("chat.websocket.coalesce.batch.size")
+                .description("Messages per coalesced frame")
+                .register(meterRegistry);
+        this.delay = Timer.builder("chat.websocket.coalesce.delay")
+                .description("Time the first message of a batch waited for the flush")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue an encoded message (JSON text or binary frame, matching the session)
+     * @return completes when the batch holding the message is written
+     */
+    public CompletableFuture<Void> enqueue(WebSocketSession session, DeliveryLane lane, Object payload, int bytes) {
+        // Per-session lock (an attribute, so the raw session and its decorator share it):
+        // batches of one session are written in the order they were opened
+        synchronized (lock(session)) {
+            Batch batch = batches.get(session.getId());
+            if (batch == null) {
+                Batch created = new Batch(session);
+                created.timer = scheduler.schedule(() -> flushWindow(created), windowNanos, TimeUnit.NANOSECONDS);
+                batches.put(session.getId(), created);
+                batch = created;
+            }
+            batch.payloads.add(payload);
+            batch.bytes += bytes;
+            if (lane.ordinal() < batch.lane.ordinal()) {
+                batch.lane = lane;
+            }
+
+            if (batch.payloads.size() >= maxMessages || batch.bytes >= maxBytes) {
+                batches.remove(session.getId());
+                batch.timer.cancel(false);
+                write(batch);
+            }
+            return batch.written;
+        }
+    }
+
+    /**
+     * Send whatever is queued for the session now (before a frame that must not overtake it)
+     */
+    public void flush(WebSocketSession session) {
+        synchronized (lock(session)) {
+            Batch batch = batches.remove(session.getId());
+            if (batch != null) {
+                batch.timer.cancel(false);
+                write(batch);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    // Helper methods
+
+    /**
+     * The window ended: close the batch (later messages open a new one, in their own lane)
+     * and queue it behind the session's other frames instead of writing it from the timer thread
+     */
+    private void flushWindow(Batch batch) {
+        WebSocketSession session = batch.session;
+        synchronized (lock(session)) {
+            if (!batches.remove(session.getId(), batch)) {
+                return;  // Already written (full, or flushed ahead of another frame)
+            }
+        }
+        outboundQueue.submit(session, batch.lane, batch.bytes, () -> {
+            synchronized (lock(session)) {
+                write(batch);
+            }
+            return null;
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                // Closed or dropped before the flush ran: the batch is never written
+                batch.written.completeExceptionally(error);
+            }
+        });
+    }
+
+    private static Object lock(WebSocketSession session) {
+        return session.getAttributes().computeIfAbsent(LOCK_ATTRIBUTE, key -> new Object());
+    }
+
+    private void write(Batch batch) {
+        List<Object> payloads = batch.payloads;
+        WebSocketSession session = batch.session;
+        delay.record(System.nanoTime() - batch.openedAt, TimeUnit.NANOSECONDS);
+        messages.increment(payloads.size());
+        frames.increment();
+        batchSize.record(payloads.size());
+
+        if (!session.isOpen()) {
+            batch.written.completeExceptionally(new IOException("Session " + session.getId() + " is closed"));
+            return;
+        }
+        try {
+            if (SessionFrameWriter.isBinary(session)) {
+                List<byte[]> encoded = new ArrayList<>(payloads.size());
+                payloads.forEach(payload -> encoded.add((byte[]) payload));
+                byte[] frame = encoded.size() == 1 ? encoded.get(0) : BinaryMessageCodec.encodeBatch(encoded);
+                session.sendMessage(new BinaryMessage(frame));
+            } else if (payloads.size() == 1) {
+                session.sendMessage(new TextMessage((String) payloads.get(0)));
+            } else {
+                // Messages are already JSON: splice them instead of serializing again
+                StringBuilder json = new StringBuilder(batch.bytes + 32 + payloads.size());
+                json.append("{\"type\":\"batch\",\"messages\":[");
+                for (int i = 0; i < payloads.size(); i++) {
+                    if (i > 0) {
+                        json.append(',');
+                    }
+                    json.append((String) payloads.get(i));
+                }
+                json.append("]}");
+                session.sendMessage(new TextMessage(json.toString()));
+            }
+            batch.written.complete(null);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to send batch of {} messages to session {}: {}", payloads.size(), session.getId(), e.getMessage());
+            batch.written.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Messages queued for one session (guarded by the session's lock attribute)
+     */
+    private static final class Batch {
+        private final WebSocketSession session;
+        private final List<Object> payloads = new ArrayList<>();
+        private final long openedAt = System.nanoTime();
+        private final CompletableFuture<Void> written = new CompletableFuture<>();
+        private DeliveryLane lane = DeliveryLane.BROADCAST;  // Highest lane of its messages
+        private int bytes;
+        private ScheduledFuture<?> timer;
+
+        private Batch(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.techbrain.chat.utils;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushListener;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redis Near Cache (opt-in)
+ *
+ * Server-assisted client-side caching for cached user/room hashes:
+ * - A dedicated RESP3 connection runs CLIENT TRACKING; every key read through it
+ *   is tracked, and Redis pushes an "invalidate" message when any client changes
+ *   it, or when it expires or is evicted
+ * - Values live in a bounded LRU (max-entries) on this node
+ * - A read stores a placeholder first; an invalidation arriving while the read is
+ *   in flight removes it, so a stale value is never cached
+ * - While the tracking connection is down the cache is cleared and bypassed
+ *
+ * Metrics: "chat.cache.near.requests" (result=hit|miss), "chat.cache.near.invalidations",
+ * "chat.cache.near.evictions" and the gauge "chat.cache.near.size".
+ */
+@Component
+public class RedisNearCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisNearCache.class);
+
+    // Only these key spaces are near-cached (compact entity hashes)
+    private static final List<String> TRACKED_PREFIXES = List.of("user:v2:", "room:v2:");
+
+    private final RedisConnectionFactory connectionFactory;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter invalidations;
+    private final Counter evictions;
+
+    // key -> Map of hash fields, or a placeholder token while a read is in flight
+    private final Map<String, Object> entries;
+
+    private RedisClient client;
+    private volatile StatefulRedisConnection<String, String> connection;
+    private volatile boolean tracking;
+
+    @Value("${app.cache.near.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.cache.near.max-entries:10000}")
+    private int maxEntries;
+
+    public RedisNearCache(RedisConnectionFactory connectionFactory, MeterRegistry meterRegistry) {
+        this.connectionFactory = connectionFactory;
+
+        this.hits = Counter.builder("chat.cache.near.requests").tag("result", "hit")
+                .description("Lookups served from local memory")
+                .register(meterRegistry);
+        this.misses = Counter.builder("chat.cache.near.requests").tag("result", "miss")
+                .description("Lookups that read Redis over the tracking connection")
+                .register(meterRegistry);
+        this.invalidations = Counter.builder("chat.cache.near.invalidations")
+                .description("Keys invalidated by Redis push messages")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("chat.cache.near.evictions")
+                .description("Entries dropped because the near cache was full")
+                .register(meterRegistry);
+
+        // Access-ordered LRU bounded by max-entries
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                boolean evict = size() > maxEntries;
+                if (evict) {
+                    evictions.increment();
+                }
+                return evict;
+            }
+        };
+
+        Gauge.builder("chat.cache.near.size", this, RedisNearCache::size)
+                .description("Entries currently held in the near cache")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (!(connectionFactory instanceof LettuceConnectionFactory lettuce)) {
+            log.warn("Near cache disabled: Lettuce connection factory required");
+            return;
+        }
+
+        try {
+            RedisURI uri = RedisURI.create(lettuce.getHostName(), lettuce.getPort());
+            client = RedisClient.create(uri);
+            client.setOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP3).build());
+
+            // Tracking state does not survive a reconnect: drop everything and re-enable it
+            client.addListener(new RedisConnectionStateListener() {
+                @Override
+                public void onRedisConnected(RedisChannelHandler<?, ?> channel, SocketAddress socketAddress) {
+                    if (connection != null) {
+                        enableTracking();
+                    }
+                }
+
+                @Override
+                public void onRedisDisconnected(RedisChannelHandler<?, ?> channel) {
+                    tracking = false;
+                    clear();
+                }
+            });
+
+            connection = client.connect(StringCodec.UTF8);
+            connection.setTimeout(Duration.ofSeconds(2));
+            connection.addListener((PushListener) message -> {
+                if ("invalidate".equals(message.getType())) {
+                    onInvalidate(message.getContent(StringCodec.UTF8::decodeKey));
+                }
+            });
+
+            connection.sync().clientTracking(TrackingArgs.Builder.enabled());
+            tracking = true;
+            log.info("Near cache enabled for {} (max {} entries)", TRACKED_PREFIXES, maxEntries);
+        } catch (Exception e) {
+            // e.g. Redis < 6 without RESP3 / CLIENT TRACKING
+            log.warn("Near cache disabled: {}", e.getMessage());
+            stop();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        tracking = false;
+        clear();
+        if (connection != null) {
+            connection.close();
+            connection = null;
+        }
+        if (client != null) {
+            client.shutdown();
+            client = null;
+        }
+    }
+
+    /**
+     * @return true if the key is near-cached and tracking is active
+     */
+    public boolean handles(String key) {
+        if (!tracking) {
+            return false;
+        }
+        for (String prefix : TRACKED_PREFIXES) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * HGETALL served from local memory when possible (empty map if the key does not exist)
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> hgetall(String key) {
+        Object token = new Object();
+        synchronized (entries) {
+            Object cached = entries.get(key);
+            if (cached instanceof Map) {
+                hits.increment();
+                return (Map<String, String>) cached;
+            }
+            entries.put(key, token);
+        }
+        misses.increment();
+
+        Map<String, String> fields;
+        try {
+            fields = Map.copyOf(connection.sync().hgetall(key));
+        } catch (RuntimeException e) {
+            synchronized (entries) {
+                entries.remove(key, token);
+            }
+            throw e;
+        }
+
+        synchronized (entries) {
+            // Still our placeholder = no invalidation since the read; cache only existing keys
+            if (entries.get(key) == token) {
+                if (fields.isEmpty()) {
+                    entries.remove(key);
+                } else {
+                    entries.put(key, fields);
+                }
+            }
+        }
+        return fields;
+    }
+
+    // Helper methods
+
+    private void enableTracking() {
+        clear();
+        connection.async().clientTracking(TrackingArgs.Builder.enabled())
+                .whenComplete((reply, error) -> {
+                    if (error != null) {
+                        log.warn("Failed to re-enable near cache tracking: {}", error.getMessage());
+                    } else {
+                        tracking = true;
+                    }
+                });
+    }
+
+    private void onInvalidate(List<Object> content) {
+        // ["invalidate", [key, ...]] or ["invalidate", null] after FLUSHALL/FLUSHDB
+        Object keys = content.size() > 1 ? content.get(1) : null;
+        if (!(keys instanceof List<?> keyList)) {
+            clear();
+            return;
+        }
+        synchronized (entries) {
+            for (Object key : keyList) {
+                entries.remove(String.valueOf(key));
+            }
+        }
+        invalidations.increment(keyList.size());
+    }
+
+    private void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private double size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.techbrain.chat.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis round trips on the message hot path
+ *
+ * Every Redis call made while delivering a message records one round trip
+ * (a script or a single command counts as one). Together with the number of
+ * messages handled, this exposes "chat.redis.roundtrips.per.message" so that
+ * a change adding an extra Redis call per message shows up immediately.
+ */
+@Component
+public class RedisRoundTripMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Counter messages;
+    private final LongAdder roundTrips = new LongAdder();
+
+    public RedisRoundTripMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.messages = Counter.builder("chat.redis.messages")
+                .description("Messages handled on the delivery path (sent or consumed from Kafka)")
+                .register(meterRegistry);
+
+        Gauge.builder("chat.redis.roundtrips.per.message", this, RedisRoundTripMetrics::perMessage)
+                .description("Redis round trips per message on the delivery path")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record one Redis round trip for the given operation
+     */
+    public void record(String operation) {
+        roundTrips.increment();
+        meterRegistry.counter("chat.redis.roundtrips", "operation", operation).increment();
+    }
+
+    /**
+     * Record one message handled on the delivery path
+     */
+    public void recordMessage() {
+        messages.increment();
+    }
+
+    private double perMessage() {
+        double handled = messages.count();
+        return handled == 0 ? 0.0 : roundTrips.sum() / handled;
+    }
+}
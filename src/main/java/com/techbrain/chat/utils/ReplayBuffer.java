@@ -0,0 +1,145 @@
+package com.techbrain.chat.utils;
+
+import com.techbrain.chat.to.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Replay Buffer
+ *
+ * Chat messages recently sent to one user, numbered 1, 2, 3... within a stream:
+ * - Bounded ring: the oldest entries are overwritten once capacity is reached
+ * - Client acks release entries early (they will never be replayed)
+ * - A stream ID identifies the numbering; a client resuming another stream (or from a
+ *   sequence number already overwritten) cannot be served and must re-fetch history
+ * - Only live sessions number messages: once something is addressed to the user while
+ *   detached, the buffer is marked missed and cannot be resumed either
+ * - The session that attached owns the buffer; only its close detaches it. A new owner
+ *   keeps the buffer detached (misses are still recorded) until it is activated, i.e.
+ *   until live messages can reach the session
+ *
+ * All methods are synchronized; sending under the session lock keeps sequence
+ * numbers in send order.
+ */
+public class ReplayBuffer {
+
+    private final String streamId = UUID.randomUUID().toString();
+    private final Message[] ring;
+
+    private long lastSeq;       // Last sequence number assigned
+    private long ackedSeq;      // Client confirmed everything up to here
+    private volatile long detachedAt;  // Epoch millis when the user's session closed, 0 = attached
+    private String owner;              // Session that attached last
+    private Set<String> largeRooms = Set.of();  // Large rooms the user was subscribed to when detached
+    private boolean missed;            // A message went to the user while detached
+
+    public ReplayBuffer(int capacity) {
+        this.ring = new Message[capacity];
+    }
+
+    public String getStreamId() {
+        return streamId;
+    }
+
+    /**
+     * Number the message and keep it for replay
+     * @return its sequence number
+     */
+    public synchronized long append(Message message) {
+        lastSeq++;
+        ring[(int) (lastSeq % ring.length)] = message;
+        return lastSeq;
+    }
+
+    public synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Client received everything up to seq: release those entries
+     */
+    public synchronized void ack(long seq) {
+        long upTo = Math.min(seq, lastSeq);
+        for (long s = Math.max(ackedSeq + 1, lastSeq - ring.length + 1); s <= upTo; s++) {
+            ring[(int) (s % ring.length)] = null;
+        }
+        ackedSeq = Math.max(ackedSeq, upTo);
+    }
+
+    /**
+     * Messages after fromSeq, in order
+     * @return null if some of them are no longer held (gap) or fromSeq is ahead of the stream
+     */
+    public synchronized List<Message> since(long fromSeq) {
+        if (fromSeq > lastSeq || fromSeq < 0) {
+            return null;
+        }
+        if (fromSeq < lastSeq - ring.length || fromSeq < ackedSeq) {
+            // Overwritten, or acked (the client claims less than it confirmed)
+            return null;
+        }
+        List<Message> missed = new ArrayList<>((int) (lastSeq - fromSeq));
+        for (long s = fromSeq + 1; s <= lastSeq; s++) {
+            missed.add(ring[(int) (s % ring.length)]);
+        }
+        return missed;
+    }
+
+    public synchronized int size() {
+        return (int) Math.min(lastSeq - ackedSeq, ring.length);
+    }
+
+    public synchronized void attached(String sessionId) {
+        owner = sessionId;
+    }
+
+    /**
+     * The owner session now receives live messages: stop recording misses
+     * @return false if another session attached since (nothing changed)
+     */
+    public synchronized boolean activated(String sessionId) {
+        if (!sessionId.equals(owner)) {
+            return false;
+        }
+        detachedAt = 0;
+        return true;
+    }
+
+    /**
+     * The session closed: start the retention window, unless another session attached since
+     * @return false if the session does not own the buffer (nothing changed)
+     */
+    public synchronized boolean detached(String sessionId, Set<String> largeRooms) {
+        if (!sessionId.equals(owner)) {
+            return false;
+        }
+        this.largeRooms = largeRooms;
+        missed = false;
+        detachedAt = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * A message went to the user while no session was attached: it was never numbered
+     */
+    public synchronized void missed() {
+        if (detachedAt != 0) {
+            missed = true;
+        }
+    }
+
+    public synchronized boolean isMissed() {
+        return missed;
+    }
+
+    public synchronized boolean wasSubscribedTo(String roomId) {
+        return largeRooms.contains(roomId);
+    }
+
+    public long getDetachedAt() {
+        return detachedAt;
+    }
+}
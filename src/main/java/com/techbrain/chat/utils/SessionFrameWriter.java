@@ -0,0 +1,343 @@
+package com.techbrain.chat.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techbrain.chat.to.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Session Frame Writer
+ *
+ * Single place where frames are written to WebSocket sessions:
+ * - Sessions that negotiated "chat-binary.v1" get BinaryMessageCodec frames, DEFLATE-wrapped
+ *   from app.websocket.compression.min-bytes on
+ * - All other sessions get JSON text frames; the container (Tomcat) compresses them with
+ *   permessage-deflate whenever the client offers it, and cannot share that work across
+ *   sessions (one compression context per connection)
+ * - A Frame is serialized (and compressed) at most once per format, however many
+ *   sessions it is sent to
+ * - Chat messages to sessions that opted into coalescing go through OutboundCoalescer
+ *   (their futures complete when the batch is written); control frames flush what is
+ *   queued first, so they never overtake messages
+ * - Chat messages to sessions with a ReplayBuffer are numbered per session ("seq" in JSON,
+ *   a SEQUENCED wrapper in binary) and kept for resume; the shared encoding is reused
+ * - Every write goes through the session's SessionOutboundQueue in its DeliveryLane
+ *   (control, direct, room, broadcast); frames are encoded by the caller and numbered
+ *   when they are written, so sequence numbers follow the wire order
+ * - Every send returns a future that completes once the frame is written and fails if it
+ *   never will be (write error, closed session, queue overflow); encoding errors are thrown
+ */
+@Component
+public class SessionFrameWriter {
+
+    public static final String COALESCE_ATTRIBUTE = "coalesce";  // Session attribute: client opted into batches
+    public static final String REPLAY_ATTRIBUTE = "replay";      // Session attribute: the user's ReplayBuffer
+    public static final String USER_ID_ATTRIBUTE = "userId";     // Session attribute: the connected user (set on connect)
+
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final ObjectMapper objectMapper;
+    private final OutboundCoalescer coalescer;
+    private final SessionOutboundQueue outboundQueue;
+
+    private final Counter serializedText;
+    private final Counter serializedBinary;
+    private final Counter sentText;
+    private final Counter sentBinary;
+    private final Counter bytesBeforeCompression;
+    private final Counter bytesAfterCompression;
+    private final Timer compressionTime;
+    private final Counter sessionsDeflate;
+    private final Counter sessionsPlain;
+
+    @Value("${app.websocket.compression.min-bytes:512}")
+    private int compressMinBytes;
+
+    public SessionFrameWriter(@Qualifier("objectMapper") ObjectMapper objectMapper,
+                              OutboundCoalescer coalescer,
+                              SessionOutboundQueue outboundQueue,
+                              MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.coalescer = coalescer;
+        this.outboundQueue = outboundQueue;
+
+        this.serializedText = serialized(meterRegistry, "json");
+        this.serializedBinary = serialized(meterRegistry, "binary");
+        this.sentText = sent(meterRegistry, "json");
+        this.sentBinary = sent(meterRegistry, "binary");
+        this.bytesBeforeCompression = Counter.builder("chat.websocket.compression.bytes")
+                .description("Binary frame bytes before and after DEFLATE")
+                .tag("stage", "raw")
+                .register(meterRegistry);
+        this.bytesAfterCompression = Counter.builder("chat.websocket.compression.bytes")
+                .description("Binary frame bytes before and after DEFLATE")
+                .tag("stage", "compressed")
+                .register(meterRegistry);
+        this.compressionTime = Timer.builder("chat.websocket.compression.time")
+                .description("CPU time spent compressing binary frames (once per frame, not per recipient)")
+                .register(meterRegistry);
+        this.sessionsDeflate = Counter.builder("chat.websocket.sessions.opened")
+                .description("Sessions opened, by whether permessage-deflate was negotiated")
+                .tag("deflate", "true")
+                .register(meterRegistry);
+        this.sessionsPlain = Counter.builder("chat.websocket.sessions.opened")
+                .description("Sessions opened, by whether permessage-deflate was negotiated")
+                .tag("deflate", "false")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record the compression negotiated for a new session
+     */
+    public void onSessionOpened(WebSocketSession session) {
+        boolean deflate = session.getExtensions().stream()
+                .anyMatch(extension -> PERMESSAGE_DEFLATE.equals(extension.getName()));
+        (deflate ? sessionsDeflate : sessionsPlain).increment();
+    }
+
+    public static boolean isBinary(WebSocketSession session) {
+        return BinaryMessageCodec.SUBPROTOCOL.equals(session.getAcceptedProtocol());
+    }
+
+    public static boolean isCoalescing(WebSocketSession session) {
+        return Boolean.TRUE.equals(session.getAttributes().get(COALESCE_ATTRIBUTE));
+    }
+
+    /**
+     * Frame for a chat message, to send to any number of sessions (fan-out loops)
+     */
+    public Frame prepare(Message message) {
+        return new Frame(message, DeliveryLane.of(message), true,
+                () -> writeJson(message), () -> BinaryMessageCodec.encodeMessage(message));
+    }
+
+    /**
+     * Frame for an ephemeral signal (typing, read cursor): like a chat message on the wire,
+     * but never numbered or buffered for resume
+     */
+    public Frame prepareSignal(Message signal) {
+        return new Frame(null, DeliveryLane.of(signal), true,
+                () -> writeJson(signal), () -> BinaryMessageCodec.encodeMessage(signal));
+    }
+
+    /**
+     * Frame for a control message (welcome, error, presence, reconnect hint)
+     */
+    public Frame prepareControl(Map<String, ?> frame) {
+        return new Frame(null, DeliveryLane.CONTROL, false,
+                () -> writeJson(frame), () -> BinaryMessageCodec.encodeControl(frame));
+    }
+
+    /**
+     * Send a chat message
+     */
+    public CompletableFuture<Void> send(WebSocketSession session, Message message) throws IOException {
+        return send(session, prepare(message));
+    }
+
+    /**
+     * Send a control frame
+     */
+    public CompletableFuture<Void> sendControl(WebSocketSession session, Map<String, ?> frame) throws IOException {
+        return send(session, prepareControl(frame));
+    }
+
+    /**
+     * Send a chat message that is already serialized as JSON (inbox entries)
+     */
+    public CompletableFuture<Void> sendMessageJson(WebSocketSession session, String json) throws IOException {
+        if (isBinary(session) || replayBuffer(session) != null) {
+            // Re-encoded, or numbered and buffered for resume
+            return send(session, objectMapper.readValue(json, Message.class));
+        }
+        Frame frame = new Frame(null, DeliveryLane.DIRECT, true, () -> json, null);
+        return outboundQueue.submit(session, frame.lane, json.length(), () -> write(session, frame, 0));
+    }
+
+    public CompletableFuture<Void> send(WebSocketSession session, Frame frame) throws IOException {
+        return outboundQueue.submit(session, frame.lane, encodedSize(session, frame), () -> {
+            // Numbered when written, so sequence numbers go out in order
+            ReplayBuffer replay = frame.message != null ? replayBuffer(session) : null;
+            return write(session, frame, replay != null ? replay.append(frame.message) : 0);
+        });
+    }
+
+    /**
+     * Send a buffered message again with its original sequence number (resume). Queued in the
+     * CONTROL lane, so it goes out before live messages queued while the session was held.
+     */
+    public CompletableFuture<Void> sendReplayed(WebSocketSession session, Message message, long seq) throws IOException {
+        Frame frame = prepare(message);
+        return outboundQueue.submit(session, DeliveryLane.CONTROL, encodedSize(session, frame), () -> write(session, frame, seq));
+    }
+
+    /**
+     * Queue the session's frames without writing them (nothing is numbered) until release
+     */
+    public void hold(WebSocketSession session) {
+        outboundQueue.hold(session);
+    }
+
+    public void release(WebSocketSession session) {
+        outboundQueue.release(session);
+    }
+
+    // Helper methods
+
+    /**
+     * Write a frame, numbered with seq (0 = not numbered)
+     * @return null if the frame was written, the batch's future if it was coalesced
+     */
+    private CompletableFuture<Void> write(WebSocketSession session, Frame frame, long seq) throws IOException {
+        try {
+            CompletableFuture<Void> batched;
+            if (isBinary(session)) {
+                byte[] binary = seq > 0 ? BinaryMessageCodec.encodeSequenced(seq, frame.binary()) : frame.binary();
+                batched = queued(session, frame, binary, binary.length);
+                if (batched == null) {
+                    // A new ByteBuffer per send: the container consumes its position
+                    session.sendMessage(new BinaryMessage(binary));
+                }
+                sentBinary.increment();
+            } else {
+                String text = seq > 0 ? withSeq(frame.text(), seq) : frame.text();
+                batched = queued(session, frame, text, text.length());
+                if (batched == null) {
+                    session.sendMessage(new TextMessage(text));
+                }
+                sentText.increment();
+            }
+            return batched;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Encode the frame for the session's format on the calling thread (once per format)
+     */
+    private static int encodedSize(WebSocketSession session, Frame frame) throws IOException {
+        try {
+            return isBinary(session) ? frame.binary().length : frame.text().length();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Hand chat messages of coalescing sessions to the coalescer; other frames
+     * flush its queue first so they never overtake queued messages
+     * @return the batch's future if the payload was queued, null if the caller writes it
+     */
+    private CompletableFuture<Void> queued(WebSocketSession session, Frame frame, Object payload, int bytes) {
+        if (!isCoalescing(session)) {
+            return null;
+        }
+        if (frame.coalescable) {
+            return coalescer.enqueue(session, frame.lane, payload, bytes);
+        }
+        coalescer.flush(session);
+        return null;
+    }
+
+    /**
+     * Add "seq" to a serialized message without serializing it again: {"seq":N,...}
+     */
+    private static String withSeq(String json, long seq) {
+        String rest = json.substring(1);
+        return "{\"seq\":" + seq + (rest.trim().equals("}") ? "" : ",") + rest;
+    }
+
+    private static ReplayBuffer replayBuffer(WebSocketSession session) {
+        return (ReplayBuffer) session.getAttributes().get(REPLAY_ATTRIBUTE);
+    }
+
+    private String writeJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] compressIfLarge(byte[] frame) {
+        if (compressMinBytes <= 0 || frame.length < compressMinBytes) {
+            return frame;
+        }
+        long start = System.nanoTime();
+        byte[] compressed = BinaryMessageCodec.compress(frame);
+        compressionTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        bytesBeforeCompression.increment(frame.length);
+        bytesAfterCompression.increment(compressed.length);
+        // Incompressible (already compressed media, random IDs): the plain frame is smaller
+        return compressed.length < frame.length ? compressed : frame;
+    }
+
+    private static Counter serialized(MeterRegistry meterRegistry, String format) {
+        return Counter.builder("chat.websocket.frames.serialized")
+                .description("Frames serialized, once per frame and format")
+                .tag("format", format)
+                .register(meterRegistry);
+    }
+
+    private static Counter sent(MeterRegistry meterRegistry, String format) {
+        return Counter.builder("chat.websocket.frames.sent")
+                .description("Frames written to sessions (sent / serialized = reuse per fan-out)")
+                .tag("format", format)
+                .register(meterRegistry);
+    }
+
+    /**
+     * One outbound frame; each format is encoded on first use and then reused.
+     * May be shared by fan-out threads (encoding is synchronized).
+     */
+    public final class Frame {
+        private final Message message;  // Chat message (numbered for resume), null for control frames
+        private final DeliveryLane lane;
+        private final boolean coalescable;
+        private final Supplier<String> textEncoder;
+        private final Supplier<byte[]> binaryEncoder;
+        private String text;
+        private byte[] binary;
+
+        private Frame(Message message, DeliveryLane lane, boolean coalescable,
+                      Supplier<String> textEncoder, Supplier<byte[]> binaryEncoder) {
+            this.message = message;
+            this.lane = lane;
+            this.coalescable = coalescable;
+            this.textEncoder = textEncoder;
+            this.binaryEncoder = binaryEncoder;
+        }
+
+        synchronized String text() {
+            if (text == null) {
+                text = textEncoder.get();
+                serializedText.increment();
+            }
+            return text;
+        }
+
+        synchronized byte[] binary() {
+            if (binary == null) {
+                binary = compressIfLarge(binaryEncoder.get());
+                serializedBinary.increment();
+            }
+            return binary;
+        }
+    }
+}
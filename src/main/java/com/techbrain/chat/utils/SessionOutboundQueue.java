@@ -0,0 +1,238 @@
+package com.techbrain.chat.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session Outbound Queue
+ *
+ * Per-session priority queue in front of the socket:
+ * - Every write is queued in its DeliveryLane; the thread that finds the session idle
+ *   writes until the queue is empty, always taking the highest lane first, so a DM
+ *   queued behind a backlog of broadcast frames goes out next
+ * - Frames of one lane keep their order; only one thread writes a session at a time
+ *   (the others queue and return at once)
+ * - A session with more than app.websocket.send-buffer-size-limit bytes queued is closed,
+ *   like ConcurrentWebSocketSessionDecorator does when its buffer overflows
+ * - Every write has a future: completed once the frame is written (for a coalesced message,
+ *   once its batch is), failed if the write throws, the session closed first, or the backlog
+ *   was dropped on overflow
+ * - A held session queues writes without writing them until release (lets a connecting
+ *   session put its welcome and resume replay ahead of live frames)
+ *
+ * Metrics: chat.delivery.lane.latency{lane} (queued to written, histogram)
+ */
+@Component
+public class SessionOutboundQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionOutboundQueue.class);
+
+    private static final String QUEUE_ATTRIBUTE = "outboundQueue";  // Session attribute: the session's Lanes
+
+    private static final DeliveryLane[] LANES = DeliveryLane.values();
+
+    private final int maxQueuedBytes;
+    private final Timer[] latency = new Timer[LANES.length];
+
+    /**
+     * One queued write (the frame is already encoded; seq numbering happens when it runs)
+     */
+    @FunctionalInterface
+    public interface Write {
+        /**
+         * @return null once the frame is written, or the future of a deferred write
+         *         (a message held for a coalesced batch)
+         */
+        CompletableFuture<Void> run() throws IOException;
+    }
+
+    public SessionOutboundQueue(@Value("${app.websocket.send-buffer-size-limit:524288}") int maxQueuedBytes,
+                                MeterRegistry meterRegistry) {
+        this.maxQueuedBytes = maxQueuedBytes;
+        for (DeliveryLane lane : LANES) {
+            latency[lane.ordinal()] = Timer.builder("chat.delivery.lane.latency")
+                    .description("Time a frame waited in its session's outbound queue")
+                    .tag("lane", lane.tag())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Queue a write; runs it (and whatever else is queued) on this thread if the session is idle
+     * @param bytes Encoded size, counted against the session's queue limit
+     * @return completes when the frame is written; fails if it never will be
+     */
+    public CompletableFuture<Void> submit(WebSocketSession session, DeliveryLane lane, int bytes, Write write) {
+        Lanes lanes = lanes(session);
+        Pending pending = new Pending(write, bytes, System.nanoTime());
+        List<Pending> dropped = null;
+        synchronized (lanes) {
+            if ((lanes.writing || lanes.held) && lanes.queuedBytes + bytes > maxQueuedBytes) {
+                // The client stopped reading: drop its backlog and the connection
+                dropped = new ArrayList<>();
+                dropped.add(pending);
+                for (ArrayDeque<Pending> queue : lanes.queues) {
+                    dropped.addAll(queue);
+                    queue.clear();
+                }
+                lanes.queuedBytes = 0;
+            } else {
+                lanes.queues[lane.ordinal()].add(pending);
+                lanes.queuedBytes += bytes;
+                if (lanes.writing || lanes.held) {
+                    return pending.done;
+                }
+                lanes.writing = true;
+            }
+        }
+        if (dropped != null) {
+            IOException overflow = new IOException("More than " + maxQueuedBytes + " bytes queued for session " + session.getId());
+            dropped.forEach(p -> p.done.completeExceptionally(overflow));
+            close(session);
+            return pending.done;
+        }
+        drain(session, lanes);
+        return pending.done;
+    }
+
+    /**
+     * Queue the session's writes without writing them until release
+     */
+    public void hold(WebSocketSession session) {
+        Lanes lanes = lanes(session);
+        synchronized (lanes) {
+            lanes.held = true;
+        }
+    }
+
+    /**
+     * Write what was queued while the session was held (on this thread if it is idle)
+     */
+    public void release(WebSocketSession session) {
+        Lanes lanes = lanes(session);
+        synchronized (lanes) {
+            lanes.held = false;
+            if (lanes.writing) {
+                return;
+            }
+            lanes.writing = true;
+        }
+        drain(session, lanes);
+    }
+
+    /**
+     * Bytes queued for a session and not yet handed to its socket
+     */
+    public int queuedBytes(WebSocketSession session) {
+        Object lanes = session.getAttributes().get(QUEUE_ATTRIBUTE);
+        if (!(lanes instanceof Lanes queued)) {
+            return 0;
+        }
+        synchronized (queued) {
+            return queued.queuedBytes;
+        }
+    }
+
+    // Helper methods
+
+    private void drain(WebSocketSession session, Lanes lanes) {
+        while (true) {
+            Pending next = null;
+            int lane = 0;
+            synchronized (lanes) {
+                for (; lane < LANES.length && !lanes.held; lane++) {
+                    next = lanes.queues[lane].poll();
+                    if (next != null) {
+                        break;
+                    }
+                }
+                if (next == null) {
+                    lanes.writing = false;
+                    return;
+                }
+                lanes.queuedBytes -= next.bytes;
+            }
+
+            latency[lane].record(System.nanoTime() - next.queuedAt, TimeUnit.NANOSECONDS);
+            if (!session.isOpen()) {
+                next.done.completeExceptionally(new IOException("Session " + session.getId() + " is closed"));
+                continue;
+            }
+            try {
+                CompletableFuture<Void> deferred = next.write.run();
+                if (deferred == null) {
+                    next.done.complete(null);
+                } else {
+                    CompletableFuture<Void> done = next.done;
+                    deferred.whenComplete((ignored, error) -> {
+                        if (error == null) {
+                            done.complete(null);
+                        } else {
+                            done.completeExceptionally(error);
+                        }
+                    });
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to write {} frame to session {}: {}", LANES[lane].tag(), session.getId(), e.getMessage());
+                next.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static Lanes lanes(WebSocketSession session) {
+        return (Lanes) session.getAttributes().computeIfAbsent(QUEUE_ATTRIBUTE, key -> new Lanes());
+    }
+
+    private void close(WebSocketSession session) {
+        log.warn("Closing session {}: more than {} bytes queued", session.getId(), maxQueuedBytes);
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            log.debug("Failed to close session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Queued writes of one session, one FIFO per lane (guarded by the Lanes object)
+     */
+    private static final class Lanes {
+        @SuppressWarnings("unchecked")
+        private final ArrayDeque<Pending>[] queues = new ArrayDeque[LANES.length];
+        private int queuedBytes;
+        private boolean writing;   // A thread is draining this session
+        private boolean held;      // Writes are queued only (see hold)
+
+        private Lanes() {
+            for (int i = 0; i < queues.length; i++) {
+                queues[i] = new ArrayDeque<>();
+            }
+        }
+    }
+
+    private static final class Pending {
+        private final Write write;
+        private final int bytes;
+        private final long queuedAt;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Pending(Write write, int bytes, long queuedAt) {
+            this.write = write;
+            this.bytes = bytes;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
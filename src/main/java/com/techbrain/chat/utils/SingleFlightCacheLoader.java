@@ -0,0 +1,121 @@
+package com.techbrain.chat.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight Cache Loader
+ *
+ * Protects MySQL from cache stampedes on this node:
+ * - Concurrent misses for the same key share one load; the first caller
+ *   runs it, the others wait for its result
+ * - TTLs get random jitter so keys cached together do not expire together
+ * - Probabilistic early refresh (XFetch): a hit close to expiry reloads with a
+ *   probability that grows as the remaining TTL shrinks relative to the load time
+ *
+ * Metrics: "chat.cache.loads" (result=loaded|coalesced), "chat.cache.load"
+ * and "chat.cache.early.refresh", all tagged by cache.
+ */
+@Component
+public class SingleFlightCacheLoader {
+
+    private final MeterRegistry meterRegistry;
+
+    // Loads in progress on this node (cache key -> shared result)
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    // Recent load time per cache in milliseconds (EWMA), the "delta" of XFetch
+    private final Map<String, Double> loadMillis = new ConcurrentHashMap<>();
+
+    @Value("${app.cache.ttl-jitter:0.1}")
+    private double ttlJitter;
+
+    @Value("${app.cache.early-refresh-beta:1.0}")
+    private double earlyRefreshBeta;
+
+    public SingleFlightCacheLoader(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Load a value, sharing the load with concurrent callers for the same key.
+     * Exceptions thrown by the loader reach every caller.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T load(String cache, String key, Supplier<T> loader) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+
+        if (existing != null) {
+            meterRegistry.counter("chat.cache.loads", "cache", cache, "result", "coalesced").increment();
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+
+        meterRegistry.counter("chat.cache.loads", "cache", cache, "result", "loaded").increment();
+        long start = System.nanoTime();
+        try {
+            T value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+            recordLoad(cache, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * XFetch: refresh early if -delta * beta * ln(random) >= remaining TTL
+     */
+    public boolean shouldRefreshEarly(String cache, long remainingTtlMillis) {
+        if (remainingTtlMillis < 0 || earlyRefreshBeta <= 0) {
+            return false;  // No expiry, or early refresh disabled
+        }
+        double delta = loadMillis.getOrDefault(cache, 0.0);
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble();  // (0, 1]
+        boolean refresh = -delta * earlyRefreshBeta * Math.log(random) >= remainingTtlMillis;
+
+        if (refresh) {
+            meterRegistry.counter("chat.cache.early.refresh", "cache", cache).increment();
+        }
+        return refresh;
+    }
+
+    /**
+     * @return the TTL in seconds with +/- ttl-jitter applied (at least 1)
+     */
+    public long jitteredTtlSeconds(long ttl, TimeUnit unit) {
+        long seconds = unit.toSeconds(ttl);
+        double factor = 1.0 + ttlJitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(1, Math.round(seconds * factor));
+    }
+
+    // Helper methods
+
+    private void recordLoad(String cache, long nanos) {
+        Timer.builder("chat.cache.load")
+                .tag("cache", cache)
+                .description("Cache loads that went to the database")
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+
+        double millis = nanos / 1_000_000.0;
+        loadMillis.merge(cache, millis, (previous, latest) -> previous * 0.8 + latest * 0.2);
+    }
+}
@@ -0,0 +1,128 @@
+package com.techbrain.chat.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.techbrain.chat.to.Message;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Parse/encode benchmark of the chat-binary.v1 frames against the JSON text frames
+ *
+ * Not part of the regular test run: ./gradlew benchmark
+ * Prints frame sizes and nanoseconds per call (warmed up, single thread), e.g. to
+ * compare before/after a codec change on the same machine.
+ */
+@Tag("benchmark")
+class BinaryMessageCodecBenchmark {
+
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 200_000;
+
+    private static final String WORDS = "hello thanks for the update, I think we can ship this today " +
+            "if the tests pass and the review is done ";
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void messageEncodeDecode() throws Exception {
+        System.out.println("MESSAGE        json B  binary B   json enc  bin enc   json dec  bin dec (ns)");
+        for (int length : new int[]{20, 200, 2000}) {
+            Message message = message(length);
+            byte[] json = objectMapper.writeValueAsBytes(message);
+            byte[] binary = BinaryMessageCodec.encodeMessage(message);
+
+            long jsonEncode = nanosPerCall(() -> objectMapper.writeValueAsBytes(message));
+            long jsonDecode = nanosPerCall(() -> objectMapper.readValue(json, Message.class));
+            long binaryEncode = nanosPerCall(() -> BinaryMessageCodec.encodeMessage(message));
+            long binaryDecode = nanosPerCall(() -> BinaryMessageCodec.decodeMessage(ByteBuffer.wrap(binary)));
+
+            System.out.printf("content %5d  %6d  %8d  %9d  %7d  %9d  %7d%n", length, json.length, binary.length,
+                    jsonEncode, binaryEncode, jsonDecode, binaryDecode);
+        }
+    }
+
+    @Test
+    void deflate() throws Exception {
+        System.out.println("DEFLATE        raw B  deflate B  compress  inflate (ns)");
+        for (int length : new int[]{200, 600, 2000, 8000}) {
+            byte[] raw = BinaryMessageCodec.encodeMessage(message(length));
+            byte[] compressed = BinaryMessageCodec.compress(raw);
+
+            long compress = nanosPerCall(() -> BinaryMessageCodec.compress(raw));
+            long inflate = nanosPerCall(() -> BinaryMessageCodec.decompress(ByteBuffer.wrap(compressed)));
+
+            System.out.printf("content %5d  %5d  %9d  %8d  %7d%n", length, raw.length, compressed.length, compress, inflate);
+        }
+
+        List<Map<String, Object>> changes = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Map<String, Object> change = new LinkedHashMap<>();
+            change.put("userId", "+9198765" + (43210 + i));
+            change.put("online", i % 2 == 0);
+            change.put("lastSeen", 1_700_000_000_000L + i);
+            changes.add(change);
+        }
+        Map<String, Object> presence = Map.of("type", "presence", "changes", changes);
+        byte[] json = objectMapper.writeValueAsBytes(presence);
+        byte[] raw = BinaryMessageCodec.encodeControl(presence);
+        System.out.printf("presence x50: json %d B, binary %d B, deflate %d B%n",
+                json.length, raw.length, BinaryMessageCodec.compress(raw).length);
+    }
+
+    @Test
+    void batch() throws Exception {
+        List<byte[]> frames = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            frames.add(BinaryMessageCodec.encodeMessage(message(80)));
+        }
+        byte[] batch = BinaryMessageCodec.encodeBatch(frames);
+
+        long encode = nanosPerCall(() -> BinaryMessageCodec.encodeBatch(frames));
+        long decode = nanosPerCall(() -> {
+            for (ByteBuffer frame : BinaryMessageCodec.decodeBatch(ByteBuffer.wrap(batch), 100)) {
+                BinaryMessageCodec.decodeMessage(frame);
+            }
+        });
+        System.out.printf("BATCH x32: %d B, encode %d ns, decode (with messages) %d ns%n", batch.length, encode, decode);
+    }
+
+    // Helper methods
+
+    private static Message message(int contentLength) {
+        Message message = new Message();
+        message.setId(UUID.randomUUID().toString());
+        message.setRoomId(UUID.randomUUID().toString());
+        message.setSenderId("+919876543210");
+        message.setSenderUsername("alice");
+        message.setContent(WORDS.repeat(contentLength / WORDS.length() + 1).substring(0, contentLength));
+        message.setType(MessageType.MULTICAST);
+        message.setTimestamp(LocalDateTime.now().withNano(123_000_000));
+        message.setServerId("server-1");
+        return message;
+    }
+
+    private static long nanosPerCall(Call call) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            call.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            call.run();
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    @FunctionalInterface
+    interface Call {
+        void run() throws Exception;
+    }
+}
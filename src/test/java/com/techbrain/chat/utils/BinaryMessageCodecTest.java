@@ -0,0 +1,322 @@
+package com.techbrain.chat.utils;
+
+import com.techbrain.chat.to.Message;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BinaryMessageCodec: round trips of every frame kind, and malformed input
+ * (truncated varints, deflate bombs, deeply nested CONTROL values) rejected with
+ * IllegalArgumentException instead of large allocations or stack overflows
+ */
+class BinaryMessageCodecTest {
+
+    // ============ Round trips ============
+
+    @Test
+    void messageRoundTrip() {
+        Message message = message("hello ünïcødé 👋");
+        message.setClientMessageId("client-1");
+        message.setSignal("typing");
+
+        Message decoded = BinaryMessageCodec.decodeMessage(ByteBuffer.wrap(BinaryMessageCodec.encodeMessage(message)));
+
+        assertMessageEquals(message, decoded);
+        assertEquals("client-1", decoded.getClientMessageId());
+        assertEquals("typing", decoded.getSignal());
+    }
+
+    @Test
+    void messageWithoutOptionalFields() {
+        Message message = new Message();
+        message.setContent("only content");
+
+        Message decoded = BinaryMessageCodec.decodeMessage(ByteBuffer.wrap(BinaryMessageCodec.encodeMessage(message)));
+
+        assertEquals("only content", decoded.getContent());
+        assertNull(decoded.getId());
+        assertNull(decoded.getType());
+        assertNull(decoded.getTimestamp());
+        assertNull(decoded.getClientMessageId());
+    }
+
+    @Test
+    void timestampKeepsMillisecondsBeforeEpoch() {
+        Message message = message("old");
+        message.setTimestamp(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 250_000_000));
+
+        Message decoded = BinaryMessageCodec.decodeMessage(ByteBuffer.wrap(BinaryMessageCodec.encodeMessage(message)));
+
+        assertEquals(message.getTimestamp(), decoded.getTimestamp());
+    }
+
+    @Test
+    void controlRoundTrip() {
+        Map<String, Object> frame = new LinkedHashMap<>();
+        frame.put("type", "presence");
+        frame.put("count", -42L);
+        frame.put("ratio", 0.5);
+        frame.put("online", true);
+        frame.put("missing", null);
+        frame.put("changes", List.of(Map.of("userId", "+919876543210", "online", false)));
+
+        Object decoded = BinaryMessageCodec.decodeControl(ByteBuffer.wrap(BinaryMessageCodec.encodeControl(frame)));
+
+        assertEquals(frame, decoded);
+    }
+
+    @Test
+    void compressedFramesRoundTrip() {
+        Message message = message("hello thanks for the update ".repeat(40));
+        byte[] raw = BinaryMessageCodec.encodeMessage(message);
+
+        byte[] compressed = BinaryMessageCodec.compress(raw);
+
+        assertEquals(BinaryMessageCodec.KIND_DEFLATE, compressed[0]);
+        assertTrue(compressed.length < raw.length);
+        assertArrayEquals(raw, bytes(BinaryMessageCodec.decompress(ByteBuffer.wrap(compressed))));
+    }
+
+    @Test
+    void batchRoundTrip() {
+        byte[] first = BinaryMessageCodec.encodeMessage(message("one"));
+        byte[] second = BinaryMessageCodec.compress(BinaryMessageCodec.encodeMessage(message("two")));
+        byte[] third = BinaryMessageCodec.encodeControl(Map.of("type", "error"));
+
+        List<ByteBuffer> frames = BinaryMessageCodec.decodeBatch(
+                ByteBuffer.wrap(BinaryMessageCodec.encodeBatch(List.of(first, second, third))), 10);
+
+        assertEquals(3, frames.size());
+        assertArrayEquals(first, bytes(frames.get(0)));
+        assertArrayEquals(second, bytes(frames.get(1)));
+        assertArrayEquals(third, bytes(frames.get(2)));
+    }
+
+    @Test
+    void sequencedFrameAndAck() {
+        byte[] frame = BinaryMessageCodec.encodeMessage(message("numbered"));
+
+        ByteBuffer sequenced = ByteBuffer.wrap(BinaryMessageCodec.encodeSequenced(300, frame));
+
+        assertEquals(BinaryMessageCodec.KIND_SEQUENCED, sequenced.get());
+        // Varint 300 = 0xAC 0x02, then the frame unchanged
+        assertEquals((byte) 0xAC, sequenced.get());
+        assertEquals(0x02, sequenced.get());
+        assertArrayEquals(frame, bytes(sequenced));
+        assertEquals(300, BinaryMessageCodec.decodeAck(ByteBuffer.wrap(ack(300))));
+    }
+
+    @Test
+    void directBuffersAreAccepted() {
+        byte[] encoded = BinaryMessageCodec.encodeMessage(message("direct"));
+        ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length).put(encoded).flip();
+
+        assertEquals("direct", BinaryMessageCodec.decodeMessage(direct).getContent());
+    }
+
+    // ============ Malformed input ============
+
+    @Test
+    void truncatedVarintIsRejected() {
+        // Continuation bit set on the last byte
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryMessageCodec.decodeAck(ByteBuffer.wrap(new byte[]{BinaryMessageCodec.KIND_ACK, (byte) 0x80})));
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryMessageCodec.decodeBatch(ByteBuffer.wrap(new byte[]{BinaryMessageCodec.KIND_BATCH, (byte) 0xFF}), 10));
+    }
+
+    @Test
+    void overlongVarintIsRejected() {
+        byte[] frame = new byte[12];
+        frame[0] = BinaryMessageCodec.KIND_ACK;
+        Arrays.fill(frame, 1, frame.length, (byte) 0xFF);
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.decodeAck(ByteBuffer.wrap(frame)));
+    }
+
+    @Test
+    void truncatedMessageIsRejected() {
+        byte[] encoded = BinaryMessageCodec.encodeMessage(message("cut short"));
+
+        for (int length = 1; length < encoded.length; length++) {
+            byte[] prefix = Arrays.copyOf(encoded, length);
+            assertThrows(IllegalArgumentException.class,
+                    () -> BinaryMessageCodec.decodeMessage(ByteBuffer.wrap(prefix)), "prefix of " + length + " bytes");
+        }
+    }
+
+    @Test
+    void lengthBeyondFrameIsRejected() {
+        // CONTROL string claiming 1 GiB: rejected before allocating
+        byte[] frame = {BinaryMessageCodec.KIND_CONTROL, 5, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x04};
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.decodeControl(ByteBuffer.wrap(frame)));
+    }
+
+    @Test
+    void deflateBombIsRejected() {
+        // 16 MiB of zeros deflates to a few KiB; the declared length is above MAX_INFLATED_BYTES
+        byte[] bomb = deflateFrame(new byte[16 << 20], 16 << 20);
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.decompress(ByteBuffer.wrap(bomb)));
+    }
+
+    @Test
+    void deflateBombWithUnderstatedLengthStopsAtDeclaredLength() {
+        byte[] bomb = deflateFrame(new byte[16 << 20], 1024);
+
+        assertEquals(1024, BinaryMessageCodec.decompress(ByteBuffer.wrap(bomb)).remaining());
+    }
+
+    @Test
+    void deflateShorterThanDeclaredIsRejected() {
+        byte[] frame = deflateFrame(new byte[100], 200);
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.decompress(ByteBuffer.wrap(frame)));
+    }
+
+    @Test
+    void corruptDeflateIsRejected() {
+        byte[] frame = {BinaryMessageCodec.KIND_DEFLATE, 10, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.decompress(ByteBuffer.wrap(frame)));
+    }
+
+    @Test
+    void deeplyNestedControlIsRejected() {
+        // 10k nested single-element lists: fails on depth, not with a StackOverflowError
+        int depth = 10_000;
+        byte[] frame = new byte[1 + depth * 2 + 1];
+        frame[0] = BinaryMessageCodec.KIND_CONTROL;
+        for (int i = 0; i < depth; i++) {
+            frame[1 + i * 2] = 6;      // TAG_LIST
+            frame[2 + i * 2] = 1;      // one element
+        }
+        frame[frame.length - 1] = 0;   // TAG_NULL
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.decodeControl(ByteBuffer.wrap(frame)));
+    }
+
+    @Test
+    void nestingWithinLimitIsAccepted() {
+        // The frame's map is level 0, so the leaf of 15 lists sits at the deepest level allowed (16)
+        Object value = "leaf";
+        for (int i = 0; i < 15; i++) {
+            value = List.of(value);
+        }
+
+        Object decoded = BinaryMessageCodec.decodeControl(ByteBuffer.wrap(BinaryMessageCodec.encodeControl(Map.of("v", value))));
+
+        assertEquals(Map.of("v", value), decoded);
+    }
+
+    @Test
+    void unknownTagAndTypeAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryMessageCodec.decodeControl(ByteBuffer.wrap(new byte[]{BinaryMessageCodec.KIND_CONTROL, 42})));
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryMessageCodec.decodeMessage(ByteBuffer.wrap(new byte[]{BinaryMessageCodec.KIND_MESSAGE, 0, 100})));
+    }
+
+    @Test
+    void invalidBatchesAreRejected() {
+        byte[] inner = BinaryMessageCodec.encodeMessage(message("x"));
+        byte[] nested = BinaryMessageCodec.encodeBatch(List.of(BinaryMessageCodec.encodeBatch(List.of(inner))));
+        byte[] empty = {BinaryMessageCodec.KIND_BATCH, 1, 0};
+        byte[] tooMany = BinaryMessageCodec.encodeBatch(List.of(inner, inner, inner));
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.decodeBatch(ByteBuffer.wrap(nested), 10));
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.decodeBatch(ByteBuffer.wrap(empty), 10));
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.decodeBatch(ByteBuffer.wrap(tooMany), 2));
+    }
+
+    @Test
+    void wrongKindAndEmptyFramesAreRejected() {
+        byte[] control = BinaryMessageCodec.encodeControl(Map.of("type", "welcome"));
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.decodeMessage(ByteBuffer.wrap(control)));
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.decompress(ByteBuffer.wrap(control)));
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.kind(ByteBuffer.allocate(0)));
+    }
+
+    // Helper methods
+
+    private static Message message(String content) {
+        Message message = new Message();
+        message.setId("6f1c2a9e-0d7b-4c1e-9a55-3b8f0e2d7c41");
+        message.setRoomId("room-1");
+        message.setSenderId("+919876543210");
+        message.setSenderUsername("alice");
+        message.setContent(content);
+        message.setType(MessageType.MULTICAST);
+        message.setTimestamp(LocalDateTime.of(2025, 3, 14, 15, 9, 26, 535_000_000));
+        message.setServerId("server-1");
+        return message;
+    }
+
+    private static void assertMessageEquals(Message expected, Message actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getRoomId(), actual.getRoomId());
+        assertEquals(expected.getSenderId(), actual.getSenderId());
+        assertEquals(expected.getSenderUsername(), actual.getSenderUsername());
+        assertEquals(expected.getContent(), actual.getContent());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getServerId(), actual.getServerId());
+    }
+
+    private static byte[] ack(long seq) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(BinaryMessageCodec.KIND_ACK);
+        writeVarint(out, seq);
+        return out.toByteArray();
+    }
+
+    /**
+     * DEFLATE frame with an arbitrary declared length (what a hostile client could send)
+     */
+    private static byte[] deflateFrame(byte[] content, long declaredLength) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.setDictionary(BinaryMessageCodec.DEFLATE_DICTIONARY);
+        deflater.setInput(content);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(BinaryMessageCodec.KIND_DEFLATE);
+        writeVarint(out, declaredLength);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,123 @@
+package com.techbrain.chat.utils;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.techbrain.chat.entity.RoomEntity;
+import com.techbrain.chat.entity.UserEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Size/decode benchmark of the cached entity encoding: Redis hash fields against the
+ * "@class"-typed JSON previously written by RedisSerializer.json()
+ *
+ * Not part of the regular test run: ./gradlew benchmark
+ * Prints payload bytes and nanoseconds per decode (warmed up, single thread).
+ */
+@Tag("benchmark")
+class CompactEntityCacheBenchmark {
+
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 500_000;
+
+    private final CompactEntityCache cache = new CompactEntityCache(
+            mock(StringRedisTemplate.class), mock(RedisNearCache.class), new SimpleMeterRegistry());
+
+    // Same typing as the generic JSON serializer: type metadata on every value
+    private final ObjectMapper typedJson = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .activateDefaultTyping(LaissezFaireSubTypeValidator.instance,
+                    ObjectMapper.DefaultTyping.EVERYTHING, JsonTypeInfo.As.PROPERTY);
+
+    @Test
+    void entrySizeAndDecode() throws Exception {
+        System.out.println("ENTRY                  json B  hash B  json decode  hash decode (ns)");
+        for (int members : new int[]{0, 10, 100, 1000}) {
+            RoomEntity room = room(members);
+            byte[] json = typedJson.writeValueAsBytes(room);
+            Map<String, String> fields = cache.encodeRoom(room);
+
+            long jsonDecode = nanosPerCall(() -> typedJson.readValue(json, Object.class));
+            long hashDecode = nanosPerCall(() -> cache.decodeRoom(fields));
+
+            System.out.printf("room, %4d members  %8d  %6d  %11d  %11d%n",
+                    members, json.length, bytes(fields), jsonDecode, hashDecode);
+        }
+
+        UserEntity user = user(5);
+        byte[] json = typedJson.writeValueAsBytes(user);
+        Map<String, String> fields = cache.encodeUser(user);
+
+        long jsonDecode = nanosPerCall(() -> typedJson.readValue(json, Object.class));
+        long hashDecode = nanosPerCall(() -> cache.decodeUser(fields));
+
+        System.out.printf("user, 5 rooms        %8d  %6d  %11d  %11d%n", json.length, bytes(fields), jsonDecode, hashDecode);
+    }
+
+    // Helper methods
+
+    private static RoomEntity room(int members) {
+        RoomEntity room = new RoomEntity();
+        room.setId(UUID.randomUUID().toString());
+        room.setName("engineering-general");
+        room.setDescription("Team chat for engineering");
+        room.setCreatedBy("+919876543210");
+        room.setCreatedAt(LocalDateTime.now());
+        for (int i = 0; i < members; i++) {
+            room.getMemberIds().add(String.format("+9198765%05d", i));
+        }
+        return room;
+    }
+
+    private static UserEntity user(int rooms) {
+        UserEntity user = new UserEntity();
+        user.setId("alice");
+        user.setPhoneNumber("+919876543210");
+        user.setUsername("alice");
+        user.setCreatedAt(LocalDateTime.now());
+        user.setLastSeen(LocalDateTime.now());
+        user.setOnline(true);
+        for (int i = 0; i < rooms; i++) {
+            user.getRoomIds().add(UUID.randomUUID().toString());
+        }
+        return user;
+    }
+
+    private static long bytes(Map<String, String> fields) {
+        long bytes = 0;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            bytes += field.getKey().getBytes(StandardCharsets.UTF_8).length;
+            bytes += field.getValue().getBytes(StandardCharsets.UTF_8).length;
+        }
+        return bytes;
+    }
+
+    private static long nanosPerCall(Call call) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            call.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            call.run();
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    @FunctionalInterface
+    interface Call {
+        void run() throws Exception;
+    }
+}
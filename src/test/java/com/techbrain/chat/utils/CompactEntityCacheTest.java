@@ -0,0 +1,231 @@
+package com.techbrain.chat.utils;
+
+import com.techbrain.chat.entity.RoomEntity;
+import com.techbrain.chat.entity.UserEntity;
+import com.techbrain.chat.to.NodeLoad;
+import com.techbrain.chat.to.ServiceInfo;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * CompactEntityCache: entity <-> hash field encoding, entry size independent of
+ * collections, undecodable entries as misses, and the size/decode metrics
+ */
+class CompactEntityCacheTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2025, 3, 14, 15, 9, 26, 535_897_000);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CompactEntityCache cache = new CompactEntityCache(
+            mock(StringRedisTemplate.class), mock(RedisNearCache.class), meterRegistry);
+
+    // ============ Round trips ============
+
+    @Test
+    void roomRoundTripWithoutMembers() {
+        RoomEntity room = room(100);
+
+        RoomEntity decoded = cache.decodeRoom(cache.encodeRoom(room));
+
+        assertEquals(room.getId(), decoded.getId());
+        assertEquals(room.getName(), decoded.getName());
+        assertEquals(room.getDescription(), decoded.getDescription());
+        assertEquals(room.getCreatedBy(), decoded.getCreatedBy());
+        assertEquals(room.getCreatedAt(), decoded.getCreatedAt());
+        assertEquals(room.isPrivate(), decoded.isPrivate());
+        assertEquals(room.getMaxMembers(), decoded.getMaxMembers());
+        assertEquals(room.isLarge(), decoded.isLarge());
+        assertTrue(decoded.getMemberIds().isEmpty());
+    }
+
+    @Test
+    void userRoundTripWithoutRooms() {
+        UserEntity user = user();
+
+        UserEntity decoded = cache.decodeUser(cache.encodeUser(user));
+
+        assertEquals(user.getId(), decoded.getId());
+        assertEquals(user.getPhoneNumber(), decoded.getPhoneNumber());
+        assertEquals(user.getUsername(), decoded.getUsername());
+        assertEquals(user.getEmail(), decoded.getEmail());
+        assertEquals(user.getCreatedAt(), decoded.getCreatedAt());
+        assertEquals(user.getLastSeen(), decoded.getLastSeen());
+        assertEquals(user.isOnline(), decoded.isOnline());
+        assertTrue(decoded.getRoomIds().isEmpty());
+    }
+
+    @Test
+    void serviceRoundTripWithLoad() {
+        ServiceInfo service = service();
+        NodeLoad load = new NodeLoad();
+        load.setSessions(1200);
+        load.setOutboundBytes(5_000_000_000L);
+        load.setPendingDeliveries(7);
+        load.setKafkaLag(42);
+        load.setCpu(0.375);
+        load.setWeight(64);
+        service.setLoad(load);
+
+        ServiceInfo decoded = cache.decodeService(cache.encodeService(service));
+
+        assertEquals(service.getServiceId(), decoded.getServiceId());
+        assertEquals(service.getHost(), decoded.getHost());
+        assertEquals(service.getPort(), decoded.getPort());
+        assertEquals(service.getRegisteredAt(), decoded.getRegisteredAt());
+        assertEquals(service.getLastHeartbeat(), decoded.getLastHeartbeat());
+        assertTrue(decoded.isActive());
+        assertTrue(decoded.isDraining());
+        assertEquals(1200, decoded.getLoad().getSessions());
+        assertEquals(5_000_000_000L, decoded.getLoad().getOutboundBytes());
+        assertEquals(7, decoded.getLoad().getPendingDeliveries());
+        assertEquals(42, decoded.getLoad().getKafkaLag());
+        assertEquals(0.375, decoded.getLoad().getCpu());
+        assertEquals(64, decoded.getLoad().getWeight());
+    }
+
+    @Test
+    void serviceWithoutLoad() {
+        Map<String, String> fields = cache.encodeService(service());
+
+        assertFalse(fields.containsKey("weight"));
+        assertNull(cache.decodeService(fields).getLoad());
+    }
+
+    // ============ Encoded form ============
+
+    @Test
+    void nullFieldsAreLeftOutAndFlagsAreDigits() {
+        RoomEntity room = room(0);
+        room.setDescription(null);
+
+        Map<String, String> fields = cache.encodeRoom(room);
+
+        assertFalse(fields.containsKey("desc"));
+        assertEquals("1", fields.get("private"));
+        assertEquals("0", fields.get("large"));
+        assertEquals("2025-03-14T15:09:26.535897", fields.get("created"));
+        assertNull(cache.decodeRoom(fields).getDescription());
+    }
+
+    @Test
+    void entrySizeDoesNotGrowWithMembers() {
+        Map<String, String> empty = cache.encodeRoom(room(0));
+        Map<String, String> crowded = cache.encodeRoom(room(1000));
+
+        assertEquals(empty, crowded);
+        assertTrue(bytes(crowded) < 200, bytes(crowded) + " bytes");
+    }
+
+    @Test
+    void toArgsFlattensTtlAndFields() {
+        Map<String, String> fields = new java.util.LinkedHashMap<>();
+        fields.put("id", "r1");
+        fields.put("max", "100");
+
+        assertArrayEquals(new Object[]{"3600", "id", "r1", "max", "100"}, CompactEntityCache.toArgs(3600, fields));
+    }
+
+    // ============ Misses ============
+
+    @Test
+    void emptyFieldsAreAMiss() {
+        assertNull(cache.decodeRoom(Map.of()));
+        assertNull(cache.decodeUser(Map.of()));
+        assertNull(cache.decodeService(Map.of()));
+    }
+
+    @Test
+    void undecodableEntriesAreAMiss() {
+        Map<String, String> room = new HashMap<>(cache.encodeRoom(room(0)));
+        room.put("max", "lots");
+        Map<String, String> user = new HashMap<>(cache.encodeUser(user()));
+        user.put("seen", "yesterday");
+        Map<String, String> service = new HashMap<>(cache.encodeService(service()));
+        service.remove("port");
+
+        assertNull(cache.decodeRoom(room));
+        assertNull(cache.decodeUser(user));
+        assertNull(cache.decodeService(service));
+    }
+
+    // ============ Metrics ============
+
+    @Test
+    void entrySizeAndDecodeTimeAreRecorded() {
+        Map<String, String> fields = cache.encodeUser(user());
+        cache.decodeUser(fields);
+        cache.decodeUser(Map.of("id", "x", "created", "not a time"));
+
+        DistributionSummary size = meterRegistry.find("chat.cache.entry.bytes").tag("entity", "user").summary();
+        assertEquals(1, size.count());
+        assertEquals(bytes(fields), size.totalAmount());
+        // Failed decodes are timed too
+        assertEquals(2, meterRegistry.find("chat.cache.decode").tag("entity", "user").timer().count());
+    }
+
+    // Helper methods
+
+    private static RoomEntity room(int members) {
+        RoomEntity room = new RoomEntity();
+        room.setId("0b6f3c2e-8d4a-4f7e-9c1b-2a5d6e7f8091");
+        room.setName("engineering-general");
+        room.setDescription("Team chat for engineering");
+        room.setCreatedBy("+919876543210");
+        room.setCreatedAt(CREATED);
+        room.setPrivate(true);
+        room.setMaxMembers(5000);
+        for (int i = 0; i < members; i++) {
+            room.getMemberIds().add(String.format("+9198765%05d", i));
+        }
+        return room;
+    }
+
+    private static UserEntity user() {
+        UserEntity user = new UserEntity();
+        user.setId("+919876543210");
+        user.setPhoneNumber("+919876543210");
+        user.setUsername("alice");
+        user.setEmail("alice@example.com");
+        user.setCreatedAt(CREATED);
+        user.setLastSeen(CREATED.plusDays(3));
+        user.setOnline(true);
+        user.setRoomIds(Set.of("room-1", "room-2"));
+        return user;
+    }
+
+    private static ServiceInfo service() {
+        ServiceInfo service = new ServiceInfo();
+        service.setServiceId("server-1");
+        service.setHost("chat-server-1");
+        service.setPort(8080);
+        service.setRegisteredAt(CREATED);
+        service.setLastHeartbeat(CREATED.plusSeconds(30));
+        service.setActive(true);
+        service.setDraining(true);
+        return service;
+    }
+
+    private static long bytes(Map<String, String> fields) {
+        long bytes = 0;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            bytes += field.getKey().getBytes(StandardCharsets.UTF_8).length;
+            bytes += field.getValue().getBytes(StandardCharsets.UTF_8).length;
+        }
+        return bytes;
+    }
+}
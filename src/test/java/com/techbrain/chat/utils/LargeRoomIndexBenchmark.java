@@ -0,0 +1,197 @@
+package com.techbrain.chat.utils;
+
+import com.techbrain.chat.service.ResumeService;
+import com.techbrain.chat.service.impl.ResumeServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-message fan-out cost of a room message on one node, at 10k/50k/100k members:
+ * - "member list": the regular path of KafkaConsumerService.consumeMulticast (copy of the
+ *   cached member set, session lookup per member, missed() for members not connected here)
+ * - "large index": LargeRoomIndex.fanOut to the local subscribers (4 shard threads)
+ *
+ * Both reach the same 500 local sessions; sends are no-ops, so this is the lookup and
+ * iteration cost only (no Redis transfer of the member set, no socket writes).
+ *
+ * Not part of the regular test run: ./gradlew benchmark
+ * The end-to-end version against two running nodes is test-large-rooms.ps1.
+ */
+@Tag("benchmark")
+class LargeRoomIndexBenchmark {
+
+    private static final int LOCAL_SESSIONS = 500;
+    private static final int MESSAGES = 200;
+    private static final int ROUNDS = 5;       // The last one is reported
+    private static final int SHARDS = 4;
+
+    private final AtomicLong sent = new AtomicLong();
+
+    @Test
+    void perMessageFanOutCost() throws Exception {
+        System.out.println("MEMBERS   member list ms/msg   large index ms/msg   local sessions");
+        for (int members : new int[]{10_000, 50_000, 100_000}) {
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            ResumeService resumeService = new ResumeServiceImpl(256, 120, meterRegistry);
+            LargeRoomIndex index = new LargeRoomIndex(SHARDS, meterRegistry);
+            index.setLargeRooms(List.of("room"));
+
+            Set<String> memberIds = new HashSet<>();
+            for (int i = 0; i < members; i++) {
+                memberIds.add("+91" + (7_000_000_000L + i));
+            }
+            Map<String, String> userSessions = new ConcurrentHashMap<>();
+            Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+            for (int i = 0; i < LOCAL_SESSIONS; i++) {
+                String userId = "+91" + (7_000_000_000L + (long) i * (members / LOCAL_SESSIONS));
+                WebSocketSession session = new NoOpSession("session-" + i);
+                sessions.put(session.getId(), session);
+                userSessions.put(userId, session.getId());
+                resumeService.attach(userId, session.getId());
+                index.subscribe("room", session);
+            }
+
+            double memberList = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int m = 0; m < MESSAGES; m++) {
+                    for (String userId : new HashSet<>(memberIds)) {
+                        String sessionId = userSessions.get(userId);
+                        if (sessionId != null) {
+                            WebSocketSession session = sessions.get(sessionId);
+                            if (session != null && session.isOpen()) {
+                                sent.incrementAndGet();
+                                continue;
+                            }
+                        }
+                        resumeService.missed(userId);
+                    }
+                }
+                memberList = (System.nanoTime() - start) / 1e6 / MESSAGES;
+            }
+
+            double largeIndex = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                CountDownLatch delivered = new CountDownLatch(MESSAGES * SHARDS);
+                long start = System.nanoTime();
+                for (int m = 0; m < MESSAGES; m++) {
+                    index.fanOut("room", session -> sent.incrementAndGet(), count -> delivered.countDown());
+                }
+                delivered.await();
+                largeIndex = (System.nanoTime() - start) / 1e6 / MESSAGES;
+            }
+            index.shutdown();
+
+            System.out.printf("%7d   %18.3f   %18.4f   %14d%n", members, memberList, largeIndex, LOCAL_SESSIONS);
+        }
+    }
+
+    /**
+     * Open session whose sends do nothing
+     */
+    private static final class NoOpSession implements WebSocketSession {
+        private final String id;
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        private NoOpSession(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return null;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return 0;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return 0;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.techbrain.chat.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techbrain.chat.to.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Frames, socket writes and added latency per room message sent to one JSON session,
+ * with coalescing off and on (defaults: 3 ms window, 32 messages, 64 KB), through the
+ * real SessionFrameWriter, OutboundCoalescer and SessionOutboundQueue.
+ *
+ * Messages arrive back to back (a burst) or one every 0.1/1/10 ms. Every frame is one
+ * sendMessage() call, i.e. one socket write; "latency" is the time from send() to the
+ * write of the frame holding the message.
+ *
+ * Not part of the regular test run: ./gradlew benchmark
+ */
+@Tag("benchmark")
+class OutboundCoalescerBenchmark {
+
+    private static final int CONTENT_LENGTH = 200;
+    private static final long[] GAPS_MICROS = {0, 100, 1_000, 10_000};
+    private static final int[] MESSAGES = {2_000, 2_000, 1_000, 200};  // Per gap
+    private static final int ROUNDS = 3;                                 // The last one is reported
+
+    @Test
+    void framesPerMessage() throws Exception {
+        System.out.println("GAP      COALESCE   messages   frames   frames/msg   bytes/msg   avg latency ms   max latency ms");
+        for (int i = 0; i < GAPS_MICROS.length; i++) {
+            for (boolean coalesce : new boolean[]{false, true}) {
+                Result result = null;
+                for (int round = 0; round < ROUNDS; round++) {
+                    result = run(coalesce, GAPS_MICROS[i], MESSAGES[i]);
+                }
+                System.out.printf("%-8s %-10s %8d   %6d   %10.3f   %9.1f   %14.3f   %14.3f%n",
+                        GAPS_MICROS[i] == 0 ? "burst" : GAPS_MICROS[i] / 1000.0 + " ms",
+                        coalesce ? "on" : "off", MESSAGES[i], result.writes,
+                        (double) result.writes / MESSAGES[i], (double) result.bytes / MESSAGES[i],
+                        result.latencyNanos / 1e6 / MESSAGES[i], result.maxLatencyNanos / 1e6);
+            }
+        }
+    }
+
+    // Helper methods
+
+    private static Result run(boolean coalesce, long gapMicros, int messages) throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SessionOutboundQueue outboundQueue = new SessionOutboundQueue(524_288, meterRegistry);
+        OutboundCoalescer coalescer = new OutboundCoalescer(3, 32, 65_536, 2, outboundQueue, meterRegistry);
+        SessionFrameWriter frameWriter = new SessionFrameWriter(new ObjectMapper(), coalescer, outboundQueue, meterRegistry);
+
+        CountingSession session = new CountingSession();
+        if (coalesce) {
+            session.getAttributes().put(SessionFrameWriter.COALESCE_ATTRIBUTE, true);
+        }
+
+        AtomicLong latency = new AtomicLong();
+        AtomicLong maxLatency = new AtomicLong();
+        List<CompletableFuture<Void>> written = new ArrayList<>(messages);
+        for (int i = 0; i < messages; i++) {
+            long start = System.nanoTime();
+            written.add(frameWriter.send(session, frameWriter.prepare(message(i))).whenComplete((ignored, error) -> {
+                long nanos = System.nanoTime() - start;
+                latency.addAndGet(nanos);
+                maxLatency.accumulateAndGet(nanos, Math::max);
+            }));
+            if (gapMicros > 0) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(gapMicros));
+            }
+        }
+        CompletableFuture.allOf(written.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        coalescer.shutdown();
+
+        return new Result(session.writes.get(), session.bytes.get(), latency.get(), maxLatency.get());
+    }
+
+    private static Message message(int i) {
+        Message message = new Message();
+        message.setId("msg-" + i);
+        message.setType(MessageType.MULTICAST);
+        message.setRoomId("room-1");
+        message.setSenderId("+917000000001");
+        message.setSenderUsername("alice");
+        message.setContent("x".repeat(CONTENT_LENGTH));
+        message.setServerId("server-1");
+        return message;
+    }
+
+    private record Result(long writes, long bytes, long latencyNanos, long maxLatencyNanos) {
+    }
+
+    /**
+     * Open JSON session that counts its writes and payload bytes
+     */
+    private static final class CountingSession implements WebSocketSession {
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        private final AtomicLong writes = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+
+        @Override
+        public String getId() {
+            return "session-1";
+        }
+
+        @Override
+        public URI getUri() {
+            return null;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return 0;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return 0;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            writes.incrementAndGet();
+            bytes.addAndGet(message.getPayloadLength());
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+        }
+    }
+}
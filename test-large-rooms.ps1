@@ -0,0 +1,175 @@
+# Large-Room Load Test for Distributed Chat Application
+# Measures the per-message fan-out cost of 10k/50k/100k-member rooms on one node:
+#   tier "large"   = large-room tier (local subscribers only, no member lookup)
+#   tier "members" = regular rooms (member set fetched and iterated per message)
+#
+# Messages are sent through $SendUrl; the node at $MeasureUrl receives them through Kafka
+# (a node never re-delivers its own REST sends), and its "chat.rooms.fanout" timer
+# (tag "tier") gives the cost per message.
+#
+# Usage: ./test-large-rooms.ps1 [-Sizes 10000,50000] [-Messages 200] [-Clients 500]
+# Creating a 100k-member room inserts 100k rows, allow a minute or two per room.
+
+param(
+    [string]$SendUrl = "http://localhost:8080",
+    [string]$MeasureUrl = "http://localhost:8081",
+    [int[]]$Sizes = @(10000, 50000, 100000),
+    [int]$Messages = 100,           # Measured messages per room
+    [int]$Warmup = 5,               # Unmeasured messages per room (fills the member cache)
+    [int]$Clients = 200,            # WebSocket members connected to the measured node, per room
+    [int]$RefreshSeconds = 35       # > app.rooms.large.refresh-ms, so both nodes know the tier
+)
+
+$measureWs = ($MeasureUrl -replace '^http', 'ws') + "/ws/chat"
+$senders = 8                        # Rotated senders (per-user rate limit: 10/s)
+$results = @()
+
+Write-Host "╔══════════════════════════════════════════════════════════╗" -ForegroundColor Cyan
+Write-Host "║  Large-Room Fan-Out Load Test                            ║" -ForegroundColor Cyan
+Write-Host "╚══════════════════════════════════════════════════════════╝" -ForegroundColor Cyan
+Write-Host ""
+
+# Helper function to create a room with generated members
+function New-TestRoom {
+    param($size, $tier)
+
+    $prefix = if ($tier -eq "large") { "+9170" } else { "+9171" }
+    $members = 0..($size - 1) | ForEach-Object { "{0}{1:D8}" -f $prefix, $_ }
+
+    $body = @{
+        name = "LoadTest-$tier-$size"
+        description = "Large-room load test"
+        createdBy = $members[0]
+        private = $false
+        maxMembers = $size
+        memberIds = $members
+    } | ConvertTo-Json -Compress
+
+    $room = Invoke-RestMethod -Uri "$SendUrl/api/chat/rooms" `
+        -Method POST `
+        -Body $body `
+        -ContentType "application/json" `
+        -TimeoutSec 600
+
+    if ($tier -ne "large") {
+        # maxMembers alone would put it in the large tier
+        $room = Invoke-RestMethod -Uri "$SendUrl/api/chat/rooms/$($room.id)/large?enabled=false" -Method PUT
+    }
+
+    Write-Host "✅ Room created: $($room.id) ($size members, large=$($room.large))" -ForegroundColor Green
+    return @{ Id = $room.id; Members = $members; Tier = $tier; Size = $size }
+}
+
+# Helper function to connect room members to the measured node
+function Connect-Members {
+    param($room)
+
+    $sockets = @()
+    $step = [Math]::Max(1, [Math]::Floor($room.Size / $Clients))
+    for ($i = 0; $i -lt $Clients; $i++) {
+        $userId = $room.Members[$i * $step]
+        $ws = New-Object System.Net.WebSockets.ClientWebSocket
+        try {
+            $uri = [Uri]("$($measureWs)?userId=" + [Uri]::EscapeDataString($userId))
+            $ws.ConnectAsync($uri, [Threading.CancellationToken]::None).Wait()
+            $sockets += $ws
+        } catch {
+            Write-Host "❌ Failed to connect $userId : $($_.Exception.Message)" -ForegroundColor Red
+        }
+    }
+    Write-Host "🔌 $($sockets.Count) members of room $($room.Id) connected to $MeasureUrl" -ForegroundColor Cyan
+    return $sockets
+}
+
+# Helper function to send MULTICAST messages at ~40/s (room limit: 50/s)
+function Send-RoomMessages {
+    param($room, $count)
+
+    for ($i = 0; $i -lt $count; $i++) {
+        $body = @{
+            roomId = $room.Id
+            senderId = $room.Members[$i % $senders]
+            senderUsername = "LoadTest"
+            content = "Load test message $i"
+            type = "MULTICAST"
+        } | ConvertTo-Json
+
+        try {
+            Invoke-RestMethod -Uri "$SendUrl/api/chat/messages" `
+                -Method POST `
+                -Body $body `
+                -ContentType "application/json" | Out-Null
+        } catch {
+            Write-Host "❌ Send failed: $($_.Exception.Message)" -ForegroundColor Red
+        }
+        Start-Sleep -Milliseconds 25
+    }
+}
+
+# Helper function to read the fan-out timer of one tier on the measured node
+function Get-FanOut {
+    param($tier)
+
+    try {
+        $metric = Invoke-RestMethod -Uri "$MeasureUrl/actuator/metrics/chat.rooms.fanout?tag=tier:$tier"
+        return @{
+            Count = ($metric.measurements | Where-Object { $_.statistic -eq "COUNT" }).value
+            Total = ($metric.measurements | Where-Object { $_.statistic -eq "TOTAL_TIME" }).value
+        }
+    } catch {
+        return @{ Count = 0; Total = 0 }
+    }
+}
+
+foreach ($size in $Sizes) {
+    Write-Host "`n🏟️  ROOMS WITH $size MEMBERS" -ForegroundColor Yellow
+    Write-Host "=" * 60
+
+    $rooms = @((New-TestRoom -size $size -tier "large"), (New-TestRoom -size $size -tier "members"))
+
+    Write-Host "⏳ Waiting $RefreshSeconds s for the nodes to refresh the large-room tier..." -ForegroundColor Gray
+    Start-Sleep -Seconds $RefreshSeconds
+
+    $sockets = @()
+    foreach ($room in $rooms) {
+        $sockets += Connect-Members -room $room
+    }
+
+    foreach ($room in $rooms) {
+        Send-RoomMessages -room $room -count $Warmup
+        Start-Sleep -Seconds 2
+
+        $before = Get-FanOut -tier $room.Tier
+        Send-RoomMessages -room $room -count $Messages
+        Start-Sleep -Seconds 5
+        $after = Get-FanOut -tier $room.Tier
+
+        $count = $after.Count - $before.Count
+        $perMessageMs = if ($count -gt 0) { ($after.Total - $before.Total) / $count * 1000 } else { 0 }
+        $results += [PSCustomObject]@{
+            Members = $size
+            Tier = $room.Tier
+            Measured = $count
+            "Ms/Message" = [Math]::Round($perMessageMs, 3)
+        }
+        Write-Host "📊 $($room.Tier): $count messages, $([Math]::Round($perMessageMs, 3)) ms/message" -ForegroundColor White
+    }
+
+    # Cleanup
+    foreach ($ws in $sockets) {
+        $ws.Dispose()
+    }
+    foreach ($room in $rooms) {
+        Invoke-RestMethod -Uri "$SendUrl/api/chat/rooms/$($room.Id)" -Method DELETE | Out-Null
+    }
+}
+
+# Summary
+Write-Host "`n╔══════════════════════════════════════════════════════════╗" -ForegroundColor Cyan
+Write-Host "║  Per-Message Fan-Out Cost ($MeasureUrl)" -ForegroundColor Cyan
+Write-Host "╚══════════════════════════════════════════════════════════╝" -ForegroundColor Cyan
+$results | Format-Table -AutoSize
+
+Write-Host "Expected: 'members' grows with room size, 'large' stays flat" -ForegroundColor Gray
+Write-Host "(it depends only on the $Clients local subscribers)." -ForegroundColor Gray
+Write-Host "`n✅ Load test completed!" -ForegroundColor Green